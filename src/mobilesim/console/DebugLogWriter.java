@@ -0,0 +1,255 @@
+package mobilesim.console;
+
+import java.io.*;
+
+/**
+ * Writes the messages of a log file on a background thread. Logging a message only puts it into
+ * a fixed size ring of pending messages, the writer thread takes whatever is pending in one go and
+ * writes it out through a buffered writer. Only when the ring is full does logging wait for the
+ * writer to catch up, messages are never dropped.
+ *
+ * The writer thread is a daemon so that a log that is never closed does not keep the program
+ * running, call flush (or close) to make sure that everything logged so far is in the file.
+ *
+ * @author Striegel
+ *
+ */
+public class DebugLogWriter {
+
+	public static final int		DEFAULT_RING_SIZE = 8192;
+
+	String				m_sFile;
+
+	// The pending messages, m_nHead is the oldest one
+	String []			m_sRing;
+	int					m_nHead;
+	int					m_nPending;
+
+	// Messages taken by the writer thread but not yet in the file
+	int					m_nWriting;
+
+	Writer				m_Output;
+	Thread				m_Writer;
+	boolean				m_bClosed;
+
+	/**
+	 * @param sFile The log file, it is overwritten
+	 */
+	public DebugLogWriter (String sFile)
+	{
+		this(sFile, DEFAULT_RING_SIZE);
+	}
+
+	/**
+	 * @param sFile The log file, it is overwritten
+	 * @param nRingSize The number of messages that may wait to be written
+	 */
+	public DebugLogWriter (String sFile, int nRingSize)
+	{
+		m_sFile = sFile;
+		m_sRing = new String[Math.max(nRingSize, 1)];
+		m_nHead = 0;
+		m_nPending = 0;
+		m_nWriting = 0;
+		m_Output = null;
+		m_Writer = null;
+		m_bClosed = false;
+	}
+
+	public String getFile ()
+	{
+		return m_sFile;
+	}
+
+	/**
+	 * Open the file and start the writer thread
+	 * @return True if successful, false otherwise
+	 */
+	public boolean open ()
+	{
+		try
+		{
+			m_Output = new BufferedWriter(new FileWriter(m_sFile), 1 << 16);
+		}
+		catch (IOException e)
+		{
+			System.err.println("* Error: Unable to open the log file " + m_sFile);
+			System.err.println(e);
+			return false;
+		}
+
+		m_Writer = new Thread(new Runnable()
+		{
+			public void run ()
+			{
+				runWriter();
+			}
+		}, "DebugLogWriter");
+
+		m_Writer.setDaemon(true);
+		m_Writer.start();
+		return true;
+	}
+
+	/**
+	 * Queue a message (a line) for the file
+	 * @param sMessage The message
+	 * @return True if queued, false if the log is closed
+	 */
+	public synchronized boolean write (String sMessage)
+	{
+		while(m_nPending == m_sRing.length && !m_bClosed)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		if(m_bClosed)
+		{
+			return false;
+		}
+
+		m_sRing[(m_nHead + m_nPending) % m_sRing.length] = sMessage;
+		m_nPending++;
+
+		// The writer only waits when there was nothing pending
+		if(m_nPending == 1)
+		{
+			notifyAll();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wait until all of the messages queued so far are in the file
+	 */
+	public synchronized void flush ()
+	{
+		while((m_nPending > 0 || m_nWriting > 0) && m_Writer != null && m_Writer.isAlive())
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Write out whatever is pending and close the file
+	 */
+	public void close ()
+	{
+		Thread theWriter;
+
+		synchronized(this)
+		{
+			m_bClosed = true;
+			theWriter = m_Writer;
+			notifyAll();
+		}
+
+		if(theWriter == null)
+		{
+			return;
+		}
+
+		try
+		{
+			theWriter.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runWriter ()
+	{
+		String [] 	theBatch = new String[m_sRing.length];
+
+		while(true)
+		{
+			int 		nBatch;
+			boolean		bClosed;
+
+			synchronized(this)
+			{
+				while(m_nPending == 0 && !m_bClosed)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						// Only closing stops the writer
+					}
+				}
+
+				// Take everything that is pending at once
+				nBatch = m_nPending;
+				bClosed = m_bClosed;
+
+				for(int i = 0; i < nBatch; i++)
+				{
+					int nSlot = (m_nHead + i) % m_sRing.length;
+					theBatch[i] = m_sRing[nSlot];
+					m_sRing[nSlot] = null;
+				}
+
+				m_nHead = (m_nHead + nBatch) % m_sRing.length;
+				m_nPending = 0;
+				m_nWriting = nBatch;
+				notifyAll();
+			}
+
+			try
+			{
+				for(int i = 0; i < nBatch; i++)
+				{
+					m_Output.write(theBatch[i]);
+					m_Output.write(System.lineSeparator());
+					theBatch[i] = null;
+				}
+
+				// Caught up, get it into the file
+				m_Output.flush();
+
+				if(bClosed)
+				{
+					m_Output.close();
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("* Error: Unable to write the log file " + m_sFile);
+				System.err.println(e);
+			}
+
+			synchronized(this)
+			{
+				m_nWriting = 0;
+				notifyAll();
+
+				if(bClosed)
+				{
+					m_Writer = null;
+					return;
+				}
+			}
+		}
+	}
+}
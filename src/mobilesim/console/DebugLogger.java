@@ -1,13 +1,30 @@
 package mobilesim.console;
 
+import java.util.function.Supplier;
+
+import mobilesim.core.SimulationContext;
+
 /**
  * The debug logger serves a central clearinghouse for coordinating error reporting
- * and general message information
+ * and general message information. A message goes by the debug setting of the object it is
+ * about if that object has one and by the general setting otherwise. Messages for the log files
+ * are written on a background thread (see DebugLogWriter), errors to the error log and anything
+ * else to the normal log.
+ * 
+ * Building a message is often more expensive than the check whether it would go anywhere, for
+ * frequent messages check isEnabled first or hand over a Supplier for the message.
+ * 
  * @author Striegel
  *
  */
 public class DebugLogger {
-	public static final DebugLogger 	theLogger = new DebugLogger();
+	// The logger of the default context (see SimulationContext), set when that context is created
+	public static DebugLogger 	theLogger;
+	
+	static
+	{
+		SimulationContext.getDefault();
+	}
 	
 	// Important errors only, no warnings
 	public static final int SIM_DEBUG_LEVEL_ERROR   = 0;
@@ -30,6 +47,14 @@ public class DebugLogger {
 	String	m_sLogFile_Normal;
 	String 	m_sLogFile_Error;
 	
+	// The log files, opened with the first message that goes to them
+	DebugLogWriter	m_LogFile_Normal;
+	DebugLogWriter	m_LogFile_Error;
+	
+	// Set when a log file could not be opened, so that it is not tried again for every message
+	boolean			m_bLogFile_NormalFailed;
+	boolean			m_bLogFile_ErrorFailed;
+	
 	public DebugLogger ()
 	{
 		m_General = new DebugSetting();
@@ -41,6 +66,11 @@ public class DebugLogger {
 		m_sLogFile_Prepend = "";
 		m_sLogFile_Normal = "Log-MobileSim.txt";
 		m_sLogFile_Error  = "Log-MobileSim-Error.txt";			
+		
+		m_LogFile_Normal = null;
+		m_LogFile_Error = null;
+		m_bLogFile_NormalFailed = false;
+		m_bLogFile_ErrorFailed = false;
 	}
 
 	/** 
@@ -51,6 +81,7 @@ public class DebugLogger {
 	 */
 	public void setLogFile_Prepend (String sPrepend)
 	{
+		closeLogFiles();
 		m_sLogFile_Prepend = sPrepend;
 	}
 	
@@ -61,6 +92,7 @@ public class DebugLogger {
 	
 	public void setLogFile_Normal (String sNormal)
 	{
+		closeLogFiles();
 		m_sLogFile_Normal = sNormal;
 	}
 	
@@ -71,6 +103,7 @@ public class DebugLogger {
 	
 	public void setLogFile_Error (String sError)
 	{
+		closeLogFiles();
 		m_sLogFile_Error = sError;
 	}
 	
@@ -110,49 +143,155 @@ public class DebugLogger {
 		logInfo(SIM_DEBUG_LEVEL_WARNING, sMessage, null);
 	}
 
+	/**
+	 * Determine if a message would be logged anywhere (the console or the log file)
+	 * @param nLevel The level of the message
+	 * @param theItem The debug setting of the object that the message is about, null for the general setting
+	 * @return True if the message would be logged, false otherwise
+	 */
+	public boolean isEnabled (int nLevel, DebugSetting theItem)
+	{
+		DebugSetting theSetting = (theItem != null) ? theItem : m_General;
+		
+		if(theSetting.getDebugLevel() < nLevel)
+		{
+			return false;
+		}
+		
+		return isEnabled_Console(nLevel, theSetting) || isEnabled_LogFile(nLevel, theSetting);
+	}
+	
+	/**
+	 * Log a message that is only built if it would be logged anywhere
+	 * @param nLevel The level of the message
+	 * @param theMessage Builds the message
+	 * @param theItem The debug setting of the object that the message is about, null for the general setting
+	 */
+	public void logInfo (int nLevel, Supplier<String> theMessage, DebugSetting theItem)
+	{
+		if(isEnabled(nLevel, theItem))
+		{
+			logInfo(nLevel, theMessage.get(), theItem);
+		}
+	}
+
 	public void logInfo (int nLevel, String sMessage, DebugSetting theItem)
 	{
-		if(theItem != null)
+		DebugSetting theSetting = (theItem != null) ? theItem : m_General;
+		
+		if(theSetting.getDebugLevel() < nLevel)
 		{
-			// Use the item's debugging info
+			// Nope, just ignore it
+			return;
 		}
-		else
+		
+		if(isEnabled_Console(nLevel, theSetting))
+		{
+			switch(nLevel)
+			{
+				case SIM_DEBUG_LEVEL_ERROR:
+					System.err.println(sMessage);
+					break;
+				default:
+					System.out.println(sMessage);							
+					break;
+			}
+		}
+		
+		if(isEnabled_LogFile(nLevel, theSetting))
+		{
+			DebugLogWriter theLogFile = getLogFile(nLevel == SIM_DEBUG_LEVEL_ERROR);
+			
+			if(theLogFile != null)
+			{
+				theLogFile.write(sMessage);
+			}
+		}
+	}
+	
+	/**
+	 * Wait until everything logged so far is in the log files
+	 */
+	public synchronized void flushLogFiles ()
+	{
+		if(m_LogFile_Normal != null)
 		{
-			// Use the global debug setting values
-			if(m_General.getDebugLevel() >= nLevel)
+			m_LogFile_Normal.flush();
+		}
+		
+		if(m_LogFile_Error != null)
+		{
+			m_LogFile_Error.flush();
+		}
+	}
+	
+	/**
+	 * Write out and close the log files, the next message for a log file opens it again 
+	 * (overwriting it)
+	 */
+	public synchronized void closeLogFiles ()
+	{
+		if(m_LogFile_Normal != null)
+		{
+			m_LogFile_Normal.close();
+			m_LogFile_Normal = null;
+		}
+		
+		if(m_LogFile_Error != null)
+		{
+			m_LogFile_Error.close();
+			m_LogFile_Error = null;
+		}
+		
+		m_bLogFile_NormalFailed = false;
+		m_bLogFile_ErrorFailed = false;
+	}
+	
+	private static boolean isEnabled_Console (int nLevel, DebugSetting theSetting)
+	{
+		return !theSetting.getFlag_DisableConsole() && theSetting.getDebugLevel_Console() >= nLevel;
+	}
+	
+	private static boolean isEnabled_LogFile (int nLevel, DebugSetting theSetting)
+	{
+		return !theSetting.getFlag_DisableLogFile() && theSetting.getDebugLevel_LogFile() >= nLevel;
+	}
+	
+	private synchronized DebugLogWriter getLogFile (boolean bError)
+	{
+		DebugLogWriter theLogFile = bError ? m_LogFile_Error : m_LogFile_Normal;
+		
+		if(theLogFile != null || (bError ? m_bLogFile_ErrorFailed : m_bLogFile_NormalFailed))
+		{
+			return theLogFile;
+		}
+		
+		theLogFile = new DebugLogWriter(m_sLogFile_Prepend + (bError ? m_sLogFile_Error : m_sLogFile_Normal));
+		
+		if(!theLogFile.open())
+		{
+			// Do not try again for every message, the other log file is not affected
+			if(bError)
 			{
-				switch(nLevel)
-				{
-					case SIM_DEBUG_LEVEL_ERROR:
-						if(!m_General.getFlag_DisableConsole())
-						{
-							System.err.println(sMessage);
-						}
-						
-						if(!m_General.getFlag_DisableLogFile())
-						{
-							// TODO: Log to the file
-						}
-						
-						break;
-					default:
-						if(!m_General.getFlag_DisableConsole())
-						{
-							System.out.println(sMessage);							
-						}
-						
-						if(!m_General.getFlag_DisableLogFile())
-						{
-							// TODO: Log to the file
-						}
-						
-						break;
-				}
+				m_bLogFile_ErrorFailed = true;
 			}
 			else
 			{
-				// Nope, just ignore it
+				m_bLogFile_NormalFailed = true;
 			}
-		}		
-	}	
+			
+			return null;
+		}
+		
+		if(bError)
+		{
+			m_LogFile_Error = theLogFile;
+		}
+		else
+		{
+			m_LogFile_Normal = theLogFile;
+		}
+		
+		return theLogFile;
+	}
 }
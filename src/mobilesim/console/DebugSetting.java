@@ -20,7 +20,9 @@ public class DebugSetting {
 	
 	public DebugSetting ()
 	{
-		m_nDebugLevel = DebugLogger.SIM_DEBUG_LEVEL_NORMAL;
+		// The console and the log file go by the same level unless set otherwise
+		setDebugLevel(DebugLogger.SIM_DEBUG_LEVEL_NORMAL);
+		m_bDebug_Triggered = false;
 		
 		m_bDisable_Console = false;
 		m_bDisable_LogFile = true;	
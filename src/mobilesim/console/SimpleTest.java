@@ -1,8 +1,12 @@
 package mobilesim.console;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.*;
 
 import mobilesim.core.*;
+import mobilesim.statistics.*;
 
 public class SimpleTest {
 	
@@ -19,9 +23,26 @@ public class SimpleTest {
 		
 		DataLoaderNetworkTraffic.theLoader.setPath("./TrafficData/Test/");
 		
-		for(int i = 0; i < files.length - SimulationEngine.SIMULATION_DURATION + 1; i++)
+		// Parse the next window of days while the current one is simulated
+		TracePrefetcher thePrefetcher = new TracePrefetcher(DataLoaderBluetooth.theLoader.getPath(), DataLoaderNetworkTraffic.theLoader.getPath());
+		int nWindows = files.length - SimulationEngine.SIMULATION_DURATION + 1;
+		
+		if(nWindows > 0)
+		{
+			String [] window = Arrays.copyOfRange(files, 0, SimulationEngine.SIMULATION_DURATION);
+			thePrefetcher.prefetch(window, window);
+		}
+		
+		for(int i = 0; i < nWindows; i++)
 		{
 			String dateComb = "";
+			TraceDay theWindow = thePrefetcher.take();
+			
+			if(i + 1 < nWindows)
+			{
+				String [] window = Arrays.copyOfRange(files, i + 1, i + 1 + SimulationEngine.SIMULATION_DURATION);
+				thePrefetcher.prefetch(window, window);
+			}
 			
 			for(int j = 0; j < SimulationEngine.SIMULATION_DURATION; j++)
 			{
@@ -31,8 +52,11 @@ public class SimpleTest {
 				dateComb += files[i+j].substring(0, 8);
 			}
 			
-			DataLoaderBluetooth.theLoader.startFileLoad();
-			DataLoaderNetworkTraffic.theLoader.startFileLoad();
+			if(theWindow == null || !theWindow.loadTraces(DataLoaderBluetooth.theLoader, DataLoaderNetworkTraffic.theLoader))
+			{
+				System.err.println("* Error: Unable to load the prefetched files of " + dateComb);
+				break;
+			}
 			
 			SimulationEngine.theEngine.summarizeQueue();
 			SimulationEngine.theEngine.setDate(dateComb);
@@ -51,6 +75,8 @@ public class SimpleTest {
 			DataLoaderBluetooth.theLoader.resetDataLoader();
 			DataLoaderNetworkTraffic.theLoader.resetDataLoader();
 		}
+		
+		thePrefetcher.shutdown();
 	}
 	
 	public static void testDailyContentProp ()
@@ -61,9 +87,104 @@ public class SimpleTest {
 		
 		DataLoaderNetworkTraffic.theLoader.setPath("./TrafficData/HourlyTotal/");
 		
+		// Write the results of a day while the next day is simulated
+		ResultSink theSink = SimulationEngine.theEngine.getResultSink();
+		ResultSinkAsync theResults = new ResultSinkAsync(theSink);
+		SimulationEngine.theEngine.setResultSink(theResults);
+		
+		Vector<String> sDays = new Vector<String>();
 		File directory = new File(dlBT.getPath());
 		File [] fList = directory.listFiles();
 		for(File file : fList) 
+		{
+			if(file.isFile())
+			{
+				sDays.add(file.getName());
+			}
+		}
+		
+		// Parse the files of the next day while the current one is simulated, the Bluetooth 
+		// files add up from day to day
+		TracePrefetcher thePrefetcher = new TracePrefetcher(dlBT.getPath(), DataLoaderNetworkTraffic.theLoader.getPath());
+		
+		if(sDays.size() > 0)
+		{
+			thePrefetcher.prefetch(sDays.subList(0, 1).toArray(new String[0]), new String [] { sDays.get(0) });
+		}
+		
+		for(int nDay = 0; nDay < sDays.size(); nDay++)
+		{
+			String fileName = sDays.get(nDay);
+			TraceDay theDay = thePrefetcher.take();
+			
+			if(nDay + 1 < sDays.size())
+			{
+				thePrefetcher.prefetch(sDays.subList(0, nDay + 2).toArray(new String[0]), new String [] { sDays.get(nDay + 1) });
+			}
+			
+			dlBT.addFile(fileName);
+			dlBT.setFlag_AdjustTime(true);
+			DataLoaderNetworkTraffic.theLoader.addFile(fileName);
+			
+			if(theDay == null || !theDay.loadTraces(dlBT, DataLoaderNetworkTraffic.theLoader))
+			{
+				System.err.println("* Error: Unable to load the prefetched files of " + fileName);
+				break;
+			}
+			
+			SimulationEngine.theEngine.summarizeQueue();
+			SimulationEngine.theEngine.setDate(fileName.substring(0, 8));
+			
+			EventSimDone	finishTime;
+			finishTime = new EventSimDone();
+			
+			finishTime.setTime(24.0*60*60-1);
+			SimulationEngine.theEngine.addEvent(finishTime);	
+			
+			SimulationEngine.theEngine.initializeRegisteredObjects();
+			SimulationEngine.theEngine.doSimulation();
+			
+			SimulationEngine.theEngine.resetSimulation();
+			DataLoaderNetworkTraffic.theLoader.resetDataLoader();
+		}
+		
+		thePrefetcher.shutdown();
+		if(!theResults.drain())
+		{
+			System.err.println("* Error: The results of at least one day could not be written");
+		}
+		
+		SimulationEngine.theEngine.setResultSink(theSink);
+	}
+	
+	/**
+	 * Same as testDailyContentProp but reading the binary traces written by TraceConverter, e.g.
+	 *     TraceConverter bluetooth ./BluetoothData/ ./BinaryData/Bluetooth/
+	 *     TraceConverter traffic ./TrafficData/HourlyTotal/ ./BinaryData/HourlyTotal/
+	 */
+	public static void testDailyContentPropBinary ()
+	{
+		DataLoaderBluetoothBinary dlBT;
+		dlBT = new DataLoaderBluetoothBinary();
+		dlBT.setPath("./BinaryData/Bluetooth/");
+		
+		DataLoaderNetworkTrafficBinary dlTraffic;
+		dlTraffic = new DataLoaderNetworkTrafficBinary();
+		dlTraffic.setPath("./BinaryData/HourlyTotal/");
+		
+		// The nodes pull the overall hourly traffic from the shared traffic loader
+		SimulationContext.getDefault().setLoader_NetworkTraffic(dlTraffic);
+		
+		// Write the results of a day while the next day is simulated
+		ResultSink theSink = SimulationEngine.theEngine.getResultSink();
+		ResultSinkAsync theResults = new ResultSinkAsync(theSink);
+		SimulationEngine.theEngine.setResultSink(theResults);
+		
+		// Go through the days in order
+		File directory = new File(dlBT.getPath());
+		File [] fList = directory.listFiles();
+		Arrays.sort(fList);
+		for(File file : fList) 
 		{
 			if(file.isFile())
 			{
@@ -72,8 +193,8 @@ public class SimpleTest {
 				dlBT.setFlag_AdjustTime(true);
 				dlBT.startFileLoad();
 				
-				DataLoaderNetworkTraffic.theLoader.addFile(fileName);
-				DataLoaderNetworkTraffic.theLoader.startFileLoad();
+				dlTraffic.addFile(fileName);
+				dlTraffic.startFileLoad();
 				
 				SimulationEngine.theEngine.summarizeQueue();
 				SimulationEngine.theEngine.setDate(fileName.substring(0, 8));
@@ -88,9 +209,116 @@ public class SimpleTest {
 				SimulationEngine.theEngine.doSimulation();
 				
 				SimulationEngine.theEngine.resetSimulation();
-				DataLoaderNetworkTraffic.theLoader.resetDataLoader();
+				dlTraffic.resetDataLoader();
 			}
 		}	
+		
+		if(!theResults.drain())
+		{
+			System.err.println("* Error: The results of at least one day could not be written");
+		}
+		
+		SimulationEngine.theEngine.setResultSink(theSink);
+	}
+	
+	/**
+	 * Same as testDailyContentProp but every day is simulated in a context of its own so that 
+	 * the days run side by side, one per core
+	 */
+	public static void testDailyContentPropParallel ()
+	{
+		final Vector<String>	btFiles;
+		ExecutorService			thePool;
+		Vector<Future<?>>		theDays;
+		
+		btFiles = new Vector<String>();
+		thePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		theDays = new Vector<Future<?>>();
+		
+		File directory = new File("./BluetoothData/");
+		File [] fList = directory.listFiles();
+		for(File file : fList) 
+		{
+			if(file.isFile())
+			{
+				final String fileName = file.getName();
+				
+				// The Bluetooth loader in testDailyContentProp keeps the files of the earlier days
+				// so hand each day the same list of files that it would have seen there
+				btFiles.add(fileName);
+				final String [] dayFiles = btFiles.toArray(new String[btFiles.size()]);
+				
+				theDays.add(thePool.submit(new Runnable()
+				{
+					public void run ()
+					{
+						simulateDay(fileName, dayFiles);
+					}
+				}));
+			}
+		}
+		
+		for(Future<?> theDay : theDays)
+		{
+			try
+			{
+				theDay.get();
+			}
+			catch (Exception e)
+			{
+				System.err.println("* Error: Simulation of a day failed with " + e);
+			}
+		}
+		
+		thePool.shutdown();
+	}
+	
+	/**
+	 * Simulate one day in a context of its own on the calling thread
+	 * @param fileName The traffic file of the day (also the source of the date)
+	 * @param btFiles The Bluetooth files to load for the day
+	 */
+	private static void simulateDay (String fileName, String [] btFiles)
+	{
+		SimulationContext theContext = new SimulationContext();
+		SimulationContext.setCurrent(theContext);
+		
+		try
+		{
+			SimulationEngine theEngine = theContext.getEngine();
+			
+			DataLoaderBluetooth dlBT = theContext.getLoader_Bluetooth();
+			dlBT.setPath("./BluetoothData/");
+			
+			for(String btFile : btFiles)
+			{
+				dlBT.addFile(btFile);
+			}
+			
+			dlBT.setFlag_AdjustTime(true);
+			dlBT.startFileLoad();
+			
+			DataLoaderNetworkTraffic dlTraffic = theContext.getLoader_NetworkTraffic();
+			dlTraffic.setPath("./TrafficData/HourlyTotal/");
+			dlTraffic.addFile(fileName);
+			dlTraffic.startFileLoad();
+			
+			theEngine.summarizeQueue();
+			theEngine.setDate(fileName.substring(0, 8));
+			
+			EventSimDone	finishTime;
+			finishTime = new EventSimDone();
+			
+			finishTime.setTime(24.0*60*60-1);
+			theEngine.addEvent(finishTime);	
+			
+			theEngine.initializeRegisteredObjects();
+			theEngine.doSimulation();
+		}
+		finally
+		{
+			SimulationContext.setCurrent(null);
+		}
 	}
 	
 	public static void testReadNetworkUsage ()
@@ -187,6 +415,8 @@ public class SimpleTest {
 		//testTimeResolution();
 		//testContentProp48Hours();
 		testDailyContentProp();
+		//testDailyContentPropBinary();
+		//testDailyContentPropParallel();
 		//test_StatValidation();
 		//testReadNetworkUsage();
 	}
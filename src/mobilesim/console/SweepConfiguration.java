@@ -0,0 +1,108 @@
+package mobilesim.console;
+
+import mobilesim.core.*;
+
+/**
+ * One point of a parameter sweep: the content exchange filters and the content creation interval
+ * to simulate with. Anything not set keeps the default of the simulation.
+ *
+ * @author Striegel
+ *
+ */
+public class SweepConfiguration {
+
+	String		m_sName;
+
+	int			m_nFilter_RSSI;
+	int			m_nFilter_Hops;
+	double		m_fFilter_Latency;
+
+	double		m_fInterval_ContentCreate;
+
+	/**
+	 * @param sName The name of the configuration, the results go into a directory of this name
+	 */
+	public SweepConfiguration (String sName)
+	{
+		m_sName = sName;
+
+		m_nFilter_RSSI = SimulationEngine.FILTER_RSSI;
+		m_nFilter_Hops = SimulationEngine.FILTER_HOPS;
+		m_fFilter_Latency = SimulationEngine.FILTER_LACY;
+
+		m_fInterval_ContentCreate = 3600;
+	}
+
+	public String getName ()
+	{
+		return m_sName;
+	}
+
+	public void setFilter_RSSI (int nRSSI)
+	{
+		m_nFilter_RSSI = nRSSI;
+	}
+
+	public int getFilter_RSSI ()
+	{
+		return m_nFilter_RSSI;
+	}
+
+	public void setFilter_Hops (int nHops)
+	{
+		m_nFilter_Hops = nHops;
+	}
+
+	public int getFilter_Hops ()
+	{
+		return m_nFilter_Hops;
+	}
+
+	public void setFilter_Latency (double fLatency)
+	{
+		m_fFilter_Latency = fLatency;
+	}
+
+	public double getFilter_Latency ()
+	{
+		return m_fFilter_Latency;
+	}
+
+	public void setInterval_ContentCreate (double fInterval)
+	{
+		m_fInterval_ContentCreate = fInterval;
+	}
+
+	public double getInterval_ContentCreate ()
+	{
+		return m_fInterval_ContentCreate;
+	}
+
+	/**
+	 * Set up the engine of a simulation for this configuration
+	 * @param theEngine
+	 * @param sOutputPath The directory the results of the configuration go to
+	 */
+	public void applyTo (SimulationEngine theEngine, String sOutputPath)
+	{
+		theEngine.setFilter_RSSI(m_nFilter_RSSI);
+		theEngine.setFilter_Hops(m_nFilter_Hops);
+		theEngine.setFilter_Latency(m_fFilter_Latency);
+		theEngine.setOutputPath(sOutputPath);
+	}
+
+	/**
+	 * Set up a (loaded) mobile node for this configuration
+	 * @param theNode
+	 */
+	public void applyTo (MobileNode theNode)
+	{
+		theNode.setInterval_ContentCreate(m_fInterval_ContentCreate);
+	}
+
+	public String toString ()
+	{
+		return m_sName + " (RSSI >= " + m_nFilter_RSSI + ", hops <= " + m_nFilter_Hops + ", latency <= " +
+				m_fFilter_Latency + ", content every " + m_fInterval_ContentCreate + " s)";
+	}
+}
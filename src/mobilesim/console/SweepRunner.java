@@ -0,0 +1,221 @@
+package mobilesim.console;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import mobilesim.core.*;
+
+/**
+ * Run a parameter sweep: every configuration is simulated on every day. Each day is read and
+ * parsed only once (see TraceDay) and then shared by all of the simulations of that day, which
+ * run side by side on a fixed number of threads. Every simulation has a context (and hence nodes
+ * and statistics) of its own and writes its results to a directory of its own:
+ *
+ *     (output directory)/(configuration name)/(field)/(date).csv
+ *
+ * Usage:  SweepRunner <output directory> <RSSI list> <hops list> <latency list> <content interval list> [threads]
+ *
+ * where each list is comma separated, e.g. -100,-90 and the sweep covers all combinations. The
+ * days are the files in ./BluetoothData/ with the traffic file of the same name in
+ * ./TrafficData/HourlyTotal/, each day is simulated on its own Bluetooth file.
+ *
+ * @author Striegel
+ *
+ */
+public class SweepRunner {
+
+	Vector<TraceDay>				m_Days;
+	Vector<SweepConfiguration>		m_Configurations;
+
+	String							m_sOutputPath;
+	int								m_nThreads;
+
+	/**
+	 * @param sOutputPath The directory that holds the results of all of the configurations
+	 * @param nThreads The number of simulations to run at the same time
+	 */
+	public SweepRunner (String sOutputPath, int nThreads)
+	{
+		m_Days = new Vector<TraceDay>();
+		m_Configurations = new Vector<SweepConfiguration>();
+		m_sOutputPath = sOutputPath;
+		m_nThreads = Math.max(nThreads, 1);
+	}
+
+	public void addDay (TraceDay theDay)
+	{
+		m_Days.add(theDay);
+	}
+
+	public void addConfiguration (SweepConfiguration theConfiguration)
+	{
+		m_Configurations.add(theConfiguration);
+	}
+
+	/**
+	 * Simulate all of the configurations on all of the days
+	 * @return True if every simulation finished, false otherwise
+	 */
+	public boolean run ()
+	{
+		ExecutorService			thePool;
+		Vector<Future<Boolean>>	theRuns;
+		boolean					bResult;
+
+		thePool = Executors.newFixedThreadPool(m_nThreads);
+		theRuns = new Vector<Future<Boolean>>();
+
+		for(final SweepConfiguration theConfiguration : m_Configurations)
+		{
+			for(final TraceDay theDay : m_Days)
+			{
+				theRuns.add(thePool.submit(new Callable<Boolean>()
+				{
+					public Boolean call ()
+					{
+						return simulate(theDay, theConfiguration);
+					}
+				}));
+			}
+		}
+
+		bResult = true;
+
+		for(Future<Boolean> theRun : theRuns)
+		{
+			try
+			{
+				bResult &= theRun.get();
+			}
+			catch (Exception e)
+			{
+				System.err.println("* Error: A simulation of the sweep failed with " + e);
+				bResult = false;
+			}
+		}
+
+		thePool.shutdown();
+		return bResult;
+	}
+
+	/**
+	 * Simulate one configuration on one day in a context of its own on the calling thread
+	 * @return True if successful, false otherwise
+	 */
+	boolean simulate (TraceDay theDay, SweepConfiguration theConfiguration)
+	{
+		SimulationContext theContext = new SimulationContext();
+		SimulationContext.setCurrent(theContext);
+
+		try
+		{
+			SimulationEngine theEngine = theContext.getEngine();
+
+			theConfiguration.applyTo(theEngine, m_sOutputPath + theConfiguration.getName() + "/");
+
+			if(!theDay.loadInto(theContext.getLoader_Bluetooth(), theContext.getLoader_NetworkTraffic()))
+			{
+				System.err.println("* Error: Unable to load " + theDay.getDate() + " for " + theConfiguration.getName());
+				return false;
+			}
+
+			for(int i = 0; i < theEngine.getNumberSimObjects(); i++)
+			{
+				SimObject theObject = theEngine.resolveObjectByIndex(i);
+
+				if(theObject instanceof MobileNode)
+				{
+					theConfiguration.applyTo((MobileNode) theObject);
+				}
+			}
+
+			theEngine.setDate(theDay.getDate());
+
+			EventSimDone	finishTime;
+			finishTime = new EventSimDone();
+
+			finishTime.setTime(24.0*60*60-1);
+			theEngine.addEvent(finishTime);
+
+			theEngine.initializeRegisteredObjects();
+			theEngine.doSimulation();
+			return true;
+		}
+		finally
+		{
+			SimulationContext.setCurrent(null);
+		}
+	}
+
+	private static String [] splitList (String sList)
+	{
+		return sList.split(",");
+	}
+
+	public static void main (String [] args)
+	{
+		SweepRunner		theRunner;
+		File []			fList;
+
+		if(args.length < 5)
+		{
+			System.err.println("Usage: SweepRunner <output directory> <RSSI list> <hops list> <latency list> <content interval list> [threads]");
+			return;
+		}
+
+		theRunner = new SweepRunner(args[0].endsWith("/") ? args[0] : args[0] + "/",
+				(args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors());
+
+		for(String sRSSI : splitList(args[1]))
+		{
+			for(String sHops : splitList(args[2]))
+			{
+				for(String sLatency : splitList(args[3]))
+				{
+					for(String sInterval : splitList(args[4]))
+					{
+						SweepConfiguration theConfiguration;
+
+						theConfiguration = new SweepConfiguration("RSSI" + sRSSI + "_Hops" + sHops + "_Latency" + sLatency + "_Interval" + sInterval);
+						theConfiguration.setFilter_RSSI(Integer.parseInt(sRSSI));
+						theConfiguration.setFilter_Hops(Integer.parseInt(sHops));
+						theConfiguration.setFilter_Latency(Double.parseDouble(sLatency));
+						theConfiguration.setInterval_ContentCreate(Double.parseDouble(sInterval));
+						theRunner.addConfiguration(theConfiguration);
+					}
+				}
+			}
+		}
+
+		fList = new File("./BluetoothData/").listFiles();
+
+		if(fList == null)
+		{
+			System.err.println("* Error: Unable to list the files in ./BluetoothData/");
+			return;
+		}
+
+		Arrays.sort(fList);
+
+		for(File file : fList)
+		{
+			if(file.isFile())
+			{
+				try
+				{
+					theRunner.addDay(TraceDay.load("./BluetoothData/", new String [] { file.getName() },
+							"./TrafficData/HourlyTotal/", file.getName(), null));
+				}
+				catch (IOException e)
+				{
+					System.err.println("* Error: Unable to read the day " + file.getName());
+					System.err.println(e);
+					return;
+				}
+			}
+		}
+
+		theRunner.run();
+	}
+}
@@ -0,0 +1,97 @@
+package mobilesim.console;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import mobilesim.core.*;
+
+/**
+ * One-shot conversion of the CSV trace files into binary trace files (see BinaryTrace) so that
+ * repeated runs can skip the text parsing. Every .csv file in the input directory is converted
+ * into a file of the same name with the .trace extension in the output directory.
+ * 
+ * Usage:  TraceConverter bluetooth|traffic <input directory> <output directory>
+ * 
+ * @author Striegel
+ *
+ */
+public class TraceConverter {
+
+	public static final int CONVERT_BLUETOOTH = 0;
+	public static final int CONVERT_TRAFFIC = 1;
+	
+	/**
+	 * Convert all of the CSV files in a directory
+	 * 
+	 * @param nKind The kind of file (CONVERT_BLUETOOTH or CONVERT_TRAFFIC)
+	 * @param sInputPath The directory holding the CSV files
+	 * @param sOutputPath The directory to write the binary files into
+	 * @return True if successful, false otherwise
+	 */
+	public static boolean convertDirectory (int nKind, String sInputPath, String sOutputPath)
+	{
+		File []		fList;
+		
+		fList = new File(sInputPath).listFiles();
+		
+		if(fList == null)
+		{
+			System.err.println("* Error: Unable to list the files in " + sInputPath);
+			return false;
+		}
+		
+		Arrays.sort(fList);
+		new File(sOutputPath).mkdirs();
+		
+		for(File file : fList)
+		{
+			String sName = file.getName();
+			
+			if(!file.isFile() || !sName.endsWith(".csv"))
+			{
+				continue;
+			}
+			
+			String sOutput = new File(sOutputPath, sName.substring(0, sName.length() - 4) + BinaryTrace.BINARY_TRACE_EXTENSION).getPath();
+			
+			try
+			{
+				if(nKind == CONVERT_BLUETOOTH)
+				{
+					ProximityTrace theTrace = ProximityTraceParser.parseFile(file.getPath(), new TokenDictionary(), ForkJoinPool.commonPool());
+					BinaryTrace.writeProximityTrace(sOutput, theTrace);
+					System.out.println("Converted " + file.getPath() + " (" + theTrace.size() + " records) to " + sOutput);
+				}
+				else
+				{
+					TrafficTrace theTrace = TrafficTrace.parseFile(file.getPath(), new TokenDictionary());
+					BinaryTrace.writeTrafficTrace(sOutput, theTrace);
+					System.out.println("Converted " + file.getPath() + " (" + theTrace.size() + " rows) to " + sOutput);
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("* Error: Unable to convert " + file.getPath());
+				System.err.println(e);
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	public static void main (String[] args)
+	{
+		if(args.length != 3 || !(args[0].equals("bluetooth") || args[0].equals("traffic")))
+		{
+			System.err.println("Usage: TraceConverter bluetooth|traffic <input directory> <output directory>");
+			System.exit(1);
+		}
+		
+		if(!convertDirectory(args[0].equals("bluetooth") ? CONVERT_BLUETOOTH : CONVERT_TRAFFIC, args[1], args[2]))
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package mobilesim.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reading and writing of the compact binary (columnar) form of the trace files. A binary trace
+ * holds exactly what the CSV parsers produce so that loading it skips all of the text parsing:
+ *
+ *     int     magic ("MSTR"), version, kind of trace
+ *     int     number of names, then each name as an int byte count and UTF-8 bytes
+ *
+ * followed by the columns for the kind of trace. For a proximity trace:
+ *
+ *     int     number of records
+ *     long    number of ignored lines
+ *     int[]   node code, double[] time, int[] neighbor code
+ *     byte    width of the RSSI column (1 or 4), then the RSSI as byte[] or int[]
+ *
+ * and for a traffic trace:
+ *
+ *     int     number of rows
+ *     long    number of skipped lines
+ *     int[]   node code, int[] row length
+ *     int     number of values, then double[] values
+ *
+ * The codes in a file refer to the names in the file and are translated into the dictionary of
+ * the reader when the trace is read. Everything is big endian.
+ *
+ * @author Striegel
+ *
+ */
+public class BinaryTrace {
+
+	public static final int		BINARY_TRACE_MAGIC = 0x4D535452;
+	public static final int		BINARY_TRACE_VERSION = 1;
+
+	public static final int		BINARY_TRACE_KIND_PROXIMITY = 1;
+	public static final int		BINARY_TRACE_KIND_TRAFFIC = 2;
+
+	// Extension used for binary trace files
+	public static final String	BINARY_TRACE_EXTENSION = ".trace";
+
+	/**
+	 * Write a proximity trace out in binary form
+	 *
+	 * @param sFile The file to write
+	 * @param theTrace The trace to write
+	 * @throws IOException
+	 */
+	public static void writeProximityTrace (String sFile, ProximityTrace theTrace) throws IOException
+	{
+		DataOutputStream	theOutput;
+		boolean				bByteRSSI;
+
+		theOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sFile), 1 << 16));
+
+		try
+		{
+			writeHeader(theOutput, BINARY_TRACE_KIND_PROXIMITY, theTrace.getDictionary());
+
+			theOutput.writeInt(theTrace.size());
+			theOutput.writeLong(theTrace.getIgnoredCount());
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				theOutput.writeInt(theTrace.getNodeCode(i));
+			}
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				theOutput.writeDouble(theTrace.getTime(i));
+			}
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				theOutput.writeInt(theTrace.getNeighborCode(i));
+			}
+
+			// The signal strength nearly always fits in a byte but keep the full value if not
+			bByteRSSI = true;
+
+			for(int i = 0; i < theTrace.size() && bByteRSSI; i++)
+			{
+				bByteRSSI = (theTrace.getRSSI(i) == (byte) theTrace.getRSSI(i));
+			}
+
+			theOutput.writeByte(bByteRSSI ? 1 : 4);
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				if(bByteRSSI)
+				{
+					theOutput.writeByte(theTrace.getRSSI(i));
+				}
+				else
+				{
+					theOutput.writeInt(theTrace.getRSSI(i));
+				}
+			}
+		}
+		finally
+		{
+			theOutput.close();
+		}
+	}
+
+	/**
+	 * Write a traffic trace out in binary form
+	 *
+	 * @param sFile The file to write
+	 * @param theTrace The trace to write
+	 * @throws IOException
+	 */
+	public static void writeTrafficTrace (String sFile, TrafficTrace theTrace) throws IOException
+	{
+		DataOutputStream	theOutput;
+
+		theOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sFile), 1 << 16));
+
+		try
+		{
+			writeHeader(theOutput, BINARY_TRACE_KIND_TRAFFIC, theTrace.getDictionary());
+
+			theOutput.writeInt(theTrace.size());
+			theOutput.writeLong(theTrace.getSkippedCount());
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				theOutput.writeInt(theTrace.getNodeCode(i));
+			}
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				theOutput.writeInt(theTrace.getRowLength(i));
+			}
+
+			// Rows are written back to back in row order
+			theOutput.writeInt(theTrace.getValueCount());
+
+			for(int i = 0; i < theTrace.size(); i++)
+			{
+				for(int j = 0; j < theTrace.getRowLength(i); j++)
+				{
+					theOutput.writeDouble(theTrace.getValues()[theTrace.getRowStart(i) + j]);
+				}
+			}
+		}
+		finally
+		{
+			theOutput.close();
+		}
+	}
+
+	private static void writeHeader (DataOutputStream theOutput, int nKind, TokenDictionary theDictionary) throws IOException
+	{
+		theOutput.writeInt(BINARY_TRACE_MAGIC);
+		theOutput.writeInt(BINARY_TRACE_VERSION);
+		theOutput.writeInt(nKind);
+
+		theOutput.writeInt(theDictionary.size());
+
+		for(int i = 0; i < theDictionary.size(); i++)
+		{
+			byte [] theBytes = theDictionary.getToken(i).getBytes(StandardCharsets.UTF_8);
+
+			theOutput.writeInt(theBytes.length);
+			theOutput.write(theBytes);
+		}
+	}
+
+	/**
+	 * Read a binary proximity trace
+	 *
+	 * @param sFile The file to read
+	 * @param theDictionary The dictionary to translate the names into
+	 * @return The trace
+	 * @throws IOException if the file cannot be read, is not a proximity trace or is corrupt
+	 */
+	public static ProximityTrace readProximityTrace (String sFile, TokenDictionary theDictionary) throws IOException
+	{
+		ByteBuffer			theBuffer;
+		String []			theNames;
+		int []				theCodeMap;
+		ProximityTrace		theTrace;
+		int					nRecords;
+		byte				nWidthRSSI;
+
+		theBuffer = mapFile(sFile);
+		theNames = readHeader(theBuffer, sFile, BINARY_TRACE_KIND_PROXIMITY);
+
+		requireBytes(theBuffer, 4 + 8, sFile);
+		nRecords = readCount(theBuffer, sFile);
+
+		// Node code, time and neighbor code for each record plus the width of the RSSI
+		requireBytes(theBuffer, 8 + (4L + 8 + 4) * nRecords + 1, sFile);
+
+		theTrace = new ProximityTrace(theDictionary, nRecords);
+		theTrace.m_nRecords = nRecords;
+		theTrace.m_lIgnored = theBuffer.getLong();
+
+		readInts(theBuffer, theTrace.m_NodeCode, nRecords);
+		readDoubles(theBuffer, theTrace.m_Time, nRecords);
+		readInts(theBuffer, theTrace.m_NeighborCode, nRecords);
+
+		nWidthRSSI = theBuffer.get();
+
+		if(nWidthRSSI == 1)
+		{
+			requireBytes(theBuffer, nRecords, sFile);
+
+			for(int i = 0; i < nRecords; i++)
+			{
+				theTrace.m_RSSI[i] = theBuffer.get();
+			}
+		}
+		else if(nWidthRSSI == 4)
+		{
+			requireBytes(theBuffer, 4L * nRecords, sFile);
+			readInts(theBuffer, theTrace.m_RSSI, nRecords);
+		}
+		else
+		{
+			throw corruptTrace(sFile);
+		}
+
+		requireCodes(theTrace.m_NodeCode, nRecords, theNames.length, sFile);
+		requireCodes(theTrace.m_NeighborCode, nRecords, theNames.length, sFile);
+
+		// Only now that the whole file checks out do its names go into the dictionary
+		theCodeMap = encodeNames(theNames, theDictionary);
+
+		for(int i = 0; i < nRecords; i++)
+		{
+			theTrace.m_NodeCode[i] = theCodeMap[theTrace.m_NodeCode[i]];
+			theTrace.m_NeighborCode[i] = theCodeMap[theTrace.m_NeighborCode[i]];
+		}
+
+		return theTrace;
+	}
+
+	/**
+	 * Read a binary traffic trace
+	 *
+	 * @param sFile The file to read
+	 * @param theDictionary The dictionary to translate the names into
+	 * @return The trace
+	 * @throws IOException if the file cannot be read, is not a traffic trace or is corrupt
+	 */
+	public static TrafficTrace readTrafficTrace (String sFile, TokenDictionary theDictionary) throws IOException
+	{
+		ByteBuffer			theBuffer;
+		String []			theNames;
+		int []				theCodeMap;
+		TrafficTrace		theTrace;
+		int					nRows;
+		int					nValues;
+		long				lRowValues;
+
+		theBuffer = mapFile(sFile);
+		theNames = readHeader(theBuffer, sFile, BINARY_TRACE_KIND_TRAFFIC);
+
+		requireBytes(theBuffer, 4, sFile);
+		nRows = readCount(theBuffer, sFile);
+
+		// The skipped lines, node code and row length for each row plus the number of values
+		requireBytes(theBuffer, 8 + (4L + 4) * nRows + 4, sFile);
+
+		theTrace = new TrafficTrace(theDictionary);
+		theTrace.m_lSkipped = theBuffer.getLong();
+		theTrace.m_NodeCode = new int[Math.max(nRows, 1)];
+		theTrace.m_RowStart = new int[Math.max(nRows, 1)];
+		theTrace.m_RowLength = new int[Math.max(nRows, 1)];
+		theTrace.m_nRows = nRows;
+
+		readInts(theBuffer, theTrace.m_NodeCode, nRows);
+		readInts(theBuffer, theTrace.m_RowLength, nRows);
+
+		nValues = readCount(theBuffer, sFile);
+		requireBytes(theBuffer, 8L * nValues, sFile);
+
+		theTrace.m_Values = new double[Math.max(nValues, 1)];
+		theTrace.m_nValues = nValues;
+		readDoubles(theBuffer, theTrace.m_Values, nValues);
+
+		// The rows have to stay within the values
+		lRowValues = 0;
+
+		for(int i = 0; i < nRows; i++)
+		{
+			if(theTrace.m_RowLength[i] < 0)
+			{
+				throw corruptTrace(sFile);
+			}
+
+			lRowValues += theTrace.m_RowLength[i];
+		}
+
+		if(lRowValues > nValues)
+		{
+			throw corruptTrace(sFile);
+		}
+
+		requireCodes(theTrace.m_NodeCode, nRows, theNames.length, sFile);
+
+		// Only now that the whole file checks out do its names go into the dictionary
+		theCodeMap = encodeNames(theNames, theDictionary);
+
+		for(int i = 0, nStart = 0; i < nRows; i++)
+		{
+			theTrace.m_NodeCode[i] = theCodeMap[theTrace.m_NodeCode[i]];
+			theTrace.m_RowStart[i] = nStart;
+			nStart += theTrace.m_RowLength[i];
+		}
+
+		return theTrace;
+	}
+
+	private static ByteBuffer mapFile (String sFile) throws IOException
+	{
+		RandomAccessFile	theFile;
+
+		theFile = new RandomAccessFile(sFile, "r");
+
+		try
+		{
+			FileChannel theChannel = theFile.getChannel();
+			return theChannel.map(FileChannel.MapMode.READ_ONLY, 0, theChannel.size());
+		}
+		finally
+		{
+			theFile.close();
+		}
+	}
+
+	/**
+	 * Check the header and read the names of the file
+	 * @return The names, by their codes in the file
+	 */
+	private static String [] readHeader (ByteBuffer theBuffer, String sFile, int nKind) throws IOException
+	{
+		String []	theNames;
+
+		if(theBuffer.remaining() < 16 || theBuffer.getInt() != BINARY_TRACE_MAGIC)
+		{
+			throw new IOException("Not a binary trace file: " + sFile);
+		}
+
+		if(theBuffer.getInt() != BINARY_TRACE_VERSION)
+		{
+			throw new IOException("Unsupported binary trace version in " + sFile);
+		}
+
+		if(theBuffer.getInt() != nKind)
+		{
+			throw new IOException("Wrong kind of binary trace in " + sFile);
+		}
+
+		theNames = new String[readCount(theBuffer, sFile)];
+
+		for(int i = 0; i < theNames.length; i++)
+		{
+			requireBytes(theBuffer, 4, sFile);
+			byte [] theBytes = new byte[readCount(theBuffer, sFile)];
+
+			requireBytes(theBuffer, theBytes.length, sFile);
+			theBuffer.get(theBytes);
+			theNames[i] = new String(theBytes, StandardCharsets.UTF_8);
+		}
+
+		return theNames;
+	}
+
+	/**
+	 * Translate the names of a file into the dictionary
+	 * @return The map from the codes of the file to the codes of the dictionary
+	 */
+	private static int [] encodeNames (String [] theNames, TokenDictionary theDictionary)
+	{
+		int [] theCodeMap = new int[theNames.length];
+
+		for(int i = 0; i < theNames.length; i++)
+		{
+			theCodeMap[i] = theDictionary.encode(theNames[i]);
+		}
+
+		return theCodeMap;
+	}
+
+	/**
+	 * Read a count, which can be no more than the bytes left in the file
+	 */
+	private static int readCount (ByteBuffer theBuffer, String sFile) throws IOException
+	{
+		int nCount = theBuffer.getInt();
+
+		if(nCount < 0 || nCount > theBuffer.remaining())
+		{
+			throw corruptTrace(sFile);
+		}
+
+		return nCount;
+	}
+
+	private static void requireBytes (ByteBuffer theBuffer, long lBytes, String sFile) throws IOException
+	{
+		if(theBuffer.remaining() < lBytes)
+		{
+			throw corruptTrace(sFile);
+		}
+	}
+
+	private static void requireCodes (int [] theCodes, int nCount, int nNames, String sFile) throws IOException
+	{
+		for(int i = 0; i < nCount; i++)
+		{
+			if(theCodes[i] < 0 || theCodes[i] >= nNames)
+			{
+				throw corruptTrace(sFile);
+			}
+		}
+	}
+
+	private static IOException corruptTrace (String sFile)
+	{
+		return new IOException("Corrupt binary trace: " + sFile);
+	}
+
+	private static void readInts (ByteBuffer theBuffer, int [] theValues, int nCount)
+	{
+		theBuffer.asIntBuffer().get(theValues, 0, nCount);
+		theBuffer.position(theBuffer.position() + 4 * nCount);
+	}
+
+	private static void readDoubles (ByteBuffer theBuffer, double [] theValues, int nCount)
+	{
+		theBuffer.asDoubleBuffer().get(theValues, 0, nCount);
+		theBuffer.position(theBuffer.position() + 8 * nCount);
+	}
+}
@@ -0,0 +1,517 @@
+package mobilesim.core;
+
+import java.util.*;
+
+import mobilesim.utilities.IntIntHashMap;
+
+/**
+ * A time-indexed index of the contacts in the proximity traces. For each (unordered) pair of
+ * nodes the graph keeps the times of all of their contacts in sorted order together with the
+ * signal strength of each contact, plus a max tree over the signal strength. This answers
+ * questions such as who was within a signal strength of a node during a period or when two nodes
+ * meet next without replaying the events of the simulation:
+ *
+ *   - getNeighbors(node, start, end, RSSI) takes O(log n) per neighbor of the node
+ *   - getNextContact(a, b, time, RSSI) takes O(log n)
+ *
+ * where n is the number of contacts of a pair. The DataLoaderBluetooth fills the graph while it
+ * loads (see DataLoaderBluetooth.setFlag_ContactGraph). Contacts may be added in any order, a
+ * pair is sorted again the next time that it is queried. Queries therefore change the graph and
+ * a graph should only be queried from several threads at once after prepare was called.
+ *
+ * @author Striegel
+ *
+ */
+public class ContactGraph {
+
+	/**
+	 * The contacts of one pair of nodes
+	 */
+	static class ContactSeries {
+
+		double []	m_fTimes;
+		int []		m_nRSSI;
+		int			m_nSize;
+		boolean		m_bSorted;
+
+		// Max of the signal strength over ranges of contacts, the leaves start at m_nLeaves.
+		// Null until the series is prepared (again) after contacts were added.
+		int []		m_nMaxTree;
+		int			m_nLeaves;
+
+		ContactSeries ()
+		{
+			m_fTimes = new double[4];
+			m_nRSSI = new int[4];
+			m_nSize = 0;
+			m_bSorted = true;
+			m_nMaxTree = null;
+			m_nLeaves = 0;
+		}
+
+		void add (double fTime, int nRSSI)
+		{
+			if(m_nSize == m_fTimes.length)
+			{
+				m_fTimes = Arrays.copyOf(m_fTimes, 2 * m_nSize);
+				m_nRSSI = Arrays.copyOf(m_nRSSI, 2 * m_nSize);
+			}
+
+			if(m_nSize > 0 && fTime < m_fTimes[m_nSize - 1])
+			{
+				m_bSorted = false;
+			}
+
+			m_fTimes[m_nSize] = fTime;
+			m_nRSSI[m_nSize] = nRSSI;
+			m_nSize++;
+			m_nMaxTree = null;
+		}
+
+		/**
+		 * Sort the contacts by time (if needed) and build the max tree
+		 */
+		void prepare ()
+		{
+			if(m_nMaxTree != null)
+			{
+				return;
+			}
+
+			if(!m_bSorted)
+			{
+				sortByTime();
+			}
+
+			m_nLeaves = 1;
+
+			while(m_nLeaves < m_nSize)
+			{
+				m_nLeaves <<= 1;
+			}
+
+			m_nMaxTree = new int[2 * m_nLeaves];
+			Arrays.fill(m_nMaxTree, Integer.MIN_VALUE);
+			System.arraycopy(m_nRSSI, 0, m_nMaxTree, m_nLeaves, m_nSize);
+
+			for(int i = m_nLeaves - 1; i > 0; i--)
+			{
+				m_nMaxTree[i] = Math.max(m_nMaxTree[2 * i], m_nMaxTree[2 * i + 1]);
+			}
+		}
+
+		private void sortByTime ()
+		{
+			Integer []	theOrder;
+			double []	fTimes;
+			int []		nRSSI;
+
+			theOrder = new Integer[m_nSize];
+
+			for(int i = 0; i < m_nSize; i++)
+			{
+				theOrder[i] = i;
+			}
+
+			final double [] fKeys = m_fTimes;
+
+			Arrays.sort(theOrder, new Comparator<Integer>()
+			{
+				public int compare (Integer a, Integer b)
+				{
+					return Double.compare(fKeys[a], fKeys[b]);
+				}
+			});
+
+			fTimes = new double[m_fTimes.length];
+			nRSSI = new int[m_nRSSI.length];
+
+			for(int i = 0; i < m_nSize; i++)
+			{
+				fTimes[i] = m_fTimes[theOrder[i]];
+				nRSSI[i] = m_nRSSI[theOrder[i]];
+			}
+
+			m_fTimes = fTimes;
+			m_nRSSI = nRSSI;
+			m_bSorted = true;
+		}
+
+		/**
+		 * @return The index of the first contact at or after the time
+		 */
+		int lowerBound (double fTime)
+		{
+			int nLow = 0;
+			int nHigh = m_nSize;
+
+			while(nLow < nHigh)
+			{
+				int nMiddle = (nLow + nHigh) >>> 1;
+
+				if(m_fTimes[nMiddle] < fTime)
+				{
+					nLow = nMiddle + 1;
+				}
+				else
+				{
+					nHigh = nMiddle;
+				}
+			}
+
+			return nLow;
+		}
+
+		/**
+		 * @return The index of the first contact after the time
+		 */
+		int upperBound (double fTime)
+		{
+			int nLow = 0;
+			int nHigh = m_nSize;
+
+			while(nLow < nHigh)
+			{
+				int nMiddle = (nLow + nHigh) >>> 1;
+
+				if(m_fTimes[nMiddle] <= fTime)
+				{
+					nLow = nMiddle + 1;
+				}
+				else
+				{
+					nHigh = nMiddle;
+				}
+			}
+
+			return nLow;
+		}
+
+		/**
+		 * @return The strongest signal of the contacts from nFrom up to (not including) nTo,
+		 *         Integer.MIN_VALUE if the range is empty
+		 */
+		int maxRSSI (int nFrom, int nTo)
+		{
+			int nMax = Integer.MIN_VALUE;
+			int nLeft = nFrom + m_nLeaves;
+			int nRight = nTo + m_nLeaves;
+
+			while(nLeft < nRight)
+			{
+				if((nLeft & 1) == 1)
+				{
+					nMax = Math.max(nMax, m_nMaxTree[nLeft++]);
+				}
+
+				if((nRight & 1) == 1)
+				{
+					nMax = Math.max(nMax, m_nMaxTree[--nRight]);
+				}
+
+				nLeft >>= 1;
+				nRight >>= 1;
+			}
+
+			return nMax;
+		}
+
+		/**
+		 * @return The index of the first contact from nFrom on with at least the signal strength,
+		 *         -1 if there is none
+		 */
+		int findFirst (int nFrom, int nMinRSSI)
+		{
+			int i;
+
+			if(nFrom >= m_nSize)
+			{
+				return -1;
+			}
+
+			// Climb until the subtree to the right of where we are holds a match
+			i = nFrom + m_nLeaves;
+
+			while(m_nMaxTree[i] < nMinRSSI)
+			{
+				while((i & 1) == 1)
+				{
+					i >>= 1;
+				}
+
+				if(i == 0)
+				{
+					return -1;
+				}
+
+				i++;
+			}
+
+			// Then down to the leftmost match
+			while(i < m_nLeaves)
+			{
+				i = 2 * i;
+
+				if(m_nMaxTree[i] < nMinRSSI)
+				{
+					i++;
+				}
+			}
+
+			return (i - m_nLeaves < m_nSize) ? i - m_nLeaves : -1;
+		}
+	}
+
+	// The names of the nodes, the code of a name is the index of the node in the graph
+	TokenDictionary			m_Nodes;
+
+	// For each node, the pair index by the code of each node that it had contact with
+	IntIntHashMap []		m_Adjacency;
+
+	ContactSeries []		m_Pairs;
+	int						m_nPairs;
+
+	int						m_nContacts;
+
+	public ContactGraph ()
+	{
+		m_Nodes = new TokenDictionary();
+		m_Adjacency = new IntIntHashMap[64];
+		m_Pairs = new ContactSeries[64];
+		m_nPairs = 0;
+		m_nContacts = 0;
+	}
+
+	/**
+	 * Drop all of the contacts and nodes
+	 */
+	public void clear ()
+	{
+		m_Nodes.clear();
+		Arrays.fill(m_Adjacency, null);
+		Arrays.fill(m_Pairs, 0, m_nPairs, null);
+		m_nPairs = 0;
+		m_nContacts = 0;
+	}
+
+	/**
+	 * Record a contact, i.e. one node sensing another one. Contacts are not directed, a contact
+	 * of A sensing B is the same as one of B sensing A.
+	 *
+	 * @param sNode The node that did the sensing
+	 * @param sNeighbor The node that was sensed
+	 * @param fTime The time of the contact
+	 * @param nRSSI The signal strength
+	 */
+	public void addContact (String sNode, String sNeighbor, double fTime, int nRSSI)
+	{
+		int		nNode;
+		int		nNeighbor;
+		int		nPair;
+
+		nNode = m_Nodes.encode(sNode);
+		nNeighbor = m_Nodes.encode(sNeighbor);
+
+		if(Math.max(nNode, nNeighbor) >= m_Adjacency.length)
+		{
+			m_Adjacency = Arrays.copyOf(m_Adjacency, Math.max(2 * m_Adjacency.length, Math.max(nNode, nNeighbor) + 1));
+		}
+
+		if(m_Adjacency[nNode] == null)
+		{
+			m_Adjacency[nNode] = new IntIntHashMap();
+		}
+
+		nPair = m_Adjacency[nNode].get(nNeighbor, -1);
+
+		if(nPair < 0)
+		{
+			if(m_nPairs == m_Pairs.length)
+			{
+				m_Pairs = Arrays.copyOf(m_Pairs, 2 * m_nPairs);
+			}
+
+			nPair = m_nPairs++;
+			m_Pairs[nPair] = new ContactSeries();
+			m_Adjacency[nNode].put(nNeighbor, nPair);
+
+			if(m_Adjacency[nNeighbor] == null)
+			{
+				m_Adjacency[nNeighbor] = new IntIntHashMap();
+			}
+
+			m_Adjacency[nNeighbor].put(nNode, nPair);
+		}
+
+		m_Pairs[nPair].add(fTime, nRSSI);
+		m_nContacts++;
+	}
+
+	/**
+	 * Sort and index every pair that changed since the last query, after this the graph can be
+	 * queried from several threads at once as long as no contacts are added
+	 */
+	public void prepare ()
+	{
+		for(int i = 0; i < m_nPairs; i++)
+		{
+			m_Pairs[i].prepare();
+		}
+	}
+
+	/**
+	 * @return The number of nodes that appear in any contact
+	 */
+	public int getNumberNodes ()
+	{
+		return m_Nodes.size();
+	}
+
+	/**
+	 * @return The number of pairs of nodes that had at least one contact
+	 */
+	public int getNumberPairs ()
+	{
+		return m_nPairs;
+	}
+
+	/**
+	 * @return The overall number of contacts
+	 */
+	public int getNumberContacts ()
+	{
+		return m_nContacts;
+	}
+
+	/**
+	 * Find the contacts of a pair of nodes
+	 * @return The contacts (prepared for queries), null if the nodes never had contact
+	 */
+	private ContactSeries resolvePair (String sNode, String sNeighbor)
+	{
+		int		nNode;
+		int		nNeighbor;
+		int		nPair;
+
+		nNode = m_Nodes.lookup(sNode);
+		nNeighbor = m_Nodes.lookup(sNeighbor);
+
+		if(nNode < 0 || nNeighbor < 0 || m_Adjacency[nNode] == null)
+		{
+			return null;
+		}
+
+		nPair = m_Adjacency[nNode].get(nNeighbor, -1);
+
+		if(nPair < 0)
+		{
+			return null;
+		}
+
+		m_Pairs[nPair].prepare();
+		return m_Pairs[nPair];
+	}
+
+	/**
+	 * Retrieve every node that a node had any contact with
+	 * @param sNode
+	 * @return The neighbors in the order that they first appeared in the traces
+	 */
+	public Vector<String> getNeighbors (String sNode)
+	{
+		return getNeighbors(sNode, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Retrieve the nodes that a node had a contact with during a period, e.g. to find who was
+	 * within the RSSI filter of the engine (see SimulationEngine.getFilter_RSSI) of the node
+	 *
+	 * @param sNode
+	 * @param fStart The start of the period (inclusive)
+	 * @param fEnd The end of the period (inclusive)
+	 * @param nMinRSSI The minimum signal strength of a contact
+	 * @return The neighbors in the order that they first appeared in the traces
+	 */
+	public Vector<String> getNeighbors (String sNode, double fStart, double fEnd, int nMinRSSI)
+	{
+		Vector<String>	theNeighbors;
+		int				nNode;
+		int []			nCodes;
+
+		theNeighbors = new Vector<String>();
+		nNode = m_Nodes.lookup(sNode);
+
+		if(nNode < 0 || m_Adjacency[nNode] == null)
+		{
+			return theNeighbors;
+		}
+
+		// Codes follow the order in which the names were first seen
+		nCodes = m_Adjacency[nNode].keys();
+		Arrays.sort(nCodes);
+
+		for(int nNeighbor : nCodes)
+		{
+			ContactSeries theSeries = m_Pairs[m_Adjacency[nNode].get(nNeighbor, -1)];
+
+			theSeries.prepare();
+
+			int nFrom = theSeries.lowerBound(fStart);
+			int nTo = theSeries.upperBound(fEnd);
+
+			if(nFrom < nTo && theSeries.maxRSSI(nFrom, nTo) >= nMinRSSI)
+			{
+				theNeighbors.add(m_Nodes.getToken(nNeighbor));
+			}
+		}
+
+		return theNeighbors;
+	}
+
+	/**
+	 * Find when two nodes have their next contact
+	 *
+	 * @param sNode
+	 * @param sNeighbor
+	 * @param fTime The time to look from (inclusive)
+	 * @param nMinRSSI The minimum signal strength of a contact
+	 * @return The time of the next contact, Double.POSITIVE_INFINITY if there is none
+	 */
+	public double getNextContact (String sNode, String sNeighbor, double fTime, int nMinRSSI)
+	{
+		ContactSeries	theSeries;
+		int				nContact;
+
+		theSeries = resolvePair(sNode, sNeighbor);
+
+		if(theSeries == null)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		nContact = theSeries.findFirst(theSeries.lowerBound(fTime), nMinRSSI);
+
+		return (nContact < 0) ? Double.POSITIVE_INFINITY : theSeries.m_fTimes[nContact];
+	}
+
+	/**
+	 * Count the contacts of two nodes during a period
+	 *
+	 * @param sNode
+	 * @param sNeighbor
+	 * @param fStart The start of the period (inclusive)
+	 * @param fEnd The end of the period (inclusive)
+	 * @return The number of contacts
+	 */
+	public int countContacts (String sNode, String sNeighbor, double fStart, double fEnd)
+	{
+		ContactSeries theSeries = resolvePair(sNode, sNeighbor);
+
+		if(theSeries == null)
+		{
+			return 0;
+		}
+
+		return Math.max(theSeries.upperBound(fEnd) - theSeries.lowerBound(fStart), 0);
+	}
+}
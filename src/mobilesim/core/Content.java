@@ -1,172 +1,162 @@
 package mobilesim.core;
 
-/** 
- * One individual piece of content that is part of the simulation
- * 
+/**
+ * One replica of a piece of content held by a node in the simulation. What is the same for every
+ * replica (ID, creation, original source, size) lives in the shared ContentDescriptor; a replica
+ * only records how it got to this particular node.
+ *
  * @author Striegel
  *
  */
-public class Content extends SimObject {
-	// We get a content ID from the SimObject class.  It should be unique simulation wide.
-	// Typically an ID look like src_socs043_0001 --> (original source)_(mobile node name)_(hr and min)
-	String		m_sContentID;
-	Double		m_fCreationTime;
-	Double		m_fArrivialTime;
-	int			m_nAccesses;
-	Double		m_fLastAccessTime;
-
-	// How big is this content? (in KB)
-	double		m_fSize;
-	
+public class Content {
+	ContentDescriptor	m_Descriptor;
+
+	double				m_fArrivialTime;
+	int					m_nAccesses;
+	double				m_fLastAccessTime;
+
 	// Who did we get it from and how many hops away were they?
-	SimObject			m_OriginalSource;
 	SimObject			m_Source;
+	int					m_nSourceIndex;		// index in the simulation engine (-1 if not set or not registered)
 	int					m_nSourceHops;
 
 	// TODO: Segments or subsections?
 
-	public Content ()
+	/**
+	 * @param theDescriptor The description of the content that this is a replica of
+	 */
+	public Content (ContentDescriptor theDescriptor)
 	{
-		m_sContentID = "";
-		m_fSize = 0;
-		m_OriginalSource = null;
+		m_Descriptor = theDescriptor;
 		m_Source = null;
+		m_nSourceIndex = -1;
 		m_nSourceHops = -1;
 		m_nAccesses = 0;
-		
-		m_fCreationTime = Double.MIN_VALUE;
+
 		m_fArrivialTime = Double.MIN_VALUE;
 		m_fLastAccessTime = Double.MIN_VALUE;
 	}
-	
-	public void setContentID (String sID)
+
+	/**
+	 * @return The shared description of the content
+	 */
+	public ContentDescriptor getDescriptor ()
 	{
-		m_sContentID = sID;
+		return m_Descriptor;
 	}
-	
+
 	public String getContentID ()
 	{
-		return m_sContentID;
+		return m_Descriptor.getContentID();
 	}
-	
-	/** 
-	 * The creation time is when the object was created at this particular storage
-	 * instance or object. Set the specific creation time. 
-	 * 
-	 * @param fCreate
+
+	/**
+	 * @return The dense index of the content, -1 if it has none
 	 */
-	public void setCreationTime (Double fCreate)
+	public int getContentIndex ()
 	{
-		m_fCreationTime = fCreate;
+		return m_Descriptor.getContentIndex();
 	}
-	
-	/** 
-	 * Retrieve the creation time for this particular object
-	 * 
+
+	/**
+	 * Retrieve the creation time for this particular content
+	 *
 	 * @return Creation time of the object (in seconds)
 	 */
-	public Double getCreationTime ()
+	public double getCreationTime ()
 	{
-		return m_fCreationTime;
+		return m_Descriptor.getCreationTime();
 	}
-	
-	/** 
-	 * Stamp the creation time with the current time of the simulation
-	 */
-	public void stampCreationTime ()
-	{
-		m_fCreationTime = SimulationEngine.theEngine.getTime();
-	}
-	
-	public void setArrivialTime (Double fArrive)
+
+	public void setArrivialTime (double fArrive)
 	{
 		m_fArrivialTime = fArrive;
 	}
-	
-	public Double getArrivialTime ()
+
+	public double getArrivialTime ()
 	{
 		return m_fArrivialTime;
 	}
-	
+
 	public void stampArrivialTime ()
 	{
-		m_fArrivialTime = SimulationEngine.theEngine.getTime();
+		m_fArrivialTime = SimulationContext.getCurrent().getEngine().getTime();
 	}
-	
+
 	public void setLastAccessTime (double fLastAccess)
 	{
 		m_fLastAccessTime = fLastAccess;
 	}
-	
-	public Double getLastAccessTime ()
+
+	public double getLastAccessTime ()
 	{
 		return m_fLastAccessTime;
 	}
-	
+
 	public void stampLastAccessTime ()
 	{
-		m_fLastAccessTime = SimulationEngine.theEngine.getTime();
+		m_fLastAccessTime = SimulationContext.getCurrent().getEngine().getTime();
 	}
-	
+
 	public void incrementAccesses ()
 	{
 		m_nAccesses++;
 	}
-	
-	public boolean setContentSize (double fSize)
+
+	public int getAccesses ()
 	{
-		if (fSize < 0.0)
-		{
-			return false;
-		}
-		m_fSize = fSize;
-		return true;
+		return m_nAccesses;
 	}
-	
+
 	public double getContentSize ()
 	{
-		return m_fSize;
-	}
-	
-	public void setOriginalSource (SimObject oSource)
-	{
-		m_OriginalSource = oSource;
+		return m_Descriptor.getContentSize();
 	}
-	
+
 	public SimObject getOriginalSource ()
 	{
-		return m_OriginalSource;
+		return m_Descriptor.getOriginalSource();
 	}
-	
+
 	public void setSource (SimObject theSource)
 	{
 		m_Source = theSource;
+		m_nSourceIndex = (theSource != null) ? theSource.getIndex() : -1;
 	}
-	
+
 	public SimObject getSource ()
 	{
 		return m_Source;
 	}
-	
+
+	/**
+	 * @return The index of the node that created the content (see SimObject.getIndex)
+	 */
+	public int getOriginalSourceIndex ()
+	{
+		return m_Descriptor.getOriginalSourceIndex();
+	}
+
+	/**
+	 * @return The index of the node that the content was copied from (see SimObject.getIndex)
+	 */
+	public int getSourceIndex ()
+	{
+		return m_nSourceIndex;
+	}
+
 	public void setSourceHops (int nHops)
 	{
 		m_nSourceHops = nHops;
 	}
-	
+
 	public int getSourceHops ()
 	{
 		return m_nSourceHops;
 	}
-	
+
 	public boolean isStreaming ()
 	{
-		if(m_fSize < 0)
-		{
-			return true;
-		}
-		else
-		{
-			return false;
-		}
+		return m_Descriptor.isStreaming();
 	}
 }
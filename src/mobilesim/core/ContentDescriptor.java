@@ -0,0 +1,87 @@
+package mobilesim.core;
+
+/**
+ * The part of a piece of content that never changes once it is created: its ID, when and where it
+ * was created and how big it is. There is exactly one descriptor per original piece of content and
+ * every replica of it on the various nodes (see Content) refers to that one descriptor.
+ *
+ * @author Striegel
+ *
+ */
+public class ContentDescriptor {
+	// Unique simulation wide, typically (original source)_(hr:min:sec)
+	final String		m_sContentID;
+
+	// Dense index of the content (see SimulationEngine.allocateContentIndex), -1 if it has none
+	final int			m_nContentIndex;
+
+	final double		m_fCreationTime;
+
+	// Who created it (and their index in the simulation engine, -1 if not registered)
+	final SimObject		m_OriginalSource;
+	final int			m_nOriginalSourceIndex;
+
+	// How big is this content? (in KB)
+	final double		m_fSize;
+
+	/**
+	 * @param sContentID The ID of the content
+	 * @param nContentIndex The dense index of the content, -1 if none
+	 * @param fCreationTime When the content was created (in seconds)
+	 * @param theOriginalSource The node that created the content
+	 * @param fSize The size of the content in KB, a negative size is ignored (treated as zero)
+	 */
+	public ContentDescriptor (String sContentID, int nContentIndex, double fCreationTime, SimObject theOriginalSource, double fSize)
+	{
+		m_sContentID = sContentID;
+		m_nContentIndex = nContentIndex;
+		m_fCreationTime = fCreationTime;
+		m_OriginalSource = theOriginalSource;
+		m_nOriginalSourceIndex = (theOriginalSource != null) ? theOriginalSource.getIndex() : -1;
+		m_fSize = (fSize < 0.0) ? 0.0 : fSize;
+	}
+
+	public String getContentID ()
+	{
+		return m_sContentID;
+	}
+
+	/**
+	 * @return The dense index of the content, -1 if it has none
+	 */
+	public int getContentIndex ()
+	{
+		return m_nContentIndex;
+	}
+
+	/**
+	 * @return Creation time of the content (in seconds)
+	 */
+	public double getCreationTime ()
+	{
+		return m_fCreationTime;
+	}
+
+	public SimObject getOriginalSource ()
+	{
+		return m_OriginalSource;
+	}
+
+	/**
+	 * @return The index of the node that created the content (see SimObject.getIndex)
+	 */
+	public int getOriginalSourceIndex ()
+	{
+		return m_nOriginalSourceIndex;
+	}
+
+	public double getContentSize ()
+	{
+		return m_fSize;
+	}
+
+	public boolean isStreaming ()
+	{
+		return m_fSize < 0;
+	}
+}
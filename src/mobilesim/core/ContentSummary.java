@@ -0,0 +1,118 @@
+package mobilesim.core;
+
+import java.util.Arrays;
+
+/**
+ * A summary vector of the contents held by a node: one bit per dense content index (see
+ * Content.getContentIndex). Two summaries can be compared word by word to find out whether one
+ * node has anything that the other does not without touching any of the contents themselves.
+ *
+ * @author Striegel
+ *
+ */
+public class ContentSummary {
+
+	long []		m_Words;
+	int			m_nCount;
+
+	public ContentSummary ()
+	{
+		m_Words = new long[4];
+		m_nCount = 0;
+	}
+
+	/**
+	 * Note that the content with the given index is held
+	 * @param nIndex
+	 */
+	public void set (int nIndex)
+	{
+		int nWord = nIndex >>> 6;
+
+		if(nWord >= m_Words.length)
+		{
+			m_Words = Arrays.copyOf(m_Words, Math.max(2 * m_Words.length, nWord + 1));
+		}
+
+		if((m_Words[nWord] & (1L << nIndex)) == 0)
+		{
+			m_Words[nWord] |= (1L << nIndex);
+			m_nCount++;
+		}
+	}
+
+	/**
+	 * Note that the content with the given index is no longer held
+	 * @param nIndex
+	 */
+	public void unset (int nIndex)
+	{
+		int nWord = nIndex >>> 6;
+
+		if(nWord < m_Words.length && (m_Words[nWord] & (1L << nIndex)) != 0)
+		{
+			m_Words[nWord] &= ~(1L << nIndex);
+			m_nCount--;
+		}
+	}
+
+	public boolean contains (int nIndex)
+	{
+		int nWord = nIndex >>> 6;
+
+		return nWord < m_Words.length && (m_Words[nWord] & (1L << nIndex)) != 0;
+	}
+
+	/**
+	 * @return The number of contents in the summary
+	 */
+	public int size ()
+	{
+		return m_nCount;
+	}
+
+	public void clear ()
+	{
+		Arrays.fill(m_Words, 0);
+		m_nCount = 0;
+	}
+
+	/**
+	 * Check if this summary holds anything that another one does not (i.e. this AND NOT other is
+	 * not empty)
+	 * @param theOther The summary to compare against
+	 * @return True if there is at least one content here that is missing from the other summary
+	 */
+	public boolean hasAnyMissingFrom (ContentSummary theOther)
+	{
+		long []		theOtherWords;
+		int			nShared;
+
+		// A bigger set always has something extra
+		if(m_nCount > theOther.m_nCount)
+		{
+			return true;
+		}
+
+		theOtherWords = theOther.m_Words;
+		nShared = Math.min(m_Words.length, theOtherWords.length);
+
+		for(int i = 0; i < nShared; i++)
+		{
+			if((m_Words[i] & ~theOtherWords[i]) != 0)
+			{
+				return true;
+			}
+		}
+
+		for(int i = nShared; i < m_Words.length; i++)
+		{
+			if(m_Words[i] != 0)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
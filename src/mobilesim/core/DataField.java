@@ -39,7 +39,7 @@ public class DataField {
 	
 	public void tagWithCurrentTime ()
 	{
-	    m_fLastUpdate = SimulationEngine.theEngine.getTime();
+	    m_fLastUpdate = SimulationContext.getCurrent().getEngine().getTime();
 	}
 	
 	public void setUpdateTime (Double fTime)
@@ -1,7 +1,5 @@
 package mobilesim.core;
 
-import mobilesim.console.*;
-
 public class DataFieldDouble extends DataField {
 	Double m_fValue;
 	
@@ -30,7 +28,7 @@ public class DataFieldDouble extends DataField {
 		}
 		catch(NumberFormatException e)
 		{
-			DebugLogger.theLogger.logInfo_Warning("Unable to parse string in DataFieldDouble, provided value was " + sValue);
+			SimulationContext.getCurrent().getLogger().logInfo_Warning("Unable to parse string in DataFieldDouble, provided value was " + sValue);
 			return false;
 		}
 	}
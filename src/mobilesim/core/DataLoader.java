@@ -18,8 +18,9 @@ public class DataLoader extends SimObject {
 
 	// General notes
 	//
-	// For now, we just support a single file - all in one big burst.  We will add in the partial
-	// load behavior later
+	// By default, the files are read all in one big burst. If a read window is set, the loader
+	// only reads one window of time ahead of the simulation and registers a timer with itself to 
+	// read the next window once the simulation reaches the end of the current one.
 
 	String			m_sPath;
 	Vector<String>	m_sFileList;
@@ -44,6 +45,18 @@ public class DataLoader extends SimObject {
 	
 	Double			m_fLastReadTime;
 	
+	// Partial (windowed) load, a window of zero or less means the whole file is read at once
+	Double					m_fReadWindow;
+	int						m_nFileIndex;
+	String					m_sPendingLine;
+	EventTimerSimObject		m_ReadTimer;
+	
+	public static final int TIMER_DATALOADER_READ_WINDOW = 1;
+	
+	// Shared by the line parsers of the child classes so that parsing a line does not allocate
+	FieldCursor				m_Cursor;
+	TokenDictionary			m_Tokens;
+	
 	DataLoader ()
 	{
 		m_sPath = "";
@@ -60,11 +73,41 @@ public class DataLoader extends SimObject {
 		m_nDataSubMode = 0;
 		
 		m_fLastReadTime = Double.MIN_VALUE;
+		
+		m_fReadWindow = 0.0;
+		m_nFileIndex = -1;
+		m_sPendingLine = null;
+		m_ReadTimer = null;
+		
+		m_Cursor = new FieldCursor();
+		m_Tokens = new TokenDictionary();
 	}
 	
 	public void resetDataLoader ()
 	{
-		return;
+		resetWindowedLoad();
+	}
+	
+	/** 
+	 * Drop any state from a partial (windowed) load that is in progress
+	 */
+	protected void resetWindowedLoad ()
+	{
+		closeCurrentFile();
+		m_nFileIndex = -1;
+		m_sPendingLine = null;
+		m_ReadTimer = null;
+		m_fMaxReadTime = Double.MAX_VALUE;
+		m_fLastReadTime = Double.MIN_VALUE;
+	}
+	
+	/** 
+	 * Retrieve the dictionary holding the names (nodes, fields, ...) seen by this loader
+	 * @return
+	 */
+	public TokenDictionary getTokenDictionary ()
+	{
+		return m_Tokens;
 	}
 	
 	/** 
@@ -170,6 +213,33 @@ public class DataLoader extends SimObject {
 		return m_fMaxReadTime;
 	}
 	
+	/** 
+	 * Set the amount of time (in seconds) that is read ahead of the simulation when doing a 
+	 * partial load, e.g. 600.0 for blocks of 10 minutes. A window of zero or less turns off
+	 * the partial load and the files are read in all at once. 
+	 * 
+	 * @param fWindow
+	 */
+	public void setReadWindow (Double fWindow)
+	{
+		m_fReadWindow = fWindow;
+	}
+	
+	public Double getReadWindow ()
+	{
+		return m_fReadWindow;
+	}
+	
+	/** 
+	 * Check if this loader reads its files in blocks of time rather than all at once
+	 * 
+	 * @return
+	 */
+	public boolean isWindowed ()
+	{
+		return m_fReadWindow > 0;
+	}
+	
 	/** 
 	 * Set the flag denoting if the date should be adjusted as the time since the base date
 	 * 
@@ -382,7 +452,7 @@ public class DataLoader extends SimObject {
 			// TODO: Handle it
 		}
 		
-		//SimulationEngine.theEngine.summarizeQueue();
+		//getEngine().summarizeQueue();
 		summarizeLoad();
 		
 		return true;
@@ -414,6 +484,233 @@ public class DataLoader extends SimObject {
 		}
 	}
 
+	/** 
+	 * Start a partial load of the files. The first window of data is read right away and a 
+	 * timer is registered that will read the following window when the simulation reaches the 
+	 * end of the current one. The files must be sorted by time for this to work. 
+	 * 
+	 * @return True if successful, false otherwise
+	 */
+	public boolean startWindowedLoad ()
+	{
+		resetWindowedLoad();
+		
+		// Start from wherever the simulation currently is, the first window will jump forward
+		// to the first line in the file
+		m_fMaxReadTime = getEngine().getTime();
+		
+		if(loadNextWindow())
+		{
+			armReadTimer();
+		}
+		
+		return true;
+	}
+	
+	/** 
+	 * Read the next window of data, i.e. all lines after the current maximum read time up to 
+	 * and including the new maximum read time. If the next line in the file is further out than 
+	 * one window, the window moves ahead to cover it.
+	 * 
+	 * @return True if there is more data left to read, false if all files are exhausted
+	 */
+	protected boolean loadNextWindow ()
+	{
+		Double	fTimeAdjust;
+		double	fPendingTime;
+		double	fWindowEnd;
+		
+		if(!getFlag_AdjustTime())
+		{
+			fTimeAdjust = 0.0;
+		}
+		else
+		{
+			fTimeAdjust = getAdjustTime();
+		}
+		
+		// Make sure we know where the next line sits
+		fPendingTime = peekPendingTime(fTimeAdjust);
+
+		if(m_sPendingLine == null)
+		{
+			summarizeLoad();
+			return false;
+		}
+		
+		fWindowEnd = m_fMaxReadTime + m_fReadWindow;
+		
+		if(fPendingTime > fWindowEnd)
+		{
+			fWindowEnd = m_fMaxReadTime + m_fReadWindow * Math.ceil((fPendingTime - m_fMaxReadTime) / m_fReadWindow);
+		}
+		
+		setMaxReadTime(fWindowEnd);
+		
+		while(m_sPendingLine != null && fPendingTime <= fWindowEnd)
+		{
+			processLine(m_sPendingLine, fTimeAdjust);
+			setLastReadTime(fPendingTime);
+			
+			m_sPendingLine = null;
+			fPendingTime = peekPendingTime(fTimeAdjust);
+		}
+		
+		if(m_sPendingLine == null)
+		{
+			summarizeLoad();
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/** 
+	 * Make sure that the next line to be processed is waiting in the pending line and return 
+	 * its (adjusted) time. Lines without a valid time are handed to processLine right away so 
+	 * that they are accounted for by the child class.  
+	 * 
+	 * @param fTimeAdjust
+	 * @return The adjusted time of the pending line, undefined if there are no more lines
+	 */
+	private double peekPendingTime (Double fTimeAdjust)
+	{
+		while(true)
+		{
+			Double	fTime;
+			
+			if(m_sPendingLine == null)
+			{
+				m_sPendingLine = readNextLine();
+				
+				if(m_sPendingLine == null)
+				{
+					return Double.MAX_VALUE;
+				}
+			}
+			
+			fTime = extractTimeFromLine(m_sPendingLine);
+			
+			if(fTime >= 0)
+			{
+				return fTime - fTimeAdjust;
+			}
+			
+			processLine(m_sPendingLine, fTimeAdjust);
+			m_sPendingLine = null;
+		}
+	}
+	
+	/** 
+	 * Read the next line across the list of files, moving on to the next file in the list
+	 * as each one runs out
+	 * 
+	 * @return The next line, null if all of the files have been read
+	 */
+	protected String readNextLine ()
+	{
+		while(true)
+		{
+			if(m_CurrentBuffer == null)
+			{
+				m_nFileIndex++;
+				
+				if(m_nFileIndex >= m_sFileList.size())
+				{
+					return null;
+				}
+				
+				System.out.println("Loading file (windowed): " + m_sPath + m_sFileList.get(m_nFileIndex));
+				
+				try 
+				{
+					m_CurrentFile = new FileReader(m_sPath + m_sFileList.get(m_nFileIndex));			
+					m_CurrentBuffer = new BufferedReader(m_CurrentFile);			
+				}
+				catch (Exception e)
+				{
+					System.err.println("* Error: Unable to open the file and buffer it");
+					System.err.println(e);
+					m_CurrentFile = null;
+					m_CurrentBuffer = null;
+					continue;
+				}
+			}
+			
+			try
+			{
+				String sLine = m_CurrentBuffer.readLine();
+				
+				if(sLine != null)
+				{
+					return sLine;
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println(e);
+			}
+			
+			closeCurrentFile();
+		}
+	}
+	
+	/** 
+	 * Close the file currently open for a partial load (if any)
+	 */
+	protected void closeCurrentFile ()
+	{
+		try
+		{
+			if(m_CurrentBuffer != null)
+			{
+				m_CurrentBuffer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println(e);
+		}
+		
+		m_CurrentBuffer = null;
+		m_CurrentFile = null;
+	}
+	
+	/** 
+	 * Register (or re-register) the timer that will read the next window of data when the
+	 * simulation reaches the current maximum read time
+	 */
+	private void armReadTimer ()
+	{
+		if(m_ReadTimer == null)
+		{
+			m_ReadTimer = new EventTimerSimObject();
+			m_ReadTimer.setSimObject(this);
+			m_ReadTimer.setType(TIMER_DATALOADER_READ_WINDOW);
+		}
+		
+		// Single shot, we re-arm it ourselves as long as there is data left
+		m_ReadTimer.setInvocations(1);
+		m_ReadTimer.setTime(getMaxReadTime());
+		getEngine().addEvent(m_ReadTimer);
+	}
+	
+	public boolean processTimer (EventTimerSimObject theTimer)
+	{
+		if(theTimer.getType() != TIMER_DATALOADER_READ_WINDOW)
+		{
+			System.err.println("* Error: Timer received at data loader with an unknown type (" + theTimer.getType() + ")");
+			return false;
+		}
+		
+		if(loadNextWindow())
+		{
+			armReadTimer();
+		}
+		
+		return true;
+	}
+	
 	public void summarizeLoad ()
 	{
 		return;
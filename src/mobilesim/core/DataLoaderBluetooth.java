@@ -3,6 +3,7 @@ package mobilesim.core;
 import java.io.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import mobilesim.statistics.StatisticGroup;
@@ -14,41 +15,101 @@ import mobilesim.statistics.StatisticGroup;
  */
 public class DataLoaderBluetooth extends DataLoader {
 	
-	public static DataLoaderBluetooth theLoader = new DataLoaderBluetooth();
+	// The loader of the default context (see SimulationContext), set when that context is created
+	public static DataLoaderBluetooth theLoader;
+	
+	static
+	{
+		SimulationContext.getDefault();
+	}
 	
 	public static final int DATALOADER_BLUETOOTH_MODE_TEST = 0;
 	
 	String					m_sCurrentFile;
 	
 	EventProximitySense		m_LastEvent;
+	int						m_nLastNodeCode;
 	
 	StatisticGroup			m_Stats;
+	int						m_nStat_Lines;
+	int						m_nStat_Ignored;
+	int						m_nStat_Contacts;
+	
+	// Block of event IDs reserved for a partial (windowed) load
+	long					m_lReservedEventID;
+	long					m_lReservedEventEnd;
+	
+	// Parse the files with memory mapping on a fork-join pool rather than line by line
+	boolean					m_bParallelIngest;
+	ForkJoinPool			m_IngestPool;
+	
+	// Mobile nodes by the dictionary code of their name, saves looking up the name every line
+	MobileNode []			m_NodeByToken;
+	
+	// Index of the contacts of the current load, null unless enabled
+	ContactGraph			m_ContactGraph;
+	
+	// Merge the scans of each pair into contact intervals rather than one event per scan
+	boolean					m_bContactIntervals;
+	HashMap<Long, EventContactInterval>	m_OpenContacts;
+	
+	// Records for the same node at the same time form a group (one event without intervals)
+	long					m_lRecordGroup;
+	double					m_fLastRecordTime;
 
 	public DataLoaderBluetooth ()
 	{
 		m_sCurrentFile = "";
 		m_LastEvent = null;
+		m_lReservedEventID = -1;
+		m_lReservedEventEnd = -1;
+		m_bParallelIngest = false;
+		m_IngestPool = null;
+		m_NodeByToken = new MobileNode[64];
+		m_ContactGraph = null;
+		m_bContactIntervals = false;
+		m_OpenContacts = new HashMap<Long, EventContactInterval>();
+		m_lRecordGroup = -1;
+		m_fLastRecordTime = 0.0;
+		m_nLastNodeCode = -1;
 		m_Stats = new StatisticGroup();
-		m_Stats.initializeCounter("Lines");
-		m_Stats.initializeCounter("Ignored");
+		m_nStat_Lines = m_Stats.initializeCounter("Lines");
+		m_nStat_Ignored = m_Stats.initializeCounter("Ignored");
+		m_nStat_Contacts = m_Stats.initializeCounter("Contacts");
 	}
 	
 	public void resetDataLoader ()
 	{
+		resetWindowedLoad();
+		m_lReservedEventID = -1;
+		m_lReservedEventEnd = -1;
 		m_sFileList.clear();
 		m_sCurrentFile = "";
 		m_LastEvent = null;
-		m_Stats.resetValue("Lines");
-		m_Stats.resetValue("Ignored");
+		clearContactIntervals();
+		m_Stats.resetValue(m_nStat_Lines);
+		m_Stats.resetValue(m_nStat_Ignored);
+		m_Stats.resetValue(m_nStat_Contacts);
 	}
 	
 	public boolean startFileLoad ()
 	{
+		clearContactGraph();
+		clearContactIntervals();
+		
 		if(getFlag_AdjustTime())
 		{
 			setAdjustTime(extractFirstFileStartTime());
 		}
 		
+		if(isWindowed())
+		{
+			// Nodes need to exist before the simulation is initialized and the events need to 
+			// sort the same way as with a full load, a quick pass over the files takes care of both
+			registerTraceNodes();
+			return startWindowedLoad();
+		}
+		
 		for(int i = 0; i < m_sFileList.size(); i++)
 		{
 			String theNextFile = m_sFileList.get(i);
@@ -56,12 +117,157 @@ public class DataLoaderBluetooth extends DataLoader {
 			startNextFile(theNextFile);
 		}
 		
+		// Nothing more gets added to the contacts of a full load
+		m_OpenContacts.clear();
+		
+		summarizeLoad();
+		return true;
+	}
+	
+	/**
+	 * Same as a full startFileLoad but from traces that were parsed beforehand (e.g. shared by 
+	 * several simulations of the same files). The traces are only read.
+	 * 
+	 * @param theTraces The parsed files, one for each file in the file list and in the same order
+	 * @return True if successful, false otherwise
+	 */
+	public boolean startTraceLoad (ProximityTrace [] theTraces)
+	{
+		if(theTraces.length != m_sFileList.size())
+		{
+			System.err.println("* Error: Got " + theTraces.length + " traces for " + m_sFileList.size() + " BT files.");
+			return false;
+		}
+		
+		clearContactGraph();
+		clearContactIntervals();
+		
+		if(getFlag_AdjustTime())
+		{
+			setAdjustTime(extractFirstFileStartTime());
+		}
+		
+		for(int i = 0; i < theTraces.length; i++)
+		{
+			m_sCurrentFile = m_sFileList.get(i);
+			
+			if(!getFlag_AdjustTime())
+			{
+				processProximityTrace(theTraces[i], 0.0);
+			}
+			else
+			{
+				processProximityTrace(theTraces[i], getAdjustTime());
+			}
+		}
+		
+		m_OpenContacts.clear();
+		
 		summarizeLoad();
 		return true;
 	}
 	
+	/**
+	 * Set whether the loader should index the contacts that it loads in a ContactGraph. Each 
+	 * load starts a new graph that holds all of the contacts of the loaded files, for a partial
+	 * (windowed) load the graph fills up as the windows are read.
+	 * 
+	 * @param bContactGraph True to build the contact graph
+	 */
+	public void setFlag_ContactGraph (boolean bContactGraph)
+	{
+		if(!bContactGraph)
+		{
+			m_ContactGraph = null;
+		}
+		else if(m_ContactGraph == null)
+		{
+			m_ContactGraph = new ContactGraph();
+		}
+	}
+	
+	public boolean getFlag_ContactGraph ()
+	{
+		return m_ContactGraph != null;
+	}
+	
+	/**
+	 * @return The contacts of the last load, null if the contact graph is not enabled
+	 */
+	public ContactGraph getContactGraph ()
+	{
+		return m_ContactGraph;
+	}
+	
+	private void clearContactGraph ()
+	{
+		if(m_ContactGraph != null)
+		{
+			m_ContactGraph.clear();
+		}
+	}
+	
+	/**
+	 * Set whether the loader should merge consecutive scans of the same pair of nodes into contact
+	 * intervals (see EventContactInterval) rather than creating a proximity event for every scan.
+	 * A contact is broken up whenever the pair goes unsensed for longer than the default neighbor
+	 * lifetime. Every scan is still processed at its own time and in its own place in the event 
+	 * order, hence the content exchanges come out exactly the same, but there is one event object
+	 * (and one entry in the event queue) per contact rather than per scan.
+	 * 
+	 * @param bContactIntervals True to merge the scans into contact intervals
+	 */
+	public void setFlag_ContactIntervals (boolean bContactIntervals)
+	{
+		m_bContactIntervals = bContactIntervals;
+	}
+	
+	public boolean getFlag_ContactIntervals ()
+	{
+		return m_bContactIntervals;
+	}
+	
+	private void clearContactIntervals ()
+	{
+		m_OpenContacts.clear();
+		m_lRecordGroup = -1;
+		m_nLastNodeCode = -1;
+	}
+	
+	/**
+	 * Set whether full loads should parse each file in parallel (memory mapped and split into
+	 * chunks on a fork-join pool) rather than line by line. The events that come out are exactly
+	 * the same either way, only the parsing is done in parallel. Partial (windowed) loads always
+	 * read line by line.
+	 * 
+	 * @param bParallel True to parse in parallel
+	 */
+	public void setFlag_ParallelIngest (boolean bParallel)
+	{
+		m_bParallelIngest = bParallel;
+	}
+	
+	public boolean getFlag_ParallelIngest ()
+	{
+		return m_bParallelIngest;
+	}
+	
+	/**
+	 * Set the pool used for parallel parsing, null to use the common pool
+	 * @param thePool
+	 */
+	public void setIngestPool (ForkJoinPool thePool)
+	{
+		m_IngestPool = thePool;
+	}
+	
 	public boolean startNextFile (String sFile)
 	{
+		if(m_bParallelIngest)
+		{
+			return startNextFile_Mapped(sFile);
+		}
+		
 		System.out.println("Loading BT file: " + m_sPath + sFile);
 		try
 		{
@@ -95,6 +301,256 @@ public class DataLoaderBluetooth extends DataLoader {
 		return true;
 	}
 	
+	/**
+	 * Load a file by parsing it in parallel into a trace and then creating the events from the
+	 * trace in file order
+	 * 
+	 * @param sFile
+	 * @return True if successful, false otherwise
+	 */
+	public boolean startNextFile_Mapped (String sFile)
+	{
+		ProximityTrace		theTrace;
+		ForkJoinPool		thePool;
+		
+		System.out.println("Loading BT file: " + m_sPath + sFile);
+		
+		thePool = m_IngestPool;
+		
+		if(thePool == null)
+		{
+			thePool = ForkJoinPool.commonPool();
+		}
+		
+		try
+		{
+			theTrace = ProximityTraceParser.parseFile(m_sPath + sFile, m_Tokens, thePool);
+		}
+		catch (IOException e)
+		{
+			System.err.println(e);
+			return false;
+		}
+		
+		if(!getFlag_AdjustTime())
+		{
+			return processProximityTrace(theTrace, 0.0);
+		}
+		else
+		{
+			return processProximityTrace(theTrace, getAdjustTime());
+		}
+	}
+	
+	/**
+	 * Create the events for all of the records in a trace, in the order of the trace
+	 * 
+	 * @param theTrace The parsed records
+	 * @param fTimeOffset The offset to subtract from the time of each record
+	 * @return True if successful, false otherwise
+	 */
+	public boolean processProximityTrace (ProximityTrace theTrace, Double fTimeOffset)
+	{
+		double		fOffset;
+		
+		fOffset = fTimeOffset;
+		
+		// The records need to be coded with our own dictionary
+		if(theTrace.getDictionary() != m_Tokens)
+		{
+			ProximityTrace theCoded = new ProximityTrace(m_Tokens, theTrace.size());
+			theCoded.append(theTrace);
+			theTrace = theCoded;
+		}
+		
+		for(int i = 0; i < theTrace.size(); i++)
+		{
+			processProximityRecord(theTrace.getNodeCode(i), theTrace.getTime(i) - fOffset, theTrace.getNeighborCode(i), theTrace.getRSSI(i));
+		}
+		
+		m_Stats.adjustValue(m_nStat_Lines, theTrace.size());
+		m_Stats.adjustValue(m_nStat_Ignored, theTrace.getIgnoredCount());
+		return true;
+	}
+	
+	/**
+	 * Make a quick pass over all of the files to register every mobile node that shows up in 
+	 * the files and to count the number of proximity events that a full load would create. A
+	 * block of event IDs of that size is then reserved so that a partial load numbers (and
+	 * hence orders) its events exactly the same way as a full load. 
+	 * 
+	 * @return True if successful, false otherwise
+	 */
+	public boolean registerTraceNodes ()
+	{
+		int			nLastNode;
+		double		fLastTime;
+		long		lEvents;
+		Double		fTimeOffset;
+		
+		nLastNode = -1;
+		fLastTime = 0.0;
+		lEvents = 0;
+		
+		if(!getFlag_AdjustTime())
+		{
+			fTimeOffset = 0.0;
+		}
+		else
+		{
+			fTimeOffset = getAdjustTime();
+		}
+		
+		for(int i = 0; i < m_sFileList.size(); i++)
+		{
+			try
+			{
+				FileReader fr = new FileReader(m_sPath + m_sFileList.get(i));			
+				BufferedReader br = new BufferedReader(fr);
+				String sLine;
+				
+				while((sLine = br.readLine()) != null)
+				{
+					m_Cursor.reset(sLine);
+					
+					if(m_Cursor.countFields() < 5)
+					{
+						continue;
+					}
+					
+					m_Cursor.nextField();
+					int nNode = m_Cursor.getTokenCode(m_Tokens);
+					m_Cursor.nextField();
+					double fEventTime = m_Cursor.parseDouble() - fTimeOffset;
+					m_Cursor.nextField();
+					int nNeighbor = m_Cursor.getTokenCode(m_Tokens);
+					
+					String sNode = m_Tokens.getToken(nNode);
+					String sNeighbor = m_Tokens.getToken(nNeighbor);
+					
+					// Same grouping rule as processProximityRecord
+					boolean bNewGroup = !(nLastNode >= 0 && nLastNode == nNode && Double.compare(fLastTime, fEventTime) == 0 &&
+						 sNode.contains("socs") && sNeighbor.contains("socs"));
+					
+					// One ID for each event, with contact intervals one for each scan
+					if(m_bContactIntervals ? sNeighbor.contains("socs") : bNewGroup)
+					{
+						lEvents++;
+					}
+					
+					if(bNewGroup)
+					{
+						nLastNode = nNode;
+						fLastTime = fEventTime;
+						
+						resolveMobileNode(nNode, true);
+					}
+					
+					resolveMobileNode(nNeighbor, sNeighbor.contains("socs"));
+				}
+				
+				br.close();
+				fr.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println(e);
+				return false;
+			}
+		}
+		
+		m_lReservedEventID = getEngine().reserveEventIDs(lEvents);
+		m_lReservedEventEnd = m_lReservedEventID + lEvents;
+		return true;
+	}
+	
+	/**
+	 * Find a mobile node by the dictionary code of its name, registering a new one if needed
+	 * 
+	 * @param nCode The code of the name of the node
+	 * @param bCreate Create and register the node if it does not exist yet
+	 * @return The mobile node, null if not found and not created
+	 */
+	private MobileNode resolveMobileNode (int nCode, boolean bCreate)
+	{
+		MobileNode	theMobileNode;
+		
+		// The cached node is only good if it is still registered (the engine may have been reset)
+		if(nCode < m_NodeByToken.length)
+		{
+			theMobileNode = m_NodeByToken[nCode];
+			
+			if(theMobileNode != null && getEngine().resolveObjectByIndex(theMobileNode.getIndex()) == theMobileNode)
+			{
+				return theMobileNode;
+			}
+		}
+		
+		theMobileNode = resolveMobileNode(m_Tokens.getToken(nCode), bCreate);
+		
+		if(theMobileNode != null)
+		{
+			if(nCode >= m_NodeByToken.length)
+			{
+				m_NodeByToken = Arrays.copyOf(m_NodeByToken, Math.max(2 * m_NodeByToken.length, nCode + 1));
+			}
+			
+			m_NodeByToken[nCode] = theMobileNode;
+		}
+		
+		return theMobileNode;
+	}
+	
+	/**
+	 * Find a mobile node by name, registering a new one if needed
+	 * 
+	 * @param sNode The name of the node
+	 * @param bCreate Create and register the node if it does not exist yet
+	 * @return The mobile node, null if not found and not created
+	 */
+	private MobileNode resolveMobileNode (String sNode, boolean bCreate)
+	{
+		SimObject	theSimObject;
+		MobileNode	theMobileNode;
+		
+		theSimObject = getEngine().resolveObjectByProperName(sNode);
+		
+		if(theSimObject != null)
+		{
+			return (MobileNode) theSimObject;
+		}
+		
+		if(!bCreate)
+		{
+			return null;
+		}
+		
+		theMobileNode = new MobileNode();
+		theMobileNode.setName(sNode);
+		
+		getEngine().registerSimObject(sNode, theMobileNode);
+		return theMobileNode;
+	}
+	
+	/** 
+	 * Retrieve the time from a line in the proximity file
+	 * 
+	 * @param sLine
+	 * @return The time (unadjusted), -1 if the line does not have a valid time
+	 */
+	public Double extractTimeFromLine (String sLine)
+	{
+		m_Cursor.reset(sLine);
+		
+		if(m_Cursor.countFields() < 5)
+		{
+			return -1.0;
+		}
+		
+		m_Cursor.skipFields(2);
+		return m_Cursor.parseDouble();
+	}
+	
 	/**
 	 * If the function is used, the proximity files have to be
 	 * named in date format as YYYYMMDD, e.g. 20120206.
@@ -145,37 +601,68 @@ public class DataLoaderBluetooth extends DataLoader {
 		//     Node, Time (UTC), Neighbor, Mac Addr, RSSI
 		// Comma-separated as follows
 		//	   socs043, 1383368329, socs050, E8:99:C4:5E:D1:DD, -89
-		// Split it up
-		String [] sFields = sLine.split(",");
-		if(sFields.length < 5)
+		// Walk the fields in place rather than splitting the line up
+		m_Cursor.reset(sLine);
+		
+		if(m_Cursor.countFields() < 5)
 		{
-			m_Stats.adjustValue("Ignored", 1.0);
+			m_Stats.adjustValue(m_nStat_Ignored, 1.0);
 			return false;
 		}
 		
+		// Which node is it
+		int			nNode;
+		double		fEventTime;
+		int 		nNeighbor;
+		int			nRSSI;
+		
+		m_Cursor.nextField();
+		nNode = m_Cursor.getTokenCode(m_Tokens);
+		m_Cursor.nextField();
+		fEventTime = m_Cursor.parseDouble() - fTimeOffset;
+		m_Cursor.nextField();
+		nNeighbor = m_Cursor.getTokenCode(m_Tokens);
+		
+		// Skip over the MAC address, a malformed RSSI is treated as zero
+		m_Cursor.skipFields(2);
+		nRSSI = m_Cursor.parseInt(0);
+		
+		m_Stats.adjustValue(m_nStat_Lines, 1.0);
+		
+		return processProximityRecord(nNode, fEventTime, nNeighbor, nRSSI);
+	}
+	
+	/**
+	 * Process one proximity record (one line of the proximity file) that has already been
+	 * parsed. Records for the same node at the same time are grouped into a single event.
+	 * 
+	 * @param nNodeCode The dictionary code of the node doing the sensing
+	 * @param fEventTime The (adjusted) time of the record
+	 * @param nNeighborCode The dictionary code of the neighbor that was sensed
+	 * @param nRSSI The signal strength
+	 * @return True if successful, false otherwise
+	 */
+	protected boolean processProximityRecord (int nNodeCode, Double fEventTime, int nNeighborCode, int nRSSI)
+	{
 		// Create our event 
 		EventProximitySense		theProxEvent;
 		
-		// Which node is it
 		String		sNode;
-		Double		fEventTime;
-		String 		sNeighbor;
-		int			nRSSI;
+		String		sNeighbor;
+		MobileNode	theNeighbor;
 		
-		sNode = sFields[0];
-		fEventTime = Double.parseDouble(sFields[1]) - fTimeOffset;
-		sNeighbor = sFields[2];
-		nRSSI = 0;
-		try
-		{
-			nRSSI = Integer.parseInt(sFields[4]);
-		} 
-		catch (NumberFormatException e)
+		sNode = m_Tokens.getToken(nNodeCode);
+		sNeighbor = m_Tokens.getToken(nNeighborCode);
+		
+		if(m_ContactGraph != null)
 		{
-			//System.out.println(sLine);
+			m_ContactGraph.addContact(sNode, sNeighbor, fEventTime, nRSSI);
 		}
 		
-		m_Stats.adjustValue("Lines", 1.0);
+		if(m_bContactIntervals)
+		{
+			return processContactRecord(nNodeCode, fEventTime, nNeighborCode, nRSSI);
+		}
 		
 		// Criterion
 		//    The last event must not be null
@@ -183,40 +670,33 @@ public class DataLoaderBluetooth extends DataLoader {
 		//    The time must also match for the event
 		//	  For now both nodes must be socs devices
 		if(m_LastEvent != null && 
-				m_LastEvent.getSimObject().getName().compareTo(sNode) == 0 && 
+				m_nLastNodeCode == nNodeCode && 
 				m_LastEvent.getTime().equals(fEventTime) && 
 				sNode.contains("socs") && 
 				sNeighbor.contains("socs"))
 		{	
-			ProximityInstance	theInstance;
-			theInstance = new ProximityInstance();
-			theInstance.setName(sNeighbor);
-			theInstance.setInstanceTime(fEventTime);
-			theInstance.setSignalStrength(nRSSI);
+			// Also need to register the neighbor mobile node, for now only "socs"
+			theNeighbor = resolveMobileNode(nNeighborCode, sNeighbor.contains("socs"));
 			
-			m_LastEvent.addProximityInstance(theInstance);
+			m_LastEvent.addProximityInstance(createProximityInstance(sNeighbor, theNeighbor, fEventTime, nRSSI));
 		}
 		else 
 		{
 			theProxEvent = new EventProximitySense();
 			m_LastEvent = theProxEvent;
+			m_nLastNodeCode = nNodeCode;
 			
-			// Try to find the node from the master list
-			SimObject theSimObject;
+			// Use the reserved block of IDs if we are doing a partial load
+			if(m_lReservedEventID >= 0 && m_lReservedEventID < m_lReservedEventEnd)
+			{
+				theProxEvent.setEventID(m_lReservedEventID);
+				m_lReservedEventID++;
+			}
+			
+			// Try to find the node from the master list, adding it if needed
 			MobileNode theMobileNode;
 
-			theSimObject = SimulationEngine.theEngine.resolveObjectByProperName(sNode);
-
-			if (theSimObject == null) {
-				// Did not find it, should we add it?
-				theMobileNode = new MobileNode();
-				theMobileNode.setName(sNode);
-				
-				SimulationEngine.theEngine.registerSimObject(sNode, theMobileNode);
-			} else {
-				// Found it!
-				theMobileNode = (MobileNode) theSimObject;
-			}
+			theMobileNode = resolveMobileNode(nNodeCode, true);
 			
 			// At this point we should have a good mobile node
 			theProxEvent.setSimObject(theMobileNode);
@@ -224,41 +704,128 @@ public class DataLoaderBluetooth extends DataLoader {
 			// Set the time as whatever time is specified in the file minus the offset
 			theProxEvent.setTime(fEventTime);
 			
-			// Add the proximity instance
-			ProximityInstance	theInstance;
-			theInstance = new ProximityInstance();
-			theInstance.setName(sNeighbor);
-			theInstance.setInstanceTime(fEventTime);
-			theInstance.setSignalStrength(nRSSI);
+			// Also need to register the neighbor mobile node, for now only "socs"
+			theNeighbor = resolveMobileNode(nNeighborCode, sNeighbor.contains("socs"));
 			
-			theProxEvent.addProximityInstance(theInstance);
+			// Add the proximity instance
+			theProxEvent.addProximityInstance(createProximityInstance(sNeighbor, theNeighbor, fEventTime, nRSSI));
 			
 			// Add the current event into the queue
-			SimulationEngine.theEngine.addEvent(theProxEvent);
+			getEngine().addEvent(theProxEvent);
 		}
-			
-		// Also need to register the neighbor mobile node, for now only "socs"
-		SimObject simObject;
-		MobileNode mobileNode;
 		
-		simObject = SimulationEngine.theEngine.resolveObjectByProperName(sNeighbor);
+		return true;
+	}
+	
+	/**
+	 * Process one proximity record when merging scans into contact intervals. The record becomes 
+	 * the next scan of the open contact of the pair or starts a new contact.
+	 * 
+	 * @param nNodeCode The dictionary code of the node doing the sensing
+	 * @param fEventTime The (adjusted) time of the record
+	 * @param nNeighborCode The dictionary code of the neighbor that was sensed
+	 * @param nRSSI The signal strength
+	 * @return True if successful, false otherwise
+	 */
+	private boolean processContactRecord (int nNodeCode, double fEventTime, int nNeighborCode, int nRSSI)
+	{
+		EventContactInterval	theContact;
+		MobileNode				theMobileNode;
+		MobileNode				theNeighbor;
+		String					sNode;
+		String					sNeighbor;
+		Long					lPair;
+		long					lEventID;
+		
+		sNode = m_Tokens.getToken(nNodeCode);
+		sNeighbor = m_Tokens.getToken(nNeighborCode);
+		
+		// Same grouping rule as for the proximity events
+		if(!(m_lRecordGroup >= 0 && m_nLastNodeCode == nNodeCode && Double.compare(m_fLastRecordTime, fEventTime) == 0 &&
+			 sNode.contains("socs") && sNeighbor.contains("socs")))
+		{
+			m_lRecordGroup++;
+			m_nLastNodeCode = nNodeCode;
+			m_fLastRecordTime = fEventTime;
+		}
+		
+		theMobileNode = resolveMobileNode(nNodeCode, true);
+		theNeighbor = resolveMobileNode(nNeighborCode, sNeighbor.contains("socs"));
+		
+		// A proximity event only keeps "socs" neighbors and only the first record of a neighbor
+		if(!sNeighbor.contains("socs"))
+		{
+			return true;
+		}
+		
+		lPair = ((long) nNodeCode << 32) | nNeighborCode;
+		theContact = m_OpenContacts.get(lPair);
+		
+		if(theContact != null && theContact.getLastGroup() == m_lRecordGroup)
+		{
+			return true;
+		}
+		
+		// Every scan gets the ID that its own event would have had
+		if(m_lReservedEventID >= 0 && m_lReservedEventID < m_lReservedEventEnd)
+		{
+			lEventID = m_lReservedEventID;
+			m_lReservedEventID++;
+		}
+		else
+		{
+			lEventID = getEngine().reserveEventIDs(1);
+		}
 		
-		if (simObject == null && sNeighbor.contains("socs"))
+		// Start a new contact after a gap that would have let the neighbor expire, also for a 
+		// stronger signal during a partial load as the contact may be queued by its signal already
+		if(theContact == null || theContact.hasEnded() || 
+		   fEventTime < theContact.getLastScanTime() ||
+		   fEventTime - theContact.getLastScanTime() > MobileNode.DEFAULT_NEIGHBOR_LIFETIME_BASELINE ||
+		   (isWindowed() && nRSSI > theContact.getMaxSignalStrength()))
 		{
-			// Did not find it, should we add it?
-			mobileNode = new MobileNode();
-			mobileNode.setName(sNeighbor);
+			theContact = new EventContactInterval(sNeighbor, (theNeighbor != null) ? theNeighbor.getIndex() : -1, fEventTime, lEventID, nRSSI);
+			theContact.setSimObject(theMobileNode);
+			m_OpenContacts.put(lPair, theContact);
+			m_Stats.adjustValue(m_nStat_Contacts, 1.0);
 			
-			SimulationEngine.theEngine.registerSimObject(sNeighbor, mobileNode);
+			getEngine().addEvent(theContact);
+		}
+		else
+		{
+			theContact.addScan(fEventTime, lEventID, nRSSI);
 		}
 		
+		theContact.setLastGroup(m_lRecordGroup);
 		return true;
 	}
 	
+	private ProximityInstance createProximityInstance (String sNeighbor, MobileNode theNeighbor, Double fEventTime, int nRSSI)
+	{
+		ProximityInstance	theInstance;
+		
+		theInstance = new ProximityInstance();
+		theInstance.setName(sNeighbor);
+		theInstance.setInstanceTime(fEventTime);
+		theInstance.setSignalStrength(nRSSI);
+		
+		if(theNeighbor != null)
+		{
+			theInstance.setIndex(theNeighbor.getIndex());
+		}
+		
+		return theInstance;
+	}
+	
 	public void summarizeLoad ()
 	{
 		System.out.println(" B/T File load completed");
 		System.out.println("    " + m_Stats.get("Lines").getValue() + " lines processed");
 		System.out.println("    " + m_Stats.get("Ignored").getValue() + " lines ignored");
+		
+		if(m_bContactIntervals)
+		{
+			System.out.println("    " + m_Stats.get("Contacts").getValue() + " contact intervals");
+		}
 	}
 }
@@ -0,0 +1,52 @@
+package mobilesim.core;
+
+import java.io.*;
+
+/** Read in Bluetooth-based proximity data that has been converted into binary trace files 
+ * (see BinaryTrace). The events that are created are exactly the same as when the original CSV
+ * files are read, only the text parsing is skipped.
+ * 
+ * @author Striegel
+ *
+ */
+public class DataLoaderBluetoothBinary extends DataLoaderBluetooth {
+
+	public DataLoaderBluetoothBinary ()
+	{
+		super();
+	}
+	
+	/**
+	 * Binary traces are always read in one go, a read window is ignored
+	 */
+	public boolean isWindowed ()
+	{
+		return false;
+	}
+	
+	public boolean startNextFile (String sFile)
+	{
+		ProximityTrace		theTrace;
+		
+		System.out.println("Loading binary BT file: " + m_sPath + sFile);
+		
+		try
+		{
+			theTrace = BinaryTrace.readProximityTrace(m_sPath + sFile, m_Tokens);
+		}
+		catch (IOException e)
+		{
+			System.err.println(e);
+			return false;
+		}
+		
+		if(!getFlag_AdjustTime())
+		{
+			return processProximityTrace(theTrace, 0.0);
+		}
+		else
+		{
+			return processProximityTrace(theTrace, getAdjustTime());
+		}
+	}
+}
@@ -4,7 +4,13 @@ import java.io.*;
 
 public class DataLoaderNetworkTraffic extends DataLoader {
 	
-	public static DataLoaderNetworkTraffic theLoader = new DataLoaderNetworkTraffic();
+	// The loader of the default context (see SimulationContext), set when that context is created
+	public static DataLoaderNetworkTraffic theLoader;
+	
+	static
+	{
+		SimulationContext.getDefault();
+	}
 	
 	public static final int DATALOADER_TRAFFIC_MODE_TEST = 0;
 	
@@ -49,6 +55,30 @@ public class DataLoaderNetworkTraffic extends DataLoader {
 		return true;
 	}
 	
+	/**
+	 * Same as a full startFileLoad but from traces that were parsed beforehand (e.g. on another
+	 * thread). The traces are only read.
+	 * 
+	 * @param theTraces The parsed files, one for each file in the file list and in the same order
+	 * @return True if successful, false otherwise
+	 */
+	public boolean startTraceLoad (TrafficTrace [] theTraces)
+	{
+		if(theTraces.length != m_sFileList.size())
+		{
+			System.err.println("* Error: Got " + theTraces.length + " traces for " + m_sFileList.size() + " traffic files.");
+			return false;
+		}
+		
+		for(int i = 0; i < theTraces.length; i++)
+		{
+			m_sCurrentFile = m_sFileList.get(i);
+			processTrafficTrace(theTraces[i], m_sFileList.indexOf(m_sCurrentFile));
+		}
+		
+		return true;
+	}
+	
 	public boolean startNextFile (String sFile)
 	{
 		int sFileIndex = m_sFileList.indexOf(sFile);
@@ -97,29 +127,99 @@ public class DataLoaderNetworkTraffic extends DataLoader {
 		// File format:
 	    //     Node, rx vol at hour 0-1, ..., rx vol at hour 23-24
 	    
-		// Split it up
-		String [] sFields = sLine.split(",");
-		if(sFields.length < 25)
+		// Walk the fields in place rather than splitting the line up
+		int nFields;
+		
+		m_Cursor.reset(sLine);
+		nFields = m_Cursor.countFields();
+		if(nFields < 25)
 		{
 			System.out.println("** Skip line in traffic file.");
 			return false;
 		}
 		
 		String		sNode;
-		SimObject   theSimObject;
 		MobileNode 	theMobileNode;
 		
-		sNode = sFields[0];
-		theSimObject = SimulationEngine.theEngine.resolveObjectByProperName(sNode);
+		m_Cursor.nextField();
+		sNode = m_Cursor.getToken(m_Tokens);
+		theMobileNode = resolveTrafficNode(sNode);
 			
+		if(theMobileNode != null)
+		{
+			for(int i = 1; i < nFields; i++)
+			{
+				m_Cursor.nextField();
+				double traffic = m_Cursor.parseDouble();
+				applyHourlyTraffic(theMobileNode, i - 1, nFileIndex, traffic);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Traffic is only recorded for nodes that the simulation already knows about
+	 * 
+	 * @param sNode
+	 * @return The mobile node, null if there is no such mobile node
+	 */
+	protected MobileNode resolveTrafficNode (String sNode)
+	{
+		SimObject   theSimObject;
+		
+		theSimObject = getEngine().resolveObjectByProperName(sNode);
+		
 		if(theSimObject != null && theSimObject instanceof MobileNode)
 		{
-			theMobileNode = (MobileNode) theSimObject;
-			for(int i = 1; i < sFields.length; i++)
+			return (MobileNode) theSimObject;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Record the traffic volume of a node for one hour of a file
+	 * 
+	 * @param theMobileNode The node
+	 * @param nHour The hour within the file
+	 * @param nFileIndex The index of the file (day)
+	 * @param fTraffic The traffic volume
+	 */
+	protected void applyHourlyTraffic (MobileNode theMobileNode, int nHour, int nFileIndex, double fTraffic)
+	{
+		theMobileNode.setHourlyTraffic(nHour + 24*nFileIndex, fTraffic);
+		m_HourlyTrafficOverall[nHour + 24*nFileIndex] += fTraffic;
+	}
+	
+	/**
+	 * Record the traffic for all of the rows of a parsed traffic file
+	 * 
+	 * @param theTrace The parsed file
+	 * @param nFileIndex The index of the file (day)
+	 * @return True if successful, false otherwise
+	 */
+	public boolean processTrafficTrace (TrafficTrace theTrace, int nFileIndex)
+	{
+		double []	theValues;
+		
+		theValues = theTrace.getValues();
+		
+		for(long i = 0; i < theTrace.getSkippedCount(); i++)
+		{
+			System.out.println("** Skip line in traffic file.");
+		}
+		
+		for(int nRow = 0; nRow < theTrace.size(); nRow++)
+		{
+			MobileNode theMobileNode = resolveTrafficNode(theTrace.getNode(nRow));
+			
+			if(theMobileNode != null)
 			{
-				double traffic = Double.parseDouble(sFields[i]);
-				theMobileNode.setHourlyTraffic(i + 24*nFileIndex - 1, traffic);
-				m_HourlyTrafficOverall[i + 24*nFileIndex - 1] += traffic;
+				for(int j = 0; j < theTrace.getRowLength(nRow); j++)
+				{
+					applyHourlyTraffic(theMobileNode, j, nFileIndex, theValues[theTrace.getRowStart(nRow) + j]);
+				}
 			}
 		}
 		
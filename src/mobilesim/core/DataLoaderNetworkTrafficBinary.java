@@ -0,0 +1,36 @@
+package mobilesim.core;
+
+import java.io.*;
+
+/** Read in hourly traffic data that has been converted into binary trace files (see BinaryTrace)
+ * 
+ * @author Striegel
+ *
+ */
+public class DataLoaderNetworkTrafficBinary extends DataLoaderNetworkTraffic {
+
+	public DataLoaderNetworkTrafficBinary ()
+	{
+		super();
+	}
+	
+	public boolean startNextFile (String sFile)
+	{
+		TrafficTrace	theTrace;
+		int				nFileIndex;
+		
+		nFileIndex = m_sFileList.indexOf(sFile);
+		
+		try
+		{
+			theTrace = BinaryTrace.readTrafficTrace(m_sPath + sFile, m_Tokens);
+		}
+		catch (IOException e)
+		{
+			System.err.println(e);
+			return false;
+		}
+		
+		return processTrafficTrace(theTrace, nFileIndex);
+	}
+}
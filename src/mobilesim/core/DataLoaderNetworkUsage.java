@@ -6,16 +6,20 @@ public class DataLoaderNetworkUsage extends DataLoader {
 	
 	EventDataUpdate		m_LastEvent;
 	StatisticGroup		m_Stats;
+	int					m_nStat_Lines;
+	int					m_nStat_Consolidations;
+	int					m_nStat_CollideNoChange;
+	int					m_nStat_CollideChange;
 	
 	public DataLoaderNetworkUsage ()
 	{
 		m_LastEvent = null;
 		m_Stats = new StatisticGroup();
 		
-		m_Stats.initializeCounter("Lines");
-		m_Stats.initializeCounter("Consolidations");
-		m_Stats.initializeCounter("TimeCollide-NoChange");
-		m_Stats.initializeCounter("TimeCollide-Change");		
+		m_nStat_Lines = m_Stats.initializeCounter("Lines");
+		m_nStat_Consolidations = m_Stats.initializeCounter("Consolidations");
+		m_nStat_CollideNoChange = m_Stats.initializeCounter("TimeCollide-NoChange");
+		m_nStat_CollideChange = m_Stats.initializeCounter("TimeCollide-Change");		
 	}
 	
 	public void summarizeLoad ()
@@ -43,9 +47,9 @@ public class DataLoaderNetworkUsage extends DataLoader {
 		//	 Total is overall (cellular + WiFi)
 		//   Mobile is strictly cellular
 				
-		// Split it up
-		String [] sFields = sLine.split(",");
-		if(sFields.length < 4)
+		// Walk the fields in place rather than splitting the line up
+		m_Cursor.reset(sLine);
+		if(m_Cursor.countFields() < 4)
 		{
 			return false;
 		}
@@ -55,37 +59,47 @@ public class DataLoaderNetworkUsage extends DataLoader {
 		// Which node is it?
 		String		sNode;
 		Double		fEventTime;
+		String		sField;
+		String		sValue;
 		
-		sNode = sFields[0];
+		m_Cursor.nextField();
+		sNode = m_Cursor.getToken(m_Tokens);
 
-		fEventTime = Double.parseDouble(sFields[1]) - fTimeOffset;
+		m_Cursor.nextField();
+		fEventTime = m_Cursor.parseDouble() - fTimeOffset;
+		
+		// Field names repeat constantly, the values mostly do not
+		m_Cursor.nextField();
+		sField = m_Cursor.getToken(m_Tokens);
+		m_Cursor.nextField();
+		sValue = m_Cursor.getString();
 
-		m_Stats.adjustValue("Lines", 1.0);
+		m_Stats.adjustValue(m_nStat_Lines, 1.0);
 				
 		// Criterion
 		//    The last event must not be null
 		//    The name for this mobile node and the last mobile node must match
 		//    The time must also match for the event
-		if(m_LastEvent != null && m_LastEvent.getSimObject().getName().compareTo(sFields[0]) == 0 &&
+		if(m_LastEvent != null && m_LastEvent.getSimObject().getName().equals(sNode) &&
 		   m_LastEvent.getTime().equals(fEventTime))
 		{
 			// Just add this field + value as it is the same node and same sample time
-			switch(m_LastEvent.addNameValue(sFields[2], sFields[3]))
+			switch(m_LastEvent.addNameValue(sField, sValue))
 			{
 				// Totally cool - no worries
 				case 1:
-					m_Stats.adjustValue("Consolidations", 1.0);
+					m_Stats.adjustValue(m_nStat_Consolidations, 1.0);
 					break;
 					
 				// Duplicate key but cool - values were the same
 				case 0:
-					m_Stats.adjustValue("TimeCollide-NoChange", 1.0);					
+					m_Stats.adjustValue(m_nStat_CollideNoChange, 1.0);					
 					break;
 					
 				// Ruh roh, we appeared to sample the same point in time multiple times
 				case -1:
-					m_Stats.adjustValue("Lines", -1.0);
-					m_Stats.adjustValue("TimeCollide-Change", 1.0);					
+					m_Stats.adjustValue(m_nStat_Lines, -1.0);
+					m_Stats.adjustValue(m_nStat_CollideChange, 1.0);					
 					m_LastEvent = null;
 					processLine_RipCSV_1(sLine, fTimeOffset);
 					break;
@@ -100,7 +114,7 @@ public class DataLoaderNetworkUsage extends DataLoader {
 			SimObject 	theSimObject;
 			MobileNode	theMobileNode;
 			
-			theSimObject = SimulationEngine.theEngine.resolveObjectByProperName(sNode);
+			theSimObject = getEngine().resolveObjectByProperName(sNode);
 			
 			if(theSimObject == null)
 			{
@@ -108,7 +122,7 @@ public class DataLoaderNetworkUsage extends DataLoader {
 				theMobileNode = new MobileNode();
 				theMobileNode.setName(sNode);
 		
-				SimulationEngine.theEngine.registerSimObject(sNode, theMobileNode);			
+				getEngine().registerSimObject(sNode, theMobileNode);			
 			}
 			else
 			{
@@ -123,11 +137,11 @@ public class DataLoaderNetworkUsage extends DataLoader {
 			theNW_Usage.setTime(fEventTime);
 			
 			// Set the field name and value
-			theNW_Usage.addNameValue(sFields[2], sFields[3]);			
+			theNW_Usage.addNameValue(sField, sValue);			
 			
 			theNW_Usage.setType(EventDataUpdate.EVENTDATA_UPDATE_NW_USAGE);
 			
-			SimulationEngine.theEngine.addEvent(theNW_Usage);		
+			getEngine().addEvent(theNW_Usage);		
 		}
 						
 		return true;
@@ -140,15 +154,15 @@ public class DataLoaderNetworkUsage extends DataLoader {
 	
 	public Double extractTime_RipCSV_1 (String sLine)
 	{
-		// Split it up
-		String [] sFields = sLine.split(",");
+		m_Cursor.reset(sLine);
 		
-		if(sFields.length < 4)
+		if(m_Cursor.countFields() < 4)
 		{
 			return -1.0;
 		}
 
-		return Double.parseDouble(sFields[1]);
+		m_Cursor.skipFields(2);
+		return m_Cursor.parseDouble();
 	}
 	
 }
\ No newline at end of file
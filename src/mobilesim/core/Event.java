@@ -15,23 +15,42 @@ package mobilesim.core;
 public class Event implements Comparable<Event> {
 
 	// The time (in seconds which the event will be processed. Ties are resolved on
-	// a first come first serve basis
-	private Double 	  m_fTime;              
+	// a first come first serve basis, i.e. by the event ID. Kept as a primitive as the 
+	// event queue compares it constantly.
+	private double 	  m_fTime;              
 	
 	// The object that will be called when this particular event needs to be processed. 
 	// This should not be null
 	private SimObject m_BaseObject;       
 	
-	// An event ID solely for the purpose of tracking / troubleshooting
+	// An event ID for tracking / troubleshooting that also breaks ties between events with
+	// the same time. IDs are handed out in creation order and restart with each simulation
+	// so the processing order is fully reproducible from run to run.
 	private long 	  m_lEventID;           // event ID
 	
+	// Link to the next event when sitting in a bucket of the calendar queue
+	Event			  m_QueueNext;
+	
 	public Event ()
 	{
 		m_fTime = 0.0;
 		m_BaseObject = null;
 
-		m_lEventID = SimulationEngine.theEngine.getEventID();
-		SimulationEngine.theEngine.incrementEventID();
+		// IDs come from the engine of the simulation being built on this thread
+		SimulationEngine theEngine = SimulationContext.getCurrent().getEngine();
+		m_lEventID = theEngine.getEventID();
+		theEngine.incrementEventID();
+	}
+	
+	/**
+	 * Constructor for an event whose ID was handed out beforehand (see setEventID)
+	 * @param lEventID
+	 */
+	Event (long lEventID)
+	{
+		m_fTime = 0.0;
+		m_BaseObject = null;
+		m_lEventID = lEventID;
 	}
 
 	@Override
@@ -41,13 +60,13 @@ public class Event implements Comparable<Event> {
 		final int SIMULT = 0;
 		final int AFTER = 1;
 		
-		if(this.getTime() < e.getTime()) 
-		{
-			return BEFORE;
-		} 
-		else if(this.getTime() == e.getTime()) 
+		if(this == e)
 		{
 			return SIMULT;
+		}
+		else if(isBefore(this, e)) 
+		{
+			return BEFORE;
 		} 
 		else 
 		{
@@ -55,6 +74,45 @@ public class Event implements Comparable<Event> {
 		}
 	}
 	
+	/**
+	 * The ordering used by all of the event queues. Events are ordered by time with ties going
+	 * to the event with the lower event ID (the one created first). This is a total order on 
+	 * distinct events and only looks at primitive fields.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return True if event a must be processed before event b
+	 */
+	public static boolean isBefore (Event a, Event b)
+	{
+		if(a.m_fTime != b.m_fTime)
+		{
+			return a.m_fTime < b.m_fTime;
+		}
+		
+		return a.m_lEventID < b.m_lEventID;
+	}
+	
+	/**
+	 * Override the enumerated ID of this event. This is only for loaders that have reserved a
+	 * block of IDs up front (see SimulationEngine.reserveEventIDs) so that the events they create 
+	 * later on still sort as if they had been created right away. 
+	 * @param lEventID
+	 */
+	void setEventID (long lEventID)
+	{
+		m_lEventID = lEventID;
+	}
+	
+	/**
+	 * Retrieve the enumerated ID of this event
+	 * @return
+	 */
+	public long getEventID ()
+	{
+		return m_lEventID;
+	}
+	
 	/**
 	 * Set the time at which this event will occur
 	 * @param fTime the time (in seconds) where the event will occur
@@ -82,6 +140,16 @@ public class Event implements Comparable<Event> {
 		return m_fTime;
 	}
 	
+	/**
+	 * Retrieve the time that this event will occur without boxing it, this is the version
+	 * that the event queues should use
+	 * @return Time the event will occur (in seconds)
+	 */
+	public double getTimeValue ()
+	{
+		return m_fTime;
+	}
+	
 	/**
 	 * Sets the base object that will be called when the event is processed
 	 * @param theObj
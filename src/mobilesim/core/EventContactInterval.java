@@ -0,0 +1,176 @@
+package mobilesim.core;
+
+import java.util.Arrays;
+
+/**
+ * A contact interval, i.e. a run of consecutive scans in which a node kept on sensing the same
+ * neighbor. Rather than one proximity event for every scan, a single event object walks through
+ * the scans of the contact: once a scan has been processed, it moves on to the next scan and goes
+ * back into the event queue. The first scan starts the contact and the contact ends after the
+ * last scan.
+ *
+ * Every scan keeps the event ID that it would have had as a proximity event of its own, hence
+ * the scans are processed in exactly the same order as before.
+ *
+ * @author Striegel
+ */
+public class EventContactInterval extends Event {
+
+	private static final int	INITIAL_SCANS = 8;
+
+	// Remember it also contains m_BaseObject inherited from the parent class - Event,
+	// that is the node doing the sensing
+
+	String		m_sNeighbor;			// The name of the neighbor that was sensed
+	int			m_nNeighborIndex;		// The index of the neighbor, -1 if not registered
+
+	// The scans of the contact, in order
+	double []	m_fScanTimes;
+	int []		m_nScanRSSI;
+	long []		m_lScanEventIDs;
+	int			m_nScans;
+
+	int			m_nCurrentScan;			// The scan that the event currently stands for
+	int			m_nMaxRSSI;				// The strongest signal over all of the scans
+
+	// The group of records (see DataLoaderBluetooth) that the last scan came from
+	long		m_lLastGroup;
+
+	/**
+	 * Constructor
+	 * @param sNeighbor The name of the neighbor
+	 * @param nNeighborIndex The index of the neighbor, -1 if not registered
+	 * @param fTime The time of the first scan
+	 * @param lEventID The event ID of the first scan
+	 * @param nRSSI The signal strength of the first scan
+	 */
+	EventContactInterval (String sNeighbor, int nNeighborIndex, double fTime, long lEventID, int nRSSI)
+	{
+		super(lEventID);
+
+		m_sNeighbor = sNeighbor;
+		m_nNeighborIndex = nNeighborIndex;
+
+		m_fScanTimes = new double[INITIAL_SCANS];
+		m_nScanRSSI = new int[INITIAL_SCANS];
+		m_lScanEventIDs = new long[INITIAL_SCANS];
+		m_nScans = 0;
+
+		m_nCurrentScan = 0;
+		m_nMaxRSSI = nRSSI;
+		m_lLastGroup = -1;
+
+		addScan(fTime, lEventID, nRSSI);
+		setTime(fTime);
+	}
+
+	/**
+	 * Append a scan to the end of the contact. The scan must not come before the last one.
+	 * @param fTime The time of the scan
+	 * @param lEventID The event ID of the scan
+	 * @param nRSSI The signal strength of the scan
+	 */
+	void addScan (double fTime, long lEventID, int nRSSI)
+	{
+		if(m_nScans == m_fScanTimes.length)
+		{
+			m_fScanTimes = Arrays.copyOf(m_fScanTimes, 2 * m_nScans);
+			m_nScanRSSI = Arrays.copyOf(m_nScanRSSI, 2 * m_nScans);
+			m_lScanEventIDs = Arrays.copyOf(m_lScanEventIDs, 2 * m_nScans);
+		}
+
+		m_fScanTimes[m_nScans] = fTime;
+		m_nScanRSSI[m_nScans] = nRSSI;
+		m_lScanEventIDs[m_nScans] = lEventID;
+		m_nScans++;
+
+		m_nMaxRSSI = Math.max(m_nMaxRSSI, nRSSI);
+	}
+
+	/**
+	 * Move on to the next scan of the contact
+	 * @return True if there is a next scan (and the event needs to go back into the queue), false
+	 *  if the contact has ended
+	 */
+	public boolean advanceScan ()
+	{
+		if(m_nCurrentScan + 1 >= m_nScans)
+		{
+			m_nCurrentScan = m_nScans;
+			return false;
+		}
+
+		m_nCurrentScan++;
+		setTime(m_fScanTimes[m_nCurrentScan]);
+		setEventID(m_lScanEventIDs[m_nCurrentScan]);
+		return true;
+	}
+
+	/**
+	 * @return True once the last scan has been processed, no more scans can be added then
+	 */
+	public boolean hasEnded ()
+	{
+		return m_nCurrentScan >= m_nScans;
+	}
+
+	public boolean isContactStart ()
+	{
+		return m_nCurrentScan == 0;
+	}
+
+	public String getNeighborName ()
+	{
+		return m_sNeighbor;
+	}
+
+	public int getNeighborIndex ()
+	{
+		return m_nNeighborIndex;
+	}
+
+	/**
+	 * @return The signal strength of the current scan
+	 */
+	public int getSignalStrength ()
+	{
+		return m_nScanRSSI[m_nCurrentScan];
+	}
+
+	/**
+	 * @return The strongest signal over all of the scans of the contact
+	 */
+	public int getMaxSignalStrength ()
+	{
+		return m_nMaxRSSI;
+	}
+
+	public int getNumberScans ()
+	{
+		return m_nScans;
+	}
+
+	/**
+	 * @return The time of the last scan of the contact
+	 */
+	public double getLastScanTime ()
+	{
+		return m_fScanTimes[m_nScans - 1];
+	}
+
+	long getLastGroup ()
+	{
+		return m_lLastGroup;
+	}
+
+	void setLastGroup (long lGroup)
+	{
+		m_lLastGroup = lGroup;
+	}
+
+	public void debugToConsole_Short ()
+	{
+		System.out.println("(t=" + this.getTime().toString() + ") Contact Interval Event with " + m_sNeighbor +
+				", scan " + (m_nCurrentScan + 1) + " of " + m_nScans);
+	}
+}
@@ -0,0 +1,44 @@
+package mobilesim.core;
+
+/**
+ * The event queue is the ordered store of pending events for the SimulationEngine. The
+ * engine only ever needs to add events and pull off the earliest one, so the queue itself
+ * is pluggable to allow for different trade-offs (a simple heap versus a calendar queue
+ * for very large numbers of pending events, optionally behind a timing wheel for the
+ * periodic timers). Implementations must hand back events in
+ * the order given by Event.isBefore, i.e. by time with ties going to the lower event ID.
+ * 
+ * @author Striegel
+ *
+ */
+public interface EventQueue {
+
+	/**
+	 * Add an event to the queue
+	 * @param theEvent The event to add (must not be null)
+	 * @return True if successful, false otherwise
+	 */
+	public boolean add (Event theEvent);
+	
+	/**
+	 * Remove and return the earliest event in the queue
+	 * @return The earliest event, null if the queue is empty
+	 */
+	public Event poll ();
+	
+	/**
+	 * Retrieve (but do not remove) the earliest event in the queue
+	 * @return The earliest event, null if the queue is empty
+	 */
+	public Event peek ();
+	
+	/**
+	 * @return The number of events currently waiting in the queue
+	 */
+	public int size ();
+	
+	/**
+	 * Drop all of the events currently in the queue
+	 */
+	public void clear ();
+}
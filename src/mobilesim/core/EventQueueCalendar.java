@@ -0,0 +1,395 @@
+package mobilesim.core;
+
+/**
+ * A calendar queue (R. Brown, 1988) for the pending events of the simulation. Time is cut
+ * into buckets (days) of a fixed width that wrap around a calendar (year) with a power of two
+ * number of buckets. Each bucket is a short time-sorted list of events that is linked through
+ * the events themselves so that adding an event never allocates. Provided the bucket width
+ * tracks the typical spacing between events, both adding and removing an event are O(1)
+ * amortized. The calendar is resized (and the width re-estimated) as the queue grows or shrinks.
+ *
+ * Events are keyed on the primitive time of the event and ordered with Event.isBefore so
+ * that ties are broken by the event ID, the same contract as the other queues.
+ *
+ * @author Striegel
+ *
+ */
+public class EventQueueCalendar implements EventQueue {
+
+	// The smallest calendar we will shrink down to
+	public static final int		CALENDAR_MIN_BUCKETS = 16;
+
+	// The number of events sampled from the front of the queue to estimate the bucket width
+	public static final int		CALENDAR_WIDTH_SAMPLES = 25;
+
+	// Head and tail of the sorted list of events in each bucket
+	Event []	m_BucketHead;
+	Event []	m_BucketTail;
+
+	// Number of buckets is always a power of two, the mask maps a day onto its bucket
+	int			m_nBucketMask;
+
+	// The width of one bucket (in seconds)
+	double		m_fBucketWidth;
+
+	// The day (time divided by width) that we are currently pulling events from
+	long		m_lCurrentDay;
+
+	int			m_nSize;
+
+	// Resizing is disabled while we are in the middle of a resize
+	boolean		m_bResizeEnabled;
+
+	public EventQueueCalendar ()
+	{
+		m_fBucketWidth = 1.0;
+		m_bResizeEnabled = true;
+		allocateBuckets(CALENDAR_MIN_BUCKETS);
+		m_lCurrentDay = 0;
+		m_nSize = 0;
+	}
+
+	private void allocateBuckets (int nBuckets)
+	{
+		m_BucketHead = new Event[nBuckets];
+		m_BucketTail = new Event[nBuckets];
+		m_nBucketMask = nBuckets - 1;
+	}
+
+	/**
+	 * Map a time onto the day (the absolute bucket count) that it belongs to
+	 * @param fTime
+	 * @return
+	 */
+	private long computeDay (double fTime)
+	{
+		return (long) Math.floor(fTime / m_fBucketWidth);
+	}
+
+	public boolean add (Event theEvent)
+	{
+		long	lDay;
+
+		lDay = computeDay(theEvent.getTimeValue());
+
+		// Anything that lands before where we are currently reading (or the first event into
+		// an empty queue) moves the read position back
+		if(m_nSize == 0 || lDay < m_lCurrentDay)
+		{
+			m_lCurrentDay = lDay;
+		}
+
+		insertIntoBucket((int) (lDay & m_nBucketMask), theEvent);
+		m_nSize++;
+
+		if(m_bResizeEnabled && m_nSize > 2 * m_BucketHead.length)
+		{
+			resize(2 * m_BucketHead.length);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Place the event into the time-sorted list for the bucket. Events typically arrive in time
+	 * order (trace files, timer renewals) so the check against the tail covers most cases.
+	 *
+	 * @param nBucket
+	 * @param theEvent
+	 */
+	private void insertIntoBucket (int nBucket, Event theEvent)
+	{
+		Event	theTail;
+		Event	thePrev;
+
+		theEvent.m_QueueNext = null;
+		theTail = m_BucketTail[nBucket];
+
+		if(theTail == null)
+		{
+			m_BucketHead[nBucket] = theEvent;
+			m_BucketTail[nBucket] = theEvent;
+			return;
+		}
+
+		if(!Event.isBefore(theEvent, theTail))
+		{
+			theTail.m_QueueNext = theEvent;
+			m_BucketTail[nBucket] = theEvent;
+			return;
+		}
+
+		if(Event.isBefore(theEvent, m_BucketHead[nBucket]))
+		{
+			theEvent.m_QueueNext = m_BucketHead[nBucket];
+			m_BucketHead[nBucket] = theEvent;
+			return;
+		}
+
+		// Somewhere in the middle, walk until the next one would come after us
+		thePrev = m_BucketHead[nBucket];
+
+		while(!Event.isBefore(theEvent, thePrev.m_QueueNext))
+		{
+			thePrev = thePrev.m_QueueNext;
+		}
+
+		theEvent.m_QueueNext = thePrev.m_QueueNext;
+		thePrev.m_QueueNext = theEvent;
+	}
+
+	/**
+	 * Find the bucket holding the earliest event, moving the current day forward as needed
+	 * @return The bucket index, -1 if the queue is empty
+	 */
+	private int locateNext ()
+	{
+		int		nBucket;
+		int		nBuckets;
+		Event	theHead;
+
+		if(m_nSize == 0)
+		{
+			return -1;
+		}
+
+		nBuckets = m_BucketHead.length;
+
+		// Walk one year of the calendar looking for an event that belongs to the current day.
+		// The head of each bucket is the earliest event in that bucket.
+		for(int i = 0; i < nBuckets; i++)
+		{
+			nBucket = (int) (m_lCurrentDay & m_nBucketMask);
+			theHead = m_BucketHead[nBucket];
+
+			if(theHead != null && computeDay(theHead.getTimeValue()) <= m_lCurrentDay)
+			{
+				return nBucket;
+			}
+
+			m_lCurrentDay++;
+		}
+
+		// Nothing in the next year, the events are sparse so jump directly to the earliest one
+		int		nBest;
+
+		nBest = -1;
+
+		for(int i = 0; i < nBuckets; i++)
+		{
+			theHead = m_BucketHead[i];
+
+			if(theHead != null && (nBest < 0 || Event.isBefore(theHead, m_BucketHead[nBest])))
+			{
+				nBest = i;
+			}
+		}
+
+		m_lCurrentDay = computeDay(m_BucketHead[nBest].getTimeValue());
+		return nBest;
+	}
+
+	public Event poll ()
+	{
+		int		nBucket;
+		Event	theEvent;
+
+		nBucket = locateNext();
+
+		if(nBucket < 0)
+		{
+			return null;
+		}
+
+		theEvent = m_BucketHead[nBucket];
+		m_BucketHead[nBucket] = theEvent.m_QueueNext;
+
+		if(m_BucketHead[nBucket] == null)
+		{
+			m_BucketTail[nBucket] = null;
+		}
+
+		theEvent.m_QueueNext = null;
+		m_nSize--;
+
+		if(m_bResizeEnabled && m_BucketHead.length > CALENDAR_MIN_BUCKETS && m_nSize < m_BucketHead.length / 2)
+		{
+			resize(m_BucketHead.length / 2);
+		}
+
+		return theEvent;
+	}
+
+	public Event peek ()
+	{
+		int		nBucket;
+
+		nBucket = locateNext();
+
+		if(nBucket < 0)
+		{
+			return null;
+		}
+
+		return m_BucketHead[nBucket];
+	}
+
+	public int size ()
+	{
+		return m_nSize;
+	}
+
+	public void clear ()
+	{
+		for(int i = 0; i < m_BucketHead.length; i++)
+		{
+			Event	theEvent;
+
+			// Unlink everything so that dropped events do not hold each other
+			theEvent = m_BucketHead[i];
+
+			while(theEvent != null)
+			{
+				Event theNext = theEvent.m_QueueNext;
+				theEvent.m_QueueNext = null;
+				theEvent = theNext;
+			}
+		}
+
+		m_fBucketWidth = 1.0;
+		allocateBuckets(CALENDAR_MIN_BUCKETS);
+		m_lCurrentDay = 0;
+		m_nSize = 0;
+	}
+
+	/**
+	 * Estimate a new bucket width from the spacing of the events at the front of the queue. The
+	 * front of the queue is found by walking forward day by day from the current day so that
+	 * nothing needs to be pulled out of the queue.
+	 *
+	 * @return The new width, the current width if no good estimate is possible
+	 */
+	private double estimateWidth ()
+	{
+		double []	fSamples;
+		int			nSamples;
+		long		lDay;
+		double		fAverageGap;
+		double		fTrimmedGap;
+		int			nTrimmed;
+
+		fSamples = new double[CALENDAR_WIDTH_SAMPLES];
+		nSamples = 0;
+		lDay = m_lCurrentDay;
+
+		for(int i = 0; i < m_BucketHead.length && nSamples < CALENDAR_WIDTH_SAMPLES; i++, lDay++)
+		{
+			Event theEvent = m_BucketHead[(int) (lDay & m_nBucketMask)];
+
+			// The events for this day sit at the front of the bucket
+			while(theEvent != null && nSamples < CALENDAR_WIDTH_SAMPLES && computeDay(theEvent.getTimeValue()) == lDay)
+			{
+				fSamples[nSamples++] = theEvent.getTimeValue();
+				theEvent = theEvent.m_QueueNext;
+			}
+		}
+
+		if(nSamples < 2)
+		{
+			// The events are spread too thin for the current width, fall back to the overall span
+			return estimateWidth_Span();
+		}
+
+		fAverageGap = (fSamples[nSamples-1] - fSamples[0]) / (nSamples - 1);
+
+		// Throw out the unusually large gaps and average again
+		fTrimmedGap = 0.0;
+		nTrimmed = 0;
+
+		for(int i = 1; i < nSamples; i++)
+		{
+			double fGap = fSamples[i] - fSamples[i-1];
+
+			if(fGap <= 2.0 * fAverageGap)
+			{
+				fTrimmedGap += fGap;
+				nTrimmed++;
+			}
+		}
+
+		if(nTrimmed > 0 && fTrimmedGap > 0.0)
+		{
+			return 3.0 * fTrimmedGap / nTrimmed;
+		}
+		else if(fAverageGap > 0.0)
+		{
+			return 3.0 * fAverageGap;
+		}
+
+		return m_fBucketWidth;
+	}
+
+	/**
+	 * Estimate the bucket width from the overall span of times in the queue
+	 * @return The new width, the current width if all events share the same time
+	 */
+	private double estimateWidth_Span ()
+	{
+		double	fLowest;
+		double	fHighest;
+
+		fLowest = Double.MAX_VALUE;
+		fHighest = -Double.MAX_VALUE;
+
+		for(int i = 0; i < m_BucketHead.length; i++)
+		{
+			if(m_BucketHead[i] != null)
+			{
+				fLowest = Math.min(fLowest, m_BucketHead[i].getTimeValue());
+				fHighest = Math.max(fHighest, m_BucketTail[i].getTimeValue());
+			}
+		}
+
+		if(m_nSize > 1 && fHighest > fLowest && !Double.isInfinite(fHighest - fLowest))
+		{
+			return 3.0 * (fHighest - fLowest) / m_nSize;
+		}
+
+		return m_fBucketWidth;
+	}
+
+	/**
+	 * Rebuild the calendar with a new number of buckets and a freshly estimated width
+	 * @param nBuckets The new number of buckets (power of two)
+	 */
+	private void resize (int nBuckets)
+	{
+		Event []	theOldHeads;
+		double		fNewWidth;
+
+		m_bResizeEnabled = false;
+
+		fNewWidth = estimateWidth();
+
+		theOldHeads = m_BucketHead;
+
+		m_fBucketWidth = fNewWidth;
+		allocateBuckets(nBuckets);
+		m_nSize = 0;
+
+		// Move everything over
+		for(int i = 0; i < theOldHeads.length; i++)
+		{
+			Event theEvent = theOldHeads[i];
+
+			while(theEvent != null)
+			{
+				Event theNext = theEvent.m_QueueNext;
+				add(theEvent);
+				theEvent = theNext;
+			}
+		}
+
+		m_bResizeEnabled = true;
+	}
+}
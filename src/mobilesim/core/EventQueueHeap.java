@@ -0,0 +1,45 @@
+package mobilesim.core;
+
+import java.util.*;
+
+/**
+ * The simple binary heap version of the event queue. This is the original queue that the
+ * SimulationEngine used and is useful as a reference point when checking the other queues.
+ * 
+ * @author Striegel
+ *
+ */
+public class EventQueueHeap implements EventQueue {
+
+	PriorityQueue<Event>	m_Heap;
+	
+	public EventQueueHeap ()
+	{
+		m_Heap = new PriorityQueue<Event>();
+	}
+	
+	public boolean add (Event theEvent)
+	{
+		return m_Heap.add(theEvent);
+	}
+	
+	public Event poll ()
+	{
+		return m_Heap.poll();
+	}
+	
+	public Event peek ()
+	{
+		return m_Heap.peek();
+	}
+	
+	public int size ()
+	{
+		return m_Heap.size();
+	}
+	
+	public void clear ()
+	{
+		m_Heap.clear();
+	}
+}
@@ -0,0 +1,471 @@
+package mobilesim.core;
+
+import java.util.*;
+
+/**
+ * An event queue that keeps the timers (EventTimerSimObject) in a hierarchical timing wheel and
+ * everything else in a second queue (e.g. a calendar queue). Most of the pending events of a
+ * large simulation are the periodic timers of the nodes, which renew themselves every time that
+ * they fire. Placing a renewed timer on the wheel is O(1) without any comparisons.
+ *
+ * Time is cut into ticks of a fixed width. The wheel has 256 slots for the ticks of the current
+ * block of 256 ticks and three more levels of 64 slots that each cover 64 times the range of the
+ * level below, anything even further out waits in an overflow list. A slot of a higher level is
+ * spread over the level below once the wheel reaches it (cascading). All of the timers of a tick
+ * are taken off the wheel together as one batch that is sorted once. The timers in the wheel
+ * mostly fire in the order that they were renewed in, hence the batch is usually sorted already.
+ *
+ * The queue hands out the events in the order of Event.isBefore like every other queue, the
+ * front of the batch is simply compared against the front of the other queue.
+ *
+ * @author Striegel
+ *
+ */
+public class EventQueueTimingWheel implements EventQueue {
+
+	// The default width of a tick (in seconds)
+	public static final double	WHEEL_DEFAULT_TICK = 1.0;
+
+	// Number of bits of the tick that select the slot at each level
+	static final int []			WHEEL_LEVEL_BITS = { 8, 6, 6, 6 };
+
+	// Number of low bits of the tick below the slot bits of each level
+	static final int []			WHEEL_LEVEL_SHIFT = { 0, 8, 14, 20 };
+
+	// Ticks that differ in the bits above this are in the overflow list
+	static final int			WHEEL_OVERFLOW_SHIFT = 26;
+
+	// The queue for everything that is not a timer
+	EventQueue		m_Others;
+
+	double			m_fTickWidth;
+
+	// The tick that the wheel has reached, everything on the wheel is due later
+	long			m_lCurrentTick;
+
+	// Head and tail of the list of timers in each slot of each level, the lists are linked
+	// through the events themselves
+	Event [][]		m_SlotHead;
+	Event [][]		m_SlotTail;
+	int []			m_nLevelCount;
+
+	Event			m_OverflowHead;
+	Event			m_OverflowTail;
+	int				m_nOverflowCount;
+
+	// The timers that are due at the current tick (or before), sorted
+	Event []		m_Batch;
+	int				m_nBatchHead;
+	int				m_nBatchEnd;
+
+	// Number of timers in the wheel, the overflow list and the batch
+	int				m_nTimers;
+
+	/**
+	 * Create a wheel with the default tick in front of a calendar queue
+	 */
+	public EventQueueTimingWheel ()
+	{
+		this(new EventQueueCalendar(), WHEEL_DEFAULT_TICK);
+	}
+
+	/**
+	 * @param theOthers The queue for all of the events other than timers (must be empty)
+	 */
+	public EventQueueTimingWheel (EventQueue theOthers)
+	{
+		this(theOthers, WHEEL_DEFAULT_TICK);
+	}
+
+	/**
+	 * @param theOthers The queue for all of the events other than timers (must be empty)
+	 * @param fTickWidth The width of a tick in seconds, ideally the timers fall onto whole ticks
+	 */
+	public EventQueueTimingWheel (EventQueue theOthers, double fTickWidth)
+	{
+		m_Others = theOthers;
+		m_fTickWidth = (fTickWidth > 0.0) ? fTickWidth : WHEEL_DEFAULT_TICK;
+
+		m_SlotHead = new Event[WHEEL_LEVEL_BITS.length][];
+		m_SlotTail = new Event[WHEEL_LEVEL_BITS.length][];
+		m_nLevelCount = new int[WHEEL_LEVEL_BITS.length];
+
+		for(int i = 0; i < WHEEL_LEVEL_BITS.length; i++)
+		{
+			m_SlotHead[i] = new Event[1 << WHEEL_LEVEL_BITS[i]];
+			m_SlotTail[i] = new Event[1 << WHEEL_LEVEL_BITS[i]];
+		}
+
+		m_Batch = new Event[64];
+		resetWheel();
+	}
+
+	private void resetWheel ()
+	{
+		m_lCurrentTick = 0;
+		Arrays.fill(m_nLevelCount, 0);
+		m_OverflowHead = null;
+		m_OverflowTail = null;
+		m_nOverflowCount = 0;
+		m_nBatchHead = 0;
+		m_nBatchEnd = 0;
+		m_nTimers = 0;
+	}
+
+	private long computeTick (Event theEvent)
+	{
+		return (long) Math.floor(theEvent.getTimeValue() / m_fTickWidth);
+	}
+
+	public boolean add (Event theEvent)
+	{
+		long	lTick;
+
+		if(!(theEvent instanceof EventTimerSimObject))
+		{
+			return m_Others.add(theEvent);
+		}
+
+		lTick = computeTick(theEvent);
+
+		// An empty wheel simply starts at the first timer
+		if(m_nTimers == 0)
+		{
+			m_lCurrentTick = lTick;
+		}
+
+		placeTimer(theEvent, lTick);
+		m_nTimers++;
+		return true;
+	}
+
+	/**
+	 * Put a timer into the batch, onto the wheel or into the overflow list depending on how far
+	 * out it is relative to the current tick
+	 * @param theEvent
+	 * @param lTick The tick of the timer
+	 */
+	private void placeTimer (Event theEvent, long lTick)
+	{
+		theEvent.m_QueueNext = null;
+
+		if(lTick <= m_lCurrentTick)
+		{
+			insertIntoBatch(theEvent);
+			return;
+		}
+
+		for(int nLevel = 0; nLevel < WHEEL_LEVEL_BITS.length; nLevel++)
+		{
+			int nGroupShift = WHEEL_LEVEL_SHIFT[nLevel] + WHEEL_LEVEL_BITS[nLevel];
+
+			if((lTick >> nGroupShift) == (m_lCurrentTick >> nGroupShift))
+			{
+				int nSlot = (int) ((lTick >> WHEEL_LEVEL_SHIFT[nLevel]) & ((1 << WHEEL_LEVEL_BITS[nLevel]) - 1));
+
+				if(m_SlotTail[nLevel][nSlot] == null)
+				{
+					m_SlotHead[nLevel][nSlot] = theEvent;
+				}
+				else
+				{
+					m_SlotTail[nLevel][nSlot].m_QueueNext = theEvent;
+				}
+
+				m_SlotTail[nLevel][nSlot] = theEvent;
+				m_nLevelCount[nLevel]++;
+				return;
+			}
+		}
+
+		if(m_OverflowTail == null)
+		{
+			m_OverflowHead = theEvent;
+		}
+		else
+		{
+			m_OverflowTail.m_QueueNext = theEvent;
+		}
+
+		m_OverflowTail = theEvent;
+		m_nOverflowCount++;
+	}
+
+	/**
+	 * Add a timer to the batch at its sorted position. This is only needed for timers that are
+	 * due at (or before) the tick that the wheel already moved to.
+	 * @param theEvent
+	 */
+	private void insertIntoBatch (Event theEvent)
+	{
+		int		nLow;
+		int		nHigh;
+
+		if(m_nBatchEnd == m_Batch.length)
+		{
+			int nBatchSize = m_nBatchEnd - m_nBatchHead;
+
+			if(nBatchSize < m_Batch.length / 2)
+			{
+				System.arraycopy(m_Batch, m_nBatchHead, m_Batch, 0, nBatchSize);
+				Arrays.fill(m_Batch, nBatchSize, m_nBatchEnd, null);
+			}
+			else
+			{
+				Event [] theBatch = new Event[2 * m_Batch.length];
+				System.arraycopy(m_Batch, m_nBatchHead, theBatch, 0, nBatchSize);
+				m_Batch = theBatch;
+			}
+
+			m_nBatchHead = 0;
+			m_nBatchEnd = nBatchSize;
+		}
+
+		// Find the first timer that comes after the new one
+		nLow = m_nBatchHead;
+		nHigh = m_nBatchEnd;
+
+		while(nLow < nHigh)
+		{
+			int nMiddle = (nLow + nHigh) >>> 1;
+
+			if(Event.isBefore(theEvent, m_Batch[nMiddle]))
+			{
+				nHigh = nMiddle;
+			}
+			else
+			{
+				nLow = nMiddle + 1;
+			}
+		}
+
+		System.arraycopy(m_Batch, nLow, m_Batch, nLow + 1, m_nBatchEnd - nLow);
+		m_Batch[nLow] = theEvent;
+		m_nBatchEnd++;
+	}
+
+	/**
+	 * Move the wheel forward until the batch holds the timers of the next tick that has any
+	 */
+	private void fillBatch ()
+	{
+		while(m_nBatchHead == m_nBatchEnd && m_nTimers > 0)
+		{
+			int nSlot = (int) (m_lCurrentTick & ((1 << WHEEL_LEVEL_BITS[0]) - 1));
+
+			if(m_SlotHead[0][nSlot] != null)
+			{
+				takeBatch(nSlot);
+				return;
+			}
+
+			if(m_nLevelCount[0] > 0)
+			{
+				advanceTick(m_lCurrentTick + 1);
+				continue;
+			}
+
+			// Skip straight to the next boundary of the lowest level that has any timers
+			int nLevel = 1;
+
+			while(nLevel < WHEEL_LEVEL_BITS.length && m_nLevelCount[nLevel] == 0)
+			{
+				nLevel++;
+			}
+
+			if(nLevel < WHEEL_LEVEL_BITS.length)
+			{
+				int nShift = WHEEL_LEVEL_SHIFT[nLevel];
+				advanceTick(((m_lCurrentTick >> nShift) + 1) << nShift);
+			}
+			else
+			{
+				// Only the overflow list is left, jump to its earliest timer
+				long lEarliest = Long.MAX_VALUE;
+
+				for(Event theEvent = m_OverflowHead; theEvent != null; theEvent = theEvent.m_QueueNext)
+				{
+					lEarliest = Math.min(lEarliest, computeTick(theEvent));
+				}
+
+				m_lCurrentTick = lEarliest;
+				cascadeOverflow();
+			}
+		}
+	}
+
+	/**
+	 * Move the wheel to a new tick that is either the next tick or the next boundary of a level
+	 * with nothing in between, spreading out the slots of the higher levels that are now due
+	 * @param lTick
+	 */
+	private void advanceTick (long lTick)
+	{
+		int nLevel;
+
+		m_lCurrentTick = lTick;
+
+		// Find the highest level whose slot comes due, i.e. all the bits below it are zero
+		nLevel = 0;
+
+		while(nLevel + 1 < WHEEL_LEVEL_BITS.length && (lTick & ((1L << WHEEL_LEVEL_SHIFT[nLevel + 1]) - 1)) == 0)
+		{
+			nLevel++;
+		}
+
+		if(nLevel == WHEEL_LEVEL_BITS.length - 1 && (lTick & ((1L << WHEEL_OVERFLOW_SHIFT) - 1)) == 0)
+		{
+			cascadeOverflow();
+		}
+
+		// From the top down so that the timers can fall through several levels
+		for(; nLevel > 0; nLevel--)
+		{
+			int nSlot = (int) ((lTick >> WHEEL_LEVEL_SHIFT[nLevel]) & ((1 << WHEEL_LEVEL_BITS[nLevel]) - 1));
+			Event theEvent = m_SlotHead[nLevel][nSlot];
+
+			m_SlotHead[nLevel][nSlot] = null;
+			m_SlotTail[nLevel][nSlot] = null;
+
+			while(theEvent != null)
+			{
+				Event theNext = theEvent.m_QueueNext;
+
+				m_nLevelCount[nLevel]--;
+				placeTimer(theEvent, computeTick(theEvent));
+				theEvent = theNext;
+			}
+		}
+	}
+
+	/**
+	 * Place the overflow timers again relative to the current tick
+	 */
+	private void cascadeOverflow ()
+	{
+		Event theEvent = m_OverflowHead;
+
+		m_OverflowHead = null;
+		m_OverflowTail = null;
+		m_nOverflowCount = 0;
+
+		while(theEvent != null)
+		{
+			Event theNext = theEvent.m_QueueNext;
+
+			placeTimer(theEvent, computeTick(theEvent));
+			theEvent = theNext;
+		}
+	}
+
+	/**
+	 * Take all of the timers of the current tick off the wheel as the new batch
+	 * @param nSlot The slot of the current tick on the lowest level
+	 */
+	private void takeBatch (int nSlot)
+	{
+		Event	theEvent;
+		int		nCount;
+
+		theEvent = m_SlotHead[0][nSlot];
+		m_SlotHead[0][nSlot] = null;
+		m_SlotTail[0][nSlot] = null;
+
+		m_nBatchHead = 0;
+		nCount = 0;
+
+		while(theEvent != null)
+		{
+			Event theNext = theEvent.m_QueueNext;
+
+			if(nCount == m_Batch.length)
+			{
+				m_Batch = Arrays.copyOf(m_Batch, 2 * nCount);
+			}
+
+			theEvent.m_QueueNext = null;
+			m_Batch[nCount++] = theEvent;
+			theEvent = theNext;
+		}
+
+		m_nBatchEnd = nCount;
+		m_nLevelCount[0] -= nCount;
+
+		// Timers of the same tick may still differ in their exact time
+		Arrays.sort(m_Batch, 0, nCount);
+	}
+
+	public Event poll ()
+	{
+		Event	theTimer;
+		Event	theOther;
+
+		fillBatch();
+
+		theTimer = (m_nBatchHead < m_nBatchEnd) ? m_Batch[m_nBatchHead] : null;
+		theOther = m_Others.peek();
+
+		if(theTimer == null || (theOther != null && Event.isBefore(theOther, theTimer)))
+		{
+			return m_Others.poll();
+		}
+
+		m_Batch[m_nBatchHead++] = null;
+		m_nTimers--;
+		return theTimer;
+	}
+
+	public Event peek ()
+	{
+		Event	theTimer;
+		Event	theOther;
+
+		fillBatch();
+
+		theTimer = (m_nBatchHead < m_nBatchEnd) ? m_Batch[m_nBatchHead] : null;
+		theOther = m_Others.peek();
+
+		if(theTimer == null || (theOther != null && Event.isBefore(theOther, theTimer)))
+		{
+			return theOther;
+		}
+
+		return theTimer;
+	}
+
+	public int size ()
+	{
+		return m_nTimers + m_Others.size();
+	}
+
+	public void clear ()
+	{
+		// Unlink everything so that dropped timers do not hold each other
+		for(int nLevel = 0; nLevel < WHEEL_LEVEL_BITS.length; nLevel++)
+		{
+			for(int i = 0; i < m_SlotHead[nLevel].length; i++)
+			{
+				unlinkList(m_SlotHead[nLevel][i]);
+			}
+
+			Arrays.fill(m_SlotHead[nLevel], null);
+			Arrays.fill(m_SlotTail[nLevel], null);
+		}
+
+		unlinkList(m_OverflowHead);
+		Arrays.fill(m_Batch, null);
+		resetWheel();
+
+		m_Others.clear();
+	}
+
+	private static void unlinkList (Event theEvent)
+	{
+		while(theEvent != null)
+		{
+			Event theNext = theEvent.m_QueueNext;
+			theEvent.m_QueueNext = null;
+			theEvent = theNext;
+		}
+	}
+}
@@ -3,7 +3,10 @@ package mobilesim.core;
 /**
  * A timer is geared for either a periodic set of invocations or a fixed number of invocation. 
  * The default invocation is 1. It is possible to set a timer with an interval of zero (process 
- * now but after all events waiting in the queue). 
+ * again at the same time). Events at the same time run in the order of their event IDs and a 
+ * renewed timer keeps its ID (a parallel run relies on renewals not drawing new IDs), so a zero 
+ * interval timer runs again ahead of any waiting event created after the timer, it does not 
+ * wait for all of the events already in the queue. 
  * @author Striegel
  *
  */
@@ -162,8 +165,9 @@ public class EventTimerSimObject extends Event {
 		}
 		
 		// Trigger again at NOW + interval
-		this.setTime(getInterval() + SimulationEngine.theEngine.getTime());
-		SimulationEngine.theEngine.addEvent(this);
+		SimulationEngine theEngine = getSimObject().getEngine();
+		this.setTime(getInterval() + theEngine.getTime());
+		theEngine.addEvent(this);
 		return true;
 	}
 }
@@ -0,0 +1,427 @@
+package mobilesim.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cursor that walks the comma-separated fields of one line of a data file in place. The line
+ * is copied into a reusable character buffer and the fields are then visited one after another
+ * without creating a String per field (as String.split does). Numeric fields are parsed directly
+ * out of the buffer and name fields can be handed out through a TokenDictionary so that each
+ * distinct name only ever exists once.
+ *
+ * The parsing mirrors what the data loaders did before with split / parseDouble / parseInt so
+ * that the values (and the errors) are exactly the same.
+ *
+ * @author Striegel
+ *
+ */
+public class FieldCursor {
+
+	// Powers of ten that are exactly representable as a double
+	private static final double [] EXACT_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// Largest mantissa for which the fast path of parseDouble is exact (2^53)
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	char []		m_Line;
+	int			m_nLength;
+
+	// Bounds of the current field, start is inclusive and end is exclusive
+	int			m_nFieldStart;
+	int			m_nFieldEnd;
+
+	char		m_cDelimiter;
+
+	public FieldCursor ()
+	{
+		m_Line = new char[256];
+		m_nLength = 0;
+		m_cDelimiter = ',';
+		rewind();
+	}
+
+	/**
+	 * Load a new line into the cursor. The cursor sits before the first field, call nextField
+	 * to move onto it.
+	 *
+	 * @param sLine The line to walk
+	 */
+	public void reset (String sLine)
+	{
+		int nLength = sLine.length();
+
+		ensureCapacity(nLength);
+		sLine.getChars(0, nLength, m_Line, 0);
+		m_nLength = nLength;
+		rewind();
+	}
+
+	/**
+	 * Load a new line straight from a buffer of bytes (e.g. a memory mapped file). Only plain
+	 * ASCII lines can be loaded this way, for anything else the caller needs to decode the line
+	 * with the proper character set and use the String version instead.
+	 *
+	 * @param theBuffer The buffer holding the line (the position of the buffer is not touched)
+	 * @param nStart The index of the first byte of the line
+	 * @param nEnd The index just past the last byte of the line
+	 * @return True if the line was loaded, false if the line is not plain ASCII
+	 */
+	public boolean reset (ByteBuffer theBuffer, int nStart, int nEnd)
+	{
+		int nLength = nEnd - nStart;
+
+		ensureCapacity(nLength);
+
+		for(int i = 0; i < nLength; i++)
+		{
+			byte b = theBuffer.get(nStart + i);
+
+			if(b < 0)
+			{
+				m_nLength = 0;
+				rewind();
+				return false;
+			}
+
+			m_Line[i] = (char) b;
+		}
+
+		m_nLength = nLength;
+		rewind();
+		return true;
+	}
+
+	/**
+	 * Move back to before the first field of the current line
+	 */
+	public void rewind ()
+	{
+		m_nFieldStart = -1;
+		m_nFieldEnd = -1;
+	}
+
+	protected void ensureCapacity (int nLength)
+	{
+		if(m_Line.length < nLength)
+		{
+			m_Line = new char[Math.max(nLength, 2 * m_Line.length)];
+		}
+	}
+
+	/**
+	 * Count the number of fields on the line the same way that String.split does it, i.e. empty
+	 * fields at the end of the line are not counted (but a line without any delimiter always
+	 * counts as one field)
+	 *
+	 * @return The number of fields
+	 */
+	public int countFields ()
+	{
+		int		nLast;
+		int		nFields;
+
+		// Find the last character that is not a delimiter, everything after it is empty fields
+		nLast = m_nLength - 1;
+
+		while(nLast >= 0 && m_Line[nLast] == m_cDelimiter)
+		{
+			nLast--;
+		}
+
+		if(nLast == m_nLength - 1 && indexOfDelimiter() < 0)
+		{
+			return 1;
+		}
+
+		if(nLast < 0)
+		{
+			return 0;
+		}
+
+		nFields = 1;
+
+		for(int i = 0; i < nLast; i++)
+		{
+			if(m_Line[i] == m_cDelimiter)
+			{
+				nFields++;
+			}
+		}
+
+		return nFields;
+	}
+
+	private int indexOfDelimiter ()
+	{
+		for(int i = 0; i < m_nLength; i++)
+		{
+			if(m_Line[i] == m_cDelimiter)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Move on to the next field
+	 *
+	 * @return True if there is a next field, false if the end of the line was reached
+	 */
+	public boolean nextField ()
+	{
+		int nStart;
+
+		if(m_nFieldEnd < 0)
+		{
+			nStart = 0;
+		}
+		else if(m_nFieldEnd >= m_nLength)
+		{
+			return false;
+		}
+		else
+		{
+			nStart = m_nFieldEnd + 1;
+		}
+
+		m_nFieldStart = nStart;
+		m_nFieldEnd = nStart;
+
+		while(m_nFieldEnd < m_nLength && m_Line[m_nFieldEnd] != m_cDelimiter)
+		{
+			m_nFieldEnd++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Move forward a number of fields
+	 *
+	 * @param nFields
+	 * @return True if the cursor now sits on a field, false if the end of the line was reached
+	 */
+	public boolean skipFields (int nFields)
+	{
+		for(int i = 0; i < nFields; i++)
+		{
+			if(!nextField())
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of characters in the current field
+	 */
+	public int getFieldLength ()
+	{
+		return m_nFieldEnd - m_nFieldStart;
+	}
+
+	/**
+	 * Retrieve the current field as a brand new String. Only use this for fields whose values
+	 * are mostly unique, names should go through getToken instead.
+	 *
+	 * @return
+	 */
+	public String getString ()
+	{
+		return new String(m_Line, m_nFieldStart, m_nFieldEnd - m_nFieldStart);
+	}
+
+	/**
+	 * Retrieve the current field as the canonical String held by the dictionary (adding it to the
+	 * dictionary if it is new)
+	 *
+	 * @param theDictionary
+	 * @return
+	 */
+	public String getToken (TokenDictionary theDictionary)
+	{
+		return theDictionary.intern(m_Line, m_nFieldStart, m_nFieldEnd - m_nFieldStart);
+	}
+
+	/**
+	 * Retrieve the dictionary code of the current field (adding it to the dictionary if it is new)
+	 *
+	 * @param theDictionary
+	 * @return
+	 */
+	public int getTokenCode (TokenDictionary theDictionary)
+	{
+		return theDictionary.encode(m_Line, m_nFieldStart, m_nFieldEnd - m_nFieldStart);
+	}
+
+	/**
+	 * Parse the current field as a double, the same as Double.parseDouble would. Plain decimal
+	 * values are parsed in place, anything unusual (exponents, very long values, NaN, ...) falls
+	 * back to Double.parseDouble.
+	 *
+	 * @return The value of the field
+	 * @throws NumberFormatException if the field is not a valid double
+	 */
+	public double parseDouble ()
+	{
+		int			nPos;
+		int			nEnd;
+		boolean		bNegative;
+		long		lMantissa;
+		int			nDigits;
+		int			nFraction;
+		boolean		bDot;
+
+		nPos = m_nFieldStart;
+		nEnd = m_nFieldEnd;
+
+		// parseDouble ignores leading and trailing whitespace
+		while(nPos < nEnd && m_Line[nPos] <= ' ')
+		{
+			nPos++;
+		}
+
+		while(nEnd > nPos && m_Line[nEnd-1] <= ' ')
+		{
+			nEnd--;
+		}
+
+		bNegative = false;
+
+		if(nPos < nEnd && (m_Line[nPos] == '-' || m_Line[nPos] == '+'))
+		{
+			bNegative = (m_Line[nPos] == '-');
+			nPos++;
+		}
+
+		lMantissa = 0;
+		nDigits = 0;
+		nFraction = 0;
+		bDot = false;
+
+		for(int i = nPos; i < nEnd; i++)
+		{
+			char c = m_Line[i];
+
+			if(c >= '0' && c <= '9')
+			{
+				if(nDigits >= 18)
+				{
+					return parseDouble_Fallback();
+				}
+
+				lMantissa = lMantissa * 10 + (c - '0');
+
+				if(lMantissa > 0)
+				{
+					nDigits++;
+				}
+
+				if(bDot)
+				{
+					nFraction++;
+				}
+			}
+			else if(c == '.' && !bDot)
+			{
+				bDot = true;
+			}
+			else
+			{
+				return parseDouble_Fallback();
+			}
+		}
+
+		// Need at least one digit and a mantissa / power of ten that are both exact so that
+		// the one division below is correctly rounded
+		if(nEnd - nPos == 0 || (bDot && nEnd - nPos == 1) || lMantissa > MAX_EXACT_MANTISSA || nFraction >= EXACT_POWERS_OF_TEN.length)
+		{
+			return parseDouble_Fallback();
+		}
+
+		double fValue = (double) lMantissa;
+
+		if(nFraction > 0)
+		{
+			fValue = fValue / EXACT_POWERS_OF_TEN[nFraction];
+		}
+
+		return bNegative ? -fValue : fValue;
+	}
+
+	private double parseDouble_Fallback ()
+	{
+		return Double.parseDouble(getString());
+	}
+
+	/**
+	 * Parse the current field as an integer, the same as Integer.parseInt would
+	 *
+	 * @param nDefault The value to hand back if the field is not a valid integer
+	 * @return The value of the field or the default value
+	 */
+	public int parseInt (int nDefault)
+	{
+		int			nPos;
+		boolean		bNegative;
+		long		lValue;
+
+		nPos = m_nFieldStart;
+
+		if(nPos >= m_nFieldEnd)
+		{
+			return nDefault;
+		}
+
+		bNegative = false;
+
+		if(m_Line[nPos] == '-' || m_Line[nPos] == '+')
+		{
+			bNegative = (m_Line[nPos] == '-');
+			nPos++;
+
+			if(nPos >= m_nFieldEnd)
+			{
+				return nDefault;
+			}
+		}
+
+		lValue = 0;
+
+		for(int i = nPos; i < m_nFieldEnd; i++)
+		{
+			char c = m_Line[i];
+
+			if(c < '0' || c > '9')
+			{
+				return nDefault;
+			}
+
+			lValue = lValue * 10 + (c - '0');
+
+			if(lValue > (long) Integer.MAX_VALUE + 1)
+			{
+				return nDefault;
+			}
+		}
+
+		if(bNegative)
+		{
+			lValue = -lValue;
+		}
+
+		if(lValue > Integer.MAX_VALUE || lValue < Integer.MIN_VALUE)
+		{
+			return nDefault;
+		}
+
+		return (int) lValue;
+	}
+}
@@ -1,7 +1,154 @@
 package mobilesim.core;
 
-import java.util.*;
+import java.util.Arrays;
 
-public class ListContents extends Hashtable<String, Content>{
+import mobilesim.utilities.OpenHashMap;
 
+/**
+ * The contents held by a node keyed by content ID. Besides the map the list keeps a log of every
+ * content put into it. The position in the log is the version of the list, so a reader that 
+ * remembers the version it last saw only needs to look at the log from that point on to find 
+ * what has been added since. It also keeps a summary vector of the (dense indices of the) contents
+ * it holds, see hasAnyMissingFrom.
+ * 
+ * @author Striegel
+ *
+ */
+public class ListContents extends OpenHashMap<String, Content>{
+
+	Content []		m_Log;
+	int				m_nLogSize;
+	
+	// Version of the first entry still in the log (entries before it were dropped by clear)
+	int				m_nLogBase;
+	
+	// The held contents with a dense index plus a count of the ones without
+	ContentSummary	m_Summary;
+	int				m_nUnindexed;
+	
+	public ListContents ()
+	{
+		m_Log = new Content[16];
+		m_nLogSize = 0;
+		m_nLogBase = 0;
+		
+		m_Summary = new ContentSummary();
+		m_nUnindexed = 0;
+	}
+	
+	public Content put (String sContentID, Content theContent)
+	{
+		Content theOld = super.put(sContentID, theContent);
+		
+		if(theOld != theContent)
+		{
+			unsummarize(theOld);
+			summarize(theContent);
+			
+			if(m_nLogSize == m_Log.length)
+			{
+				Content [] theLog = new Content[2 * m_nLogSize];
+				System.arraycopy(m_Log, 0, theLog, 0, m_nLogSize);
+				m_Log = theLog;
+			}
+			
+			m_Log[m_nLogSize] = theContent;
+			m_nLogSize++;
+		}
+		
+		return theOld;
+	}
+	
+	public Content remove (Object theKey)
+	{
+		Content theOld = super.remove(theKey);
+		
+		unsummarize(theOld);
+		return theOld;
+	}
+	
+	public void clear ()
+	{
+		super.clear();
+		m_Summary.clear();
+		m_nUnindexed = 0;
+		
+		// Versions keep counting up so that a remembered version stays meaningful
+		m_nLogBase += m_nLogSize;
+		Arrays.fill(m_Log, 0, m_nLogSize, null);
+		m_nLogSize = 0;
+	}
+	
+	private void summarize (Content theContent)
+	{
+		if(theContent.getContentIndex() >= 0)
+		{
+			m_Summary.set(theContent.getContentIndex());
+		}
+		else
+		{
+			m_nUnindexed++;
+		}
+	}
+	
+	private void unsummarize (Content theContent)
+	{
+		if(theContent == null)
+		{
+			return;
+		}
+		
+		if(theContent.getContentIndex() >= 0)
+		{
+			m_Summary.unset(theContent.getContentIndex());
+		}
+		else
+		{
+			m_nUnindexed--;
+		}
+	}
+	
+	/**
+	 * Check from the summaries alone whether this list may hold a content that another list does 
+	 * not. Contents without a dense index cannot be summarized so any of those count as missing.
+	 * @param theOther The list to compare against
+	 * @return False only if every content here is also in the other list
+	 */
+	public boolean hasAnyMissingFrom (ListContents theOther)
+	{
+		return m_nUnindexed > 0 || m_Summary.hasAnyMissingFrom(theOther.m_Summary);
+	}
+	
+	/**
+	 * @return The current version of the list, i.e. the version the next content put will get
+	 */
+	public int getVersion ()
+	{
+		return m_nLogBase + m_nLogSize;
+	}
+	
+	/**
+	 * @return The oldest version that is still in the log
+	 */
+	public int getFirstVersion ()
+	{
+		return m_nLogBase;
+	}
+	
+	/**
+	 * Retrieve the content that was put into the list at a given version
+	 * @param nVersion The version, see getFirstVersion and getVersion
+	 * @return The content or null if it has since been removed or replaced
+	 */
+	public Content getByVersion (int nVersion)
+	{
+		Content theContent = m_Log[nVersion - m_nLogBase];
+		
+		if(get(theContent.getContentID()) != theContent)
+		{
+			return null;
+		}
+		
+		return theContent;
+	}
 }
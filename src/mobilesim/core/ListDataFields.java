@@ -2,7 +2,7 @@ package mobilesim.core;
 
 import java.util.*;
 
-import mobilesim.console.*;
+import mobilesim.utilities.OpenHashMap;
 
 /**
  * The list of data fields is a large hash of name / value pairs augmented with the 
@@ -17,7 +17,7 @@ import mobilesim.console.*;
  * @author Striegel
  *
  */
-public class ListDataFields extends Hashtable<String, DataField> {
+public class ListDataFields extends OpenHashMap<String, DataField> {
 	// Definitions for the selection of type for the contained information
 	public static final int		DATAFIELD_DOUBLE = 1;
 	public static final int		DATAFIELD_STRING = 2;
@@ -94,8 +94,8 @@ public class ListDataFields extends Hashtable<String, DataField> {
 		// the key must be unique
 		if(this.containsKey(sName))
 		{
-			DebugLogger.theLogger.logInfo_Error("** Error: cannot instantiate field in ListDataField as the field has already been defined.");
-			DebugLogger.theLogger.logInfo_Error("*  Filed name was " + sName + ", type was " + nType);
+			SimulationContext.getCurrent().getLogger().logInfo_Error("** Error: cannot instantiate field in ListDataField as the field has already been defined.");
+			SimulationContext.getCurrent().getLogger().logInfo_Error("*  Filed name was " + sName + ", type was " + nType);
 			return null;
 		}
 		
@@ -117,8 +117,8 @@ public class ListDataFields extends Hashtable<String, DataField> {
 				return theFieldS;
 				
 			default:
-				DebugLogger.theLogger.logInfo_Error("** Error: Unknown type requested for instantiation in the ListDataFields object");
-				DebugLogger.theLogger.logInfo_Error("*  Field Name was " + sName + ", type was " + nType);
+				SimulationContext.getCurrent().getLogger().logInfo_Error("** Error: Unknown type requested for instantiation in the ListDataFields object");
+				SimulationContext.getCurrent().getLogger().logInfo_Error("*  Field Name was " + sName + ", type was " + nType);
 				return null;
 		}
 	}
@@ -243,15 +243,30 @@ public class ListDataFields extends Hashtable<String, DataField> {
 	
 	public void dumpInfoToConsole ()
 	{
-		System.out.println("List of Data Fields with " + this.size() + " fields updated at " + m_fLastUpdate);
+		System.out.println(getInfo());
+	}
+	
+	/**
+	 * The same as dumpInfoToConsole, as one (multi-line) string
+	 * @return
+	 */
+	public String getInfo ()
+	{
+		StringBuilder	theInfo;
+		
+		theInfo = new StringBuilder();
+		theInfo.append("List of Data Fields with " + this.size() + " fields updated at " + m_fLastUpdate);
 		
 		Set<String>	theKeys;
 		theKeys = this.keySet();
 		
 		for(String sField : theKeys)
 		{
-			System.out.println("   " + sField + ": " + this.get(sField).getValueString());
+			theInfo.append(System.lineSeparator());
+			theInfo.append("   " + sField + ": " + this.get(sField).getValueString());
 		}
+		
+		return theInfo.toString();
 	}
 	
 	/**
@@ -1,8 +1,8 @@
 package mobilesim.core;
 
-import java.util.*;
+import mobilesim.utilities.OpenHashMap;
 
-public class ListProximityInstances extends Hashtable<String, ProximityInstance> {
+public class ListProximityInstances extends OpenHashMap<String, ProximityInstance> {
 	/** This compares two proximity instances (this one versus comparisonInstances) and gives a new
 	 * subset that contains anything that has changed (positive or negative)
 	 * 
@@ -2,6 +2,407 @@ package mobilesim.core;
 
 import java.util.*;
 
-public class ListWirelessNeighbors extends Hashtable<String, WirelessNeighbor> {
+import mobilesim.utilities.IntOpenHashMap;
+import mobilesim.utilities.OpenHashMap;
 
+/**
+ * The wireless neighbors of a node keyed by name. Neighbors that are registered objects are also
+ * kept by their index (see SimObject.getIndex) so that they can be found without the name.
+ * 
+ * The neighbors that are present are also kept in time buckets by when they expire, i.e. when
+ * they were last sensed plus the neighbor lifetime. We only see snapshots of the neighbors at
+ * each proximity sensing event and the gap until the next one can be hours, so a neighbor is
+ * considered gone once it has not been sensed for longer than the lifetime. Expiring neighbors
+ * only needs to look at the buckets that have come due rather than at every neighbor.
+ * 
+ * @author Striegel
+ *
+ */
+public class ListWirelessNeighbors extends OpenHashMap<String, WirelessNeighbor> {
+
+	// Number of expiry buckets, the buckets wrap around and are each a fraction of the lifetime
+	public static final int		EXPIRY_BUCKETS = 64;
+	public static final int		EXPIRY_BUCKETS_PER_LIFETIME = 16;
+	
+	IntOpenHashMap<WirelessNeighbor>	m_ByIndex;
+	
+	// How long a neighbor stays present after it was last sensed
+	double								m_fLifetime;
+	double								m_fBucketWidth;
+	
+	// The lists of present neighbors by expiry bucket
+	WirelessNeighbor []					m_ExpiryBuckets;
+	
+	// The first bucket that has not come due yet, the buckets before are all empty
+	long								m_lExpiryCursor;
+	
+	int									m_nPresent;
+	
+	public ListWirelessNeighbors ()
+	{
+		this(MobileNode.DEFAULT_NEIGHBOR_LIFETIME_BASELINE);
+	}
+	
+	/**
+	 * @param fLifetime How long (in seconds) a neighbor stays present after it was last sensed
+	 */
+	public ListWirelessNeighbors (double fLifetime)
+	{
+		m_ByIndex = new IntOpenHashMap<WirelessNeighbor>();
+		
+		m_fLifetime = fLifetime;
+		m_fBucketWidth = (fLifetime > 0) ? fLifetime / EXPIRY_BUCKETS_PER_LIFETIME : 1.0;
+		m_ExpiryBuckets = new WirelessNeighbor[EXPIRY_BUCKETS];
+		m_lExpiryCursor = 0;
+		m_nPresent = 0;
+	}
+	
+	/**
+	 * Find a neighbor by its index
+	 * @param nIndex The index of the neighbor (see SimObject.getIndex)
+	 * @return The neighbor, null if there is no neighbor with that index
+	 */
+	public WirelessNeighbor getByIndex (int nIndex)
+	{
+		return m_ByIndex.get(nIndex);
+	}
+	
+	public WirelessNeighbor put (String sName, WirelessNeighbor theNeighbor)
+	{
+		WirelessNeighbor theOld = super.put(sName, theNeighbor);
+		
+		if(theOld != null && theOld != theNeighbor && theOld.getIndex() >= 0)
+		{
+			m_ByIndex.remove(theOld.getIndex());
+		}
+		
+		if(theNeighbor.getIndex() >= 0)
+		{
+			m_ByIndex.put(theNeighbor.getIndex(), theNeighbor);
+		}
+		
+		return theOld;
+	}
+	
+	public WirelessNeighbor remove (Object theKey)
+	{
+		WirelessNeighbor theOld = super.remove(theKey);
+		
+		if(theOld != null && theOld.getIndex() >= 0)
+		{
+			m_ByIndex.remove(theOld.getIndex());
+		}
+		
+		if(theOld != null && theOld.m_bExpiryQueued)
+		{
+			unlinkExpiry(theOld);
+			m_nPresent--;
+		}
+		
+		return theOld;
+	}
+	
+	public void clear ()
+	{
+		super.clear();
+		m_ByIndex.clear();
+		
+		for(int i = 0; i < m_ExpiryBuckets.length; i++)
+		{
+			WirelessNeighbor theNeighbor = m_ExpiryBuckets[i];
+			
+			while(theNeighbor != null)
+			{
+				WirelessNeighbor theNext = theNeighbor.m_ExpiryNext;
+				
+				theNeighbor.m_ExpiryPrev = null;
+				theNeighbor.m_ExpiryNext = null;
+				theNeighbor.m_bExpiryQueued = false;
+				theNeighbor = theNext;
+			}
+		}
+		
+		Arrays.fill(m_ExpiryBuckets, null);
+		m_lExpiryCursor = 0;
+		m_nPresent = 0;
+	}
+	
+	/**
+	 * @return True if any of the neighbors is present, i.e. has not been expired
+	 */
+	public boolean hasPresentNeighbors ()
+	{
+		return m_nPresent > 0;
+	}
+	
+	/**
+	 * @return The number of neighbors that are present
+	 */
+	public int getNumberPresent ()
+	{
+		return m_nPresent;
+	}
+	
+	/**
+	 * Check if a neighbor has expired at the given time
+	 * @param theNeighbor
+	 * @param fTime
+	 * @return True if the neighbor was not sensed for longer than the lifetime
+	 */
+	public boolean isExpired (WirelessNeighbor theNeighbor, double fTime)
+	{
+		return (fTime - theNeighbor.getTime_LastSensed()) > m_fLifetime;
+	}
+	
+	/**
+	 * Note that a neighbor (of this list) was just sensed. Its last sensed time must already be
+	 * updated and its presence flag set.
+	 * @param theNeighbor
+	 */
+	public void refreshNeighbor (WirelessNeighbor theNeighbor)
+	{
+		if(theNeighbor.m_bExpiryQueued)
+		{
+			unlinkExpiry(theNeighbor);
+		}
+		else
+		{
+			if(m_nPresent == 0)
+			{
+				// Nothing is waiting, start the buckets where the neighbor was sensed
+				m_lExpiryCursor = computeBucket(theNeighbor.getTime_LastSensed());
+			}
+			
+			m_nPresent++;
+		}
+		
+		queueExpiry(theNeighbor);
+	}
+	
+	/**
+	 * Clear the presence flag of every neighbor that has expired by the given time
+	 * @param fTime The current time
+	 * @return The number of neighbors that expired
+	 */
+	public int expireNeighbors (double fTime)
+	{
+		WirelessNeighbor	theDue;
+		long				lLastBucket;
+		int					nExpired;
+		
+		if(m_nPresent == 0)
+		{
+			return 0;
+		}
+		
+		// One bucket extra so that rounding in the bucket of a neighbor cannot hide it
+		lLastBucket = computeBucket(fTime) + 1;
+		
+		if(lLastBucket < m_lExpiryCursor)
+		{
+			// The clock went back (e.g. the next day of a daily simulation), start over from now
+			theDue = takeBuckets(m_lExpiryCursor, m_lExpiryCursor + m_ExpiryBuckets.length - 1);
+			m_lExpiryCursor = computeBucket(fTime);
+			requeueExpiry(theDue);
+		}
+		
+		theDue = takeBuckets(m_lExpiryCursor, lLastBucket);
+		m_lExpiryCursor = lLastBucket + 1;
+		nExpired = 0;
+		
+		while(theDue != null)
+		{
+			WirelessNeighbor theNext = theDue.m_ExpiryNext;
+			
+			theDue.m_ExpiryNext = null;
+			
+			if(isExpired(theDue, fTime))
+			{
+				theDue.m_bExpiryQueued = false;
+				theDue.setPresenceFlag(false);
+				m_nPresent--;
+				nExpired++;
+			}
+			else
+			{
+				queueExpiry(theDue);
+			}
+			
+			theDue = theNext;
+		}
+		
+		return nExpired;
+	}
+	
+	/**
+	 * A view of the neighbors that have not expired at the given time, in no particular order.
+	 * Nothing is copied, the view must not be used across changes to the list.
+	 * @param fTime The current time
+	 * @return The neighbors that are still present at the time
+	 */
+	public Iterable<WirelessNeighbor> activeNeighbors (final double fTime)
+	{
+		return new Iterable<WirelessNeighbor>()
+		{
+			public Iterator<WirelessNeighbor> iterator ()
+			{
+				return new ActiveIterator(fTime);
+			}
+		};
+	}
+	
+	/**
+	 * Walk the expiry buckets and skip anything that expired by the time of the view
+	 */
+	class ActiveIterator implements Iterator<WirelessNeighbor> {
+		
+		double				m_fTime;
+		int					m_nBucket;
+		WirelessNeighbor	m_Next;
+		
+		ActiveIterator (double fTime)
+		{
+			m_fTime = fTime;
+			m_nBucket = -1;
+			m_Next = null;
+			advance();
+		}
+		
+		private void advance ()
+		{
+			do
+			{
+				if(m_Next != null)
+				{
+					m_Next = m_Next.m_ExpiryNext;
+				}
+				
+				while(m_Next == null && m_nBucket + 1 < m_ExpiryBuckets.length)
+				{
+					m_Next = m_ExpiryBuckets[++m_nBucket];
+				}
+			}
+			while(m_Next != null && isExpired(m_Next, m_fTime));
+		}
+		
+		public boolean hasNext ()
+		{
+			return m_Next != null;
+		}
+		
+		public WirelessNeighbor next ()
+		{
+			WirelessNeighbor theNeighbor = m_Next;
+			
+			if(theNeighbor == null)
+			{
+				throw new NoSuchElementException();
+			}
+			
+			advance();
+			return theNeighbor;
+		}
+		
+		public void remove ()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	private long computeBucket (double fTime)
+	{
+		return (long) Math.floor(fTime / m_fBucketWidth);
+	}
+	
+	/**
+	 * Put a neighbor into the bucket of its expiry, anything outside of the range of the buckets
+	 * goes to the first or last bucket and is looked at again when that bucket comes due
+	 * @param theNeighbor
+	 */
+	private void queueExpiry (WirelessNeighbor theNeighbor)
+	{
+		long	lBucket;
+		int		nSlot;
+		
+		lBucket = computeBucket(theNeighbor.getTime_LastSensed() + m_fLifetime);
+		lBucket = Math.max(lBucket, m_lExpiryCursor);
+		lBucket = Math.min(lBucket, m_lExpiryCursor + m_ExpiryBuckets.length - 1);
+		nSlot = (int) (lBucket & (m_ExpiryBuckets.length - 1));
+		
+		theNeighbor.m_lExpiryBucket = lBucket;
+		theNeighbor.m_bExpiryQueued = true;
+		theNeighbor.m_ExpiryPrev = null;
+		theNeighbor.m_ExpiryNext = m_ExpiryBuckets[nSlot];
+		
+		if(m_ExpiryBuckets[nSlot] != null)
+		{
+			m_ExpiryBuckets[nSlot].m_ExpiryPrev = theNeighbor;
+		}
+		
+		m_ExpiryBuckets[nSlot] = theNeighbor;
+	}
+	
+	private void unlinkExpiry (WirelessNeighbor theNeighbor)
+	{
+		if(theNeighbor.m_ExpiryPrev != null)
+		{
+			theNeighbor.m_ExpiryPrev.m_ExpiryNext = theNeighbor.m_ExpiryNext;
+		}
+		else
+		{
+			m_ExpiryBuckets[(int) (theNeighbor.m_lExpiryBucket & (m_ExpiryBuckets.length - 1))] = theNeighbor.m_ExpiryNext;
+		}
+		
+		if(theNeighbor.m_ExpiryNext != null)
+		{
+			theNeighbor.m_ExpiryNext.m_ExpiryPrev = theNeighbor.m_ExpiryPrev;
+		}
+		
+		theNeighbor.m_ExpiryPrev = null;
+		theNeighbor.m_ExpiryNext = null;
+		theNeighbor.m_bExpiryQueued = false;
+	}
+	
+	/**
+	 * Take the neighbors of a range of buckets out of the buckets
+	 * @return The neighbors linked through m_ExpiryNext
+	 */
+	private WirelessNeighbor takeBuckets (long lFirst, long lLast)
+	{
+		WirelessNeighbor	theList;
+		
+		theList = null;
+		lLast = Math.min(lLast, lFirst + m_ExpiryBuckets.length - 1);
+		
+		for(long lBucket = lFirst; lBucket <= lLast; lBucket++)
+		{
+			int nSlot = (int) (lBucket & (m_ExpiryBuckets.length - 1));
+			WirelessNeighbor theNeighbor = m_ExpiryBuckets[nSlot];
+			
+			m_ExpiryBuckets[nSlot] = null;
+			
+			while(theNeighbor != null)
+			{
+				WirelessNeighbor theNext = theNeighbor.m_ExpiryNext;
+				
+				theNeighbor.m_ExpiryPrev = null;
+				theNeighbor.m_ExpiryNext = theList;
+				theList = theNeighbor;
+				theNeighbor = theNext;
+			}
+		}
+		
+		return theList;
+	}
+	
+	private void requeueExpiry (WirelessNeighbor theList)
+	{
+		while(theList != null)
+		{
+			WirelessNeighbor theNext = theList.m_ExpiryNext;
+			
+			queueExpiry(theList);
+			theList = theNext;
+		}
+	}
 }
@@ -1,8 +1,11 @@
 package mobilesim.core;
 
+import mobilesim.console.DebugLogger;
 import mobilesim.statistics.*;
+import mobilesim.utilities.IntIntHashMap;
 
 import java.io.*;
+import java.util.Arrays;
 
 /** 
  * This is the basic mobile node that exists in the simulation
@@ -15,11 +18,19 @@ public class MobileNode extends SimObject {
 	StorageDevice				m_Storage;
 	ListContents				m_ContentObjects;
 	
+	// For each neighbor (by index) the version of its content list that we have already gone 
+	// through, the next exchange with that neighbor only needs to look at what came after it
+	IntIntHashMap				m_SyncedContentVersions;
+	
 	////////////////////////////////////////////////////////////////
 	// Current means that we are seeing them in the here and now
 	
 	// This mobile node's neighbors (so far) as reported by short-range radio (typically mobile nodes)
 	ListWirelessNeighbors		m_WirelessNeighbors_SR;
+	
+	// The neighbor check only runs while there are present neighbors that can expire
+	EventTimerSimObject			m_Timer_NeighborCheck;
+	boolean						m_bNeighborCheckArmed;
 
 	// This mobile node's current neighbors as reported by medium-range radio (typically APs)
 	ListWirelessNeighbors		m_WirelessNeighbors_MR;
@@ -56,8 +67,25 @@ public class MobileNode extends SimObject {
 	
 	public static final Double	DEFAULT_NEIGHBOR_LIFETIME_BASELINE = 180.00; 
 	
+	// The counters that each aggregate of the wireless state keeps in the history
+	public static final String []	WIRELESS_STATE_AGGREGATE_FIELDS = {"Window_Count_Wireless_PtCheck",
+																	"Window_Wireless_HasActiveWiFi",
+																	"Window_Wireless_WiFi_Rx_Bytes",
+																	"Window_Wireless_WiFi_Tx_Bytes",
+																	"Window_Wireless_Cell_Rx_Bytes",
+																	"Window_Wireless_Cell_Tx_Bytes"};
+	
 	StatisticGroup				m_Stats;
 	StatisticHistory			m_Stats_History;
+	
+	// Handles of the counters in m_Stats that get adjusted all of the time
+	int							m_nStat_PtCheck;
+	int							m_nStat_Window_PtCheck;
+	int							m_nStat_Window_HasActiveWiFi;
+	int							m_nStat_DataUpdates;
+	int							m_nStat_DataUpdateFields;
+	int							m_nStat_DataUpdateTimeGap;
+	int							m_nStat_DataUpdateLargeGap;
 
 	// The various scalar fields that do not necessarily need a specific field or object
 	// these are typically counters
@@ -65,15 +93,25 @@ public class MobileNode extends SimObject {
 	
 	StatisticGroup[]			m_PropagationStats;
 	
+	// Running totals (by the hour the content was created) of the content that arrived from other
+	// devices, kept up to date as content arrives so that finalizing only needs to go over the hours
+	double []					m_Propagation_NumSrcs;
+	double []					m_Propagation_Latency;
+	double []					m_Propagation_SrcHops;
+	double []					m_Propagation_Volume;
+	
 	double []					m_HourlyTraffic;
 	
 	public MobileNode ()
 	{
 		m_Storage = new StorageDevice();
 		m_ContentObjects = new ListContents();
+		m_SyncedContentVersions = new IntIntHashMap();
 		
 		m_WirelessNeighbors_SR = new ListWirelessNeighbors();
 		m_WirelessNeighbors_MR = new ListWirelessNeighbors();
+		m_Timer_NeighborCheck = null;
+		m_bNeighborCheckArmed = false;
 		
 		m_fInterval_NeighborCheck = 60;             // Check neighbors every 60 seconds
 		m_fInterval_Wireless_State_PtCheck = 5;		// Check state every 5 seconds
@@ -91,6 +129,11 @@ public class MobileNode extends SimObject {
 	      
 	    m_HourlyTraffic = new double[SLOTS_MOBILENODE_PROPAGATION_EVAL];
 	    
+	    m_Propagation_NumSrcs = new double[SLOTS_MOBILENODE_PROPAGATION_EVAL];
+	    m_Propagation_Latency = new double[SLOTS_MOBILENODE_PROPAGATION_EVAL];
+	    m_Propagation_SrcHops = new double[SLOTS_MOBILENODE_PROPAGATION_EVAL];
+	    m_Propagation_Volume = new double[SLOTS_MOBILENODE_PROPAGATION_EVAL];
+	    
 	    for (int i = 0; i < SLOTS_MOBILENODE_PROPAGATION_EVAL; i++)
 	    {
 	    	m_PropagationStats[i] = new StatisticGroup();
@@ -123,7 +166,8 @@ public class MobileNode extends SimObject {
 	
 	/**
 	 * For this node, enable a periodic timer that assesses the neighbor state of this mobile node
-	 * relative to other nodes and to record this data in the appropriate locations. 
+	 * relative to other nodes and to record this data in the appropriate locations. The timer is
+	 * only armed while the node has present neighbors, a node without any has nothing to check.
 	 * @return
 	 */
 	public boolean enableTimer_NeighborCheck ()
@@ -138,20 +182,48 @@ public class MobileNode extends SimObject {
 		// Set the interval to the current setting for our node
 		theTimer.setInterval(m_fInterval_NeighborCheck);
 		
-		// This should go on forever and ever
-		theTimer.enableInfiniteInvocations();
+		// Single shot, we re-arm it ourselves as long as there are neighbors to check on
+		theTimer.setInvocations(1);
 		
 		// Set the timer to the right type
 		theTimer.setType(TIMER_MOBILENODE_NEIGHBOR_CHECK);
 		
-		// Set the first invocation as NOW plus the interval
-		theTimer.adjustTimeByInterval();
+		m_Timer_NeighborCheck = theTimer;
+		m_bNeighborCheckArmed = false;
 		
-		// Add this event to the mix
-		SimulationEngine.theEngine.addEvent(theTimer);		
+		armTimer_NeighborCheck();
 		return true;
 	}
 	
+	/**
+	 * Arm the neighbor check timer unless it is armed already or there are no present neighbors.
+	 * The checks stay on the same times as if the timer had kept running all along, i.e. the 
+	 * multiples of the interval.
+	 */
+	private void armTimer_NeighborCheck ()
+	{
+		double	fNow;
+		double	fNext;
+		
+		if(m_Timer_NeighborCheck == null || m_bNeighborCheckArmed || !m_WirelessNeighbors_SR.hasPresentNeighbors())
+		{
+			return;
+		}
+		
+		fNow = getEngine().getTime();
+		fNext = m_Timer_NeighborCheck.getTimeValue();
+		
+		while(fNext <= fNow)
+		{
+			fNext = m_Timer_NeighborCheck.getInterval() + fNext;
+		}
+		
+		m_Timer_NeighborCheck.setInvocations(1);
+		m_Timer_NeighborCheck.setTime(fNext);
+		m_bNeighborCheckArmed = true;
+		getEngine().addEvent(m_Timer_NeighborCheck);
+	}
+	
 	/**
 	 * @return
 	 */
@@ -167,7 +239,7 @@ public class MobileNode extends SimObject {
 		theTimer.enableInfiniteInvocations();		
 		theTimer.setType(TIMER_MOBILENODE_WIRELESS_STATE_PTCHECK);		
 		theTimer.adjustTimeByInterval();		
-		SimulationEngine.theEngine.addEvent(theTimer);		
+		getEngine().addEvent(theTimer);		
 		
 		// Aggregate state checking timer
 		theTimer = new EventTimerSimObject();
@@ -177,7 +249,7 @@ public class MobileNode extends SimObject {
 		theTimer.enableInfiniteInvocations();		
 		theTimer.setType(TIMER_MOBILENODE_WIRELESS_STATE_AGGREGATE);		
 		theTimer.adjustTimeByInterval();
-		SimulationEngine.theEngine.addEvent(theTimer);		
+		getEngine().addEvent(theTimer);		
 				
 		return true;
 	}
@@ -197,8 +269,8 @@ public class MobileNode extends SimObject {
 		theTimer.setInterval(m_fInterval_ContentCreate);
 		theTimer.enableInfiniteInvocations();		
 		theTimer.setType(TIMER_MOBILENODE_CONTENT_CREATE);		
-		theTimer.setTime(SimulationEngine.theEngine.getTime());		
-		SimulationEngine.theEngine.addEvent(theTimer);	
+		theTimer.setTime(getEngine().getTime());		
+		getEngine().addEvent(theTimer);	
 		
 		return true;
 	}
@@ -206,9 +278,9 @@ public class MobileNode extends SimObject {
 	public boolean initializeStatistics ()
 	{
 	    // Add / initialize our various statistics here
-	    m_Stats.initializeCounter("Count_Wireless_PtCheck");
-		m_Stats.initializeCounter("Window_Count_Wireless_PtCheck");
-		m_Stats.initializeCounter("Window_Wireless_HasActiveWiFi");
+	    m_nStat_PtCheck = m_Stats.initializeCounter("Count_Wireless_PtCheck");
+		m_nStat_Window_PtCheck = m_Stats.initializeCounter("Window_Count_Wireless_PtCheck");
+		m_nStat_Window_HasActiveWiFi = m_Stats.initializeCounter("Window_Wireless_HasActiveWiFi");
 
 		m_Stats.initializeCounter("Window_Wireless_WiFi_Rx_Bytes");
 		m_Stats.initializeCounter("Window_Wireless_WiFi_Tx_Bytes");
@@ -237,14 +309,16 @@ public class MobileNode extends SimObject {
 		m_Fields.instantiateField("Delta:TotalRxBytes", ListDataFields.DATAFIELD_DOUBLE);
 
 		// Number of data updates received
-		m_Stats.initializeCounter("Count_Data_Update_Usage");
+		m_nStat_DataUpdates = m_Stats.initializeCounter("Count_Data_Update_Usage");
 
 		// Cumulative number of fields processed
-		m_Stats.initializeCounter("Sum_Data_Update_Usage_Fields");
+		m_nStat_DataUpdateFields = m_Stats.initializeCounter("Sum_Data_Update_Usage_Fields");
 
 		// Cumulative time between successive updates
-		m_Stats.initializeCounter("Sum_Data_Update_Usage_TimeGap");
-		m_Stats.initializeCounter("Count_Data_Update_Usage_LargeGap");
+		m_nStat_DataUpdateTimeGap = m_Stats.initializeCounter("Sum_Data_Update_Usage_TimeGap");
+		m_nStat_DataUpdateLargeGap = m_Stats.initializeCounter("Count_Data_Update_Usage_LargeGap");
+		
+		m_Stats_History.trackCounters("Wireless_State_Aggregate", m_Stats, WIRELESS_STATE_AGGREGATE_FIELDS);
 		 
 		for(int i = 0; i < m_PropagationStats.length; i++)
 		{
@@ -261,6 +335,16 @@ public class MobileNode extends SimObject {
         return true;
 	}
 	
+	/**
+	 * Retrieve the history of the wireless state aggregates, e.g. to bound how many samples it
+	 * keeps in memory (see StatisticHistory.setCapacity)
+	 * @return The history of this node
+	 */
+	public StatisticHistory getStatsHistory ()
+	{
+		return m_Stats_History;
+	}
+	
 	public void resetStatistics ()
     {
 		m_Stats.clear();
@@ -271,6 +355,11 @@ public class MobileNode extends SimObject {
 		    m_PropagationStats[i].clear();
 		    m_HourlyTraffic[i] = 0;
 		}
+		
+		Arrays.fill(m_Propagation_NumSrcs, 0.0);
+		Arrays.fill(m_Propagation_Latency, 0.0);
+		Arrays.fill(m_Propagation_SrcHops, 0.0);
+		Arrays.fill(m_Propagation_Volume, 0.0);
 	}	 
 	
 	/**
@@ -363,7 +452,7 @@ public class MobileNode extends SimObject {
 
         	default:
         		System.err.println("* Error: Timer received at mobile node " + getName() + " with an unknown type.");
-        		System.err.println("  Timer = " + SimulationEngine.theEngine.getTime().toString() + " Timer type = " + theTimer.getType());
+        		System.err.println("  Timer = " + getEngine().getTime().toString() + " Timer type = " + theTimer.getType());
         		return false;
         }
 	}
@@ -373,65 +462,29 @@ public class MobileNode extends SimObject {
 	 */
 	public boolean processTimer_NeighborCheck ()
 	{
+		m_bNeighborCheckArmed = false;
 	    evaluateNeighbors();
+	    armTimer_NeighborCheck();
 	    return true;
 	}
 	
 	/**
-	 * Periodically evaluate neighbors and invalidate/deactivate the expired ones 
+	 * Periodically evaluate neighbors and invalidate/deactivate the expired ones. Only the
+	 * neighbors whose expiry came due are looked at (see ListWirelessNeighbors).
 	 */
 	private void evaluateNeighbors ()
 	{	
-		for (String theName : m_WirelessNeighbors_SR.keySet())
-		{
-			WirelessNeighbor theNeighbor = m_WirelessNeighbors_SR.get(theName);
-			
-			if(isNeighborExpired(theNeighbor))
-			{
-				theNeighbor.setPresenceFlag(false);;
-			}
-		}
+		m_WirelessNeighbors_SR.expireNeighbors(getEngine().getTime());
 	}
 	
 	/**
-	 * Return the list of active wireless neighbors, i.e. neighbors that are not expired yet. 
+	 * Return the active wireless neighbors, i.e. neighbors that are not expired yet. This is a 
+	 * view on the neighbor list rather than a copy and is only good until the neighbors change.
 	 * @return
 	 */
-	public ListWirelessNeighbors retrieveActiveNeighbors_SR ()
+	public Iterable<WirelessNeighbor> retrieveActiveNeighbors_SR ()
 	{
-		ListWirelessNeighbors currentNeighbors = new ListWirelessNeighbors();
-		currentNeighbors.clear();
-		
-		for (String name : m_WirelessNeighbors_SR.keySet())
-		{
-			WirelessNeighbor theNeighbor = m_WirelessNeighbors_SR.get(name);
-			if (!isNeighborExpired(theNeighbor))
-			{
-				currentNeighbors.put(name,  theNeighbor);
-			}
-		}
-		
-		return currentNeighbors;
-	}
-	
-	/**
-	 * Check if a specific neighbor is still valid / expired
-	 * We only know the snapshot of neighbors from each proximity sensing event and update the them in a  
-	 * discrete manner. But have no idea what would happen between two consecutive proximity sensing events
-	 * that took place at t1 and t2. The time duration between t1 and t2 could be hours, and practically 
-	 * it's not likely that neighbors detected at t1 can stay that long until t2. So we need to set a default 
-	 * lifetime for each neighbor to handle the such scenario. 
-	 * 
-	 * @param theNeighbor	the wireless neighbor to be checked
-	 * @return
-	 */
-	private boolean isNeighborExpired (WirelessNeighbor theNeighbor)
-	{
-		Double evalTime = SimulationEngine.theEngine.getTime();
-		Double sensedTime = theNeighbor.getTime_LastSensed();
-		Double lifeTime = evalTime - sensedTime;
-		
-		return (lifeTime > DEFAULT_NEIGHBOR_LIFETIME_BASELINE);
+		return m_WirelessNeighbors_SR.activeNeighbors(getEngine().getTime());
 	}
 	
 	/**
@@ -442,15 +495,15 @@ public class MobileNode extends SimObject {
 	public boolean processTimer_WirelessStatePointCheck ()
 	{
 		// +1 sample point noted - overall - how many total fine-grained samples
-		m_Stats.adjustValue("Count_Wireless_PtCheck", 1.0);
+		m_Stats.adjustValue(m_nStat_PtCheck, 1.0);
 
 		// +1 sample point noted - this window
-		m_Stats.adjustValue("Window_Count_Wireless_PtCheck", 1.0);
+		m_Stats.adjustValue(m_nStat_Window_PtCheck, 1.0);
 
 		// Are we currently associated with an AP?				
 		if(hasActiveWiFi())
 		{
-			m_Stats.adjustValue("Window_Wireless_HasActiveWiFi", 1.0);
+			m_Stats.adjustValue(m_nStat_Window_HasActiveWiFi, 1.0);
 		}
 		else
 		{
@@ -468,34 +521,17 @@ public class MobileNode extends SimObject {
 	 */
 	public boolean processTimer_WirelessStateAggregate ()
 	{
-	    StatisticHistoricalInstance  	savedStat;
-		
-		savedStat = new StatisticHistoricalInstance();
-
-		// Group name plus duration that this sample covers
-		savedStat.initializeNamedGroup("Wireless_State_Aggregate", m_fInterval_Wireless_State_PtCheck);
-
-		// Tally the various state attributes
-		
-		// How many points did we record in this window?
-		savedStat.copyStatistic(m_Stats, "Window_Count_Wireless_PtCheck");
-		
-		// How often were we attached to WiFi?
-		savedStat.copyStatistic(m_Stats, "Window_Wireless_HasActiveWiFi");
-		
-		// What was the data tonnage across the various adapters?
-		savedStat.copyStatistic(m_Stats, "Window_Wireless_WiFi_Rx_Bytes");
-		savedStat.copyStatistic(m_Stats, "Window_Wireless_WiFi_Tx_Bytes");		
-		savedStat.copyStatistic(m_Stats, "Window_Wireless_Cell_Rx_Bytes");
-		savedStat.copyStatistic(m_Stats, "Window_Wireless_Cell_Tx_Bytes");		
+		// Tally the various state attributes (see WIRELESS_STATE_AGGREGATE_FIELDS): how many 
+		// points did we record in this window, how often were we attached to WiFi and what was 
+		// the data tonnage across the various adapters. The sample covers the duration of a point check.
+		m_Stats_History.recordSample(getEngine().getTime(), m_fInterval_Wireless_State_PtCheck);
 				
 		// Are there any computations?
 			
 		// Reset the various state attributes		
-		m_Stats.resetValue("Window_Count_Wireless_PtCheck");
-		m_Stats.resetValue("Window_Wireless_HasActiveWiFi");		
+		m_Stats.resetValue(m_nStat_Window_PtCheck);
+		m_Stats.resetValue(m_nStat_Window_HasActiveWiFi);		
 		
-		m_Stats_History.add(savedStat);
 		//m_Stats_History.dumpSummary();
 		
 		return true;
@@ -515,7 +551,7 @@ public class MobileNode extends SimObject {
 	public boolean processTimer_ContentCreate ()
 	{
 		// Assume that simulation always starts at time 0.0
-		int timeElapsed = SimulationEngine.theEngine.getTime().intValue();
+		int timeElapsed = getEngine().getTime().intValue();
 		int nHourIndex = timeElapsed / 3600;
 		
 		double trafficVol = m_HourlyTraffic[nHourIndex];
@@ -526,13 +562,12 @@ public class MobileNode extends SimObject {
 		String contentID = this.getName() + "_" + timeStamp;
 		
 		// Create and save the content
-		Content content = new Content();
-		content.setContentID(contentID);
-		content.stampCreationTime();
-		content.setOriginalSource(this);
+		ContentDescriptor descriptor = new ContentDescriptor(contentID, getEngine().allocateContentIndex(),
+				getEngine().getTime(), this, trafficVol);
+		
+		Content content = new Content(descriptor);
 		content.setSource(this);
 		content.setSourceHops(0);
-		content.setContentSize(trafficVol);
 		
 		saveContentObject(content);
 		
@@ -580,16 +615,37 @@ public class MobileNode extends SimObject {
 		
 		if(m_ContentObjects.containsKey(contentID))
 		{
-			Double time = SimulationEngine.theEngine.getTime();
+			Double time = getEngine().getTime();
 			System.err.println("  Mobile Node " + this.getName() + " t = " + time + ", ignore redudant content.");
 			return false;
 		}
 		
 		m_ContentObjects.put(contentID, content);
+		accumulatePropagationStats(content);
 	
 		return true;
 	}
 	
+	/**
+	 * Fold a piece of content that just arrived into the running propagation totals
+	 * @param theContent
+	 */
+	private void accumulatePropagationStats (Content theContent)
+	{
+		String srcName = theContent.getSource().getName();
+		
+		// Only consider content from other devices
+		if(srcName.contains("socs") && !srcName.equals(this.getName()))
+		{
+			int indexStatArray = ((int) theContent.getCreationTime() / 3600);
+			
+			m_Propagation_NumSrcs[indexStatArray] += 1.0;
+			m_Propagation_Latency[indexStatArray] += (theContent.getArrivialTime() - theContent.getCreationTime()) / 60;
+			m_Propagation_SrcHops[indexStatArray] += theContent.getSourceHops();
+			m_Propagation_Volume[indexStatArray] += theContent.getContentSize();
+		}
+	}
+	
 	/**
 	 * Process event that applies to this mobile node, 
 	 * based on the event type
@@ -601,6 +657,10 @@ public class MobileNode extends SimObject {
 		{
 			return processEvent_ProximitySense((EventProximitySense) theEvent);
 		}
+		else if(theEvent instanceof EventContactInterval)
+		{
+			return processEvent_ContactInterval((EventContactInterval) theEvent);
+		}
 		else if(theEvent instanceof EventDataUpdate)
 		{
 			return processEvent_DataUpdate((EventDataUpdate) theEvent);
@@ -621,6 +681,37 @@ public class MobileNode extends SimObject {
 		return true;		
 	}
 	
+	/**
+	 * One scan of a contact interval, handled just like a proximity event that only sensed the 
+	 * one neighbor. The event then moves on to the next scan of the contact.
+	 * @param theContact
+	 * @return
+	 */
+	public boolean processEvent_ContactInterval (EventContactInterval theContact)
+	{
+		String		sName;
+		MobileNode	neighborNode;
+		
+		sName = theContact.getNeighborName();
+		neighborNode = resolveExchangePartner(sName, theContact.getNeighborIndex(), theContact.getSignalStrength());
+		
+		if (neighborNode != null)
+		{
+			this.copyContents(neighborNode);
+			neighborNode.copyContents(this);
+		}
+		
+		updateNeighbor_SR(sName, theContact.getNeighborIndex(), theContact.getTime(), theContact.getSignalStrength());
+		armTimer_NeighborCheck();
+		
+		if(theContact.advanceScan())
+		{
+			getEngine().addEvent(theContact);
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * @param theProxEvent
 	 */
@@ -632,23 +723,59 @@ public class MobileNode extends SimObject {
 		// Do a bi-directional content copy with each neighbor
 		for(String neighborName : instances.keySet())
 		{
-			SimObject neighborObject = SimulationEngine.theEngine.resolveObjectByProperName(neighborName);
-			if ((neighborObject != null) && (neighborObject instanceof MobileNode))
+			MobileNode neighborNode = resolveExchangePartner(neighborName, instances.get(neighborName));
+			
+			if (neighborNode != null)
 			{
-				MobileNode neighborNode = (MobileNode)neighborObject;
-				ProximityInstance theInstance =  instances.get(neighborName);
-				
-				if (theInstance.getSignalStrength() >= SimulationEngine.FILTER_RSSI)
-				{
-					 // Copy the content from the neighbor
-				    this.copyContents(neighborNode);
-				    // Copy the content to the neighbor
-				    neighborNode.copyContents(this);
-				}			
+				 // Copy the content from the neighbor
+			    this.copyContents(neighborNode);
+			    // Copy the content to the neighbor
+			    neighborNode.copyContents(this);
 			}
 		}
 	}
 	
+	/**
+	 * Find the node that we would exchange content with for a sensed neighbor
+	 * @param neighborName The name of the neighbor
+	 * @param theInstance The proximity instance of the neighbor
+	 * @return The neighboring node, null if there is no exchange (not a mobile node or too weak a signal)
+	 */
+	MobileNode resolveExchangePartner (String neighborName, ProximityInstance theInstance)
+	{
+		return resolveExchangePartner(neighborName, theInstance.getIndex(), theInstance.getSignalStrength());
+	}
+	
+	/**
+	 * Find the node that we would exchange content with for a sensed neighbor
+	 * @param neighborName The name of the neighbor
+	 * @param nIndex The index of the neighbor, -1 if it was not registered when sensed
+	 * @param nRSSI The signal strength the neighbor was sensed with
+	 * @return The neighboring node, null if there is no exchange (not a mobile node or too weak a signal)
+	 */
+	MobileNode resolveExchangePartner (String neighborName, int nIndex, int nRSSI)
+	{
+		SimObject neighborObject;
+		
+		// Neighbors that were not registered when they were sensed can only be found by name
+		if(nIndex >= 0)
+		{
+			neighborObject = getEngine().resolveObjectByIndex(nIndex);
+		}
+		else
+		{
+			neighborObject = getEngine().resolveObjectByProperName(neighborName);
+		}
+		
+		if ((neighborObject != null) && (neighborObject instanceof MobileNode) &&
+				nRSSI >= getEngine().getFilter_RSSI())
+		{
+			return (MobileNode) neighborObject;
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * Use this function to make a copy of the content sent from a neighbor
 	 * and then properly modify the details such as time, hops, etc. 
@@ -658,37 +785,71 @@ public class MobileNode extends SimObject {
 	{
 		ListContents localList = this.getContentList();
 		ListContents copiedList = srcNode.getContentList();
+		int nFirstVersion = copiedList.getFirstVersion();
+		int nLastVersion = copiedList.getVersion();
+		
+		// Nothing to do if we already hold everything the neighbor has
+		if(!copiedList.hasAnyMissingFrom(localList))
+		{
+			nFirstVersion = nLastVersion;
+		}
+		
+		// Whatever the neighbor had at our last exchange was either copied then or failed the hop or
+		// latency filter, neither of which can change as time moves on, so skip over all of it
+		if(srcNode.getIndex() >= 0)
+		{
+			nFirstVersion = Math.max(nFirstVersion, m_SyncedContentVersions.get(srcNode.getIndex(), 0));
+		}
 		
 		// Sanity check, must not copy content that already exist locally
-		for(String contentID : copiedList.keySet())
+		for(int nVersion = nFirstVersion; nVersion < nLastVersion; nVersion++)
 		{
-			Content copiedContent = copiedList.get(contentID);
+			Content copiedContent = copiedList.getByVersion(nVersion);
+			
+			if(copiedContent == null)
+			{
+				continue;
+			}
+			
+			String contentID = copiedContent.getContentID();
 			// number of hops so far from the source node
 			int hops = copiedContent.getSourceHops() + 1;
 			// propagation latency in mins
-			double latency = (SimulationEngine.theEngine.getTime() - copiedContent.getCreationTime()) / 60;
+			double latency = (getEngine().getTime() - copiedContent.getCreationTime()) / 60;
 			
 			if(!localList.containsKey(contentID) &&
-					hops <= SimulationEngine.FILTER_HOPS &&
-					latency <= SimulationEngine.FILTER_LACY )
+					hops <= getEngine().getFilter_Hops() &&
+					latency <= getEngine().getFilter_Latency() )
 			{
-				// Need to make a local copy, instead of using the reference!
-				Content content = new Content();
-				content.setContentID(contentID);
-				content.setCreationTime(copiedContent.getCreationTime());
-				content.stampArrivialTime();
-				content.setOriginalSource(copiedContent.getOriginalSource());
+				// Need a local replica, only how it got here differs from the neighbor's
+				Content content = new Content(copiedContent.getDescriptor());
+				content.setArrivialTime(getEngine().getTime());
 				content.setSource(srcNode);
 				content.setSourceHops(copiedContent.getSourceHops()+1);
-				content.setContentSize(copiedContent.getContentSize());
 				
 				localList.put(contentID, content);
+				accumulatePropagationStats(content);
 			}
 		}
+		
+		if(srcNode.getIndex() >= 0)
+		{
+			m_SyncedContentVersions.put(srcNode.getIndex(), nLastVersion);
+		}
 	    
 		return true;
 	}
 	
+	/**
+	 * The indices of the other nodes change whenever this one is registered again, so forget
+	 * where we were with them
+	 */
+	void setIndex (int nIndex)
+	{
+		super.setIndex(nIndex);
+		m_SyncedContentVersions.clear();
+	}
+	
 	private ListContents getContentList ()
 	{
 		return m_ContentObjects;
@@ -708,31 +869,65 @@ public class MobileNode extends SimObject {
 		{		
 			ProximityInstance theInstance = instances.get(name);
 			
-			Double fTime = theInstance.getInstanceTime();
-			int nRSSI = theInstance.getSignalStrength();
+			updateNeighbor_SR(name, theInstance.getIndex(), theInstance.getInstanceTime(), theInstance.getSignalStrength());
+		}
+		
+		// Neighbors are present again, so there is something to check on
+		armTimer_NeighborCheck();
+    }
+	
+	/**
+	 * Update a single neighbor of the short range neighbor list
+	 * @param name The name of the neighbor
+	 * @param nIndex The index of the neighbor, -1 if it was not registered when sensed
+	 * @param fTime The time the neighbor was sensed
+	 * @param nRSSI The signal strength the neighbor was sensed with
+	 */
+	private void updateNeighbor_SR (String name, int nIndex, Double fTime, int nRSSI)
+	{
+		WirelessNeighbor neighbor = null;
+		
+		// Registered neighbors can be found by index without hashing the name
+		if(nIndex >= 0)
+		{
+			neighbor = m_WirelessNeighbors_SR.getByIndex(nIndex);
+		}
+		
+		if(neighbor == null)
+		{
+			neighbor = m_WirelessNeighbors_SR.get(name);
+		}
+		
+		if(neighbor == null)
+		{	
+			neighbor = new WirelessNeighbor();
+			neighbor.setName(name);
+			neighbor.setTime_FirstSensed(fTime);
+			neighbor.setTime_LastSensed(fTime);
+			neighbor.setSignalStrength(nRSSI);
+			neighbor.setPresenceFlag(true);
+			neighbor.setIndex(nIndex);
 			
-			if(!m_WirelessNeighbors_SR.containsKey(name))
-			{	
-				WirelessNeighbor neighbor = new WirelessNeighbor();
-				neighbor.setName(name);
-				neighbor.setTime_FirstSensed(fTime);
-				neighbor.setTime_LastSensed(fTime);
-				neighbor.setSignalStrength(nRSSI);
-				neighbor.setPresenceFlag(true);
-				
-				m_WirelessNeighbors_SR.put(name, neighbor);
-			}
-			else
+			m_WirelessNeighbors_SR.put(name, neighbor);
+			m_WirelessNeighbors_SR.refreshNeighbor(neighbor);
+		}
+		else
+		{
+			// neighbor already exists, need to update time
+			neighbor.setTime_LastSensed(fTime);
+			neighbor.setSignalStrength(nRSSI);
+			neighbor.setPresenceFlag(true);
+			
+			if(nIndex >= 0 && neighbor.getIndex() != nIndex)
 			{
-				// neighbor already exists, need to update time
-				WirelessNeighbor neighbor = m_WirelessNeighbors_SR.get(name);
-				neighbor.setTime_LastSensed(fTime);
-				neighbor.setSignalStrength(nRSSI);
-				neighbor.setPresenceFlag(true);
+				// Put it back so that the list also knows it by its index
+				neighbor.setIndex(nIndex);
+				m_WirelessNeighbors_SR.put(name, neighbor);
 			}
+			
+			m_WirelessNeighbors_SR.refreshNeighbor(neighbor);
 		}
-		
-    }
+	}
 	 
 	/**
 	 * @param theUpdate
@@ -758,11 +953,11 @@ public class MobileNode extends SimObject {
 		// System.out.println("Processing the data update");
 		
 		// +1 to our counter for data updates
-		m_Stats.adjustValue("Count_Data_Update_Usage", 1.0);
+		m_Stats.adjustValue(m_nStat_DataUpdates, 1.0);
 		
 		// Keep a tally of the number of fields that we saw in each update.  This is used primarily
 		//  for troubleshooting as the number should be fairly consistent
-		m_Stats.adjustValue("Sum_Data_Update_Usage_Fields", (double) theUpdate.getNumberFields());
+		m_Stats.adjustValue(m_nStat_DataUpdateFields, theUpdate.getNumberFields());
 				
 		
 		ListDataFields		theDelta;
@@ -770,7 +965,10 @@ public class MobileNode extends SimObject {
 		theDelta = m_Fields.computeChanges(theUpdate);		
 
 		// This is only for debugging
-		theDelta.dumpInfoToConsole();
+		if(getContext().getLogger().isEnabled(DebugLogger.SIM_DEBUG_LEVEL_VERBOSE, getDebugSetting()))
+		{
+			getContext().getLogger().logInfo(DebugLogger.SIM_DEBUG_LEVEL_VERBOSE, theDelta.getInfo(), getDebugSetting());
+		}
 
 		// If any of our tally fields are the minimum value, this is the first one
 		if(m_Fields.get("MobileTxBytes").getUpdateTime() == Double.MIN_VALUE ||
@@ -788,12 +986,12 @@ public class MobileNode extends SimObject {
 		//  count of the number of updates
 		if(theDelta.getLastUpdate() > Double.MIN_VALUE)
 		{			
-			m_Stats.adjustValue("Sum_Data_Update_Usage_TimeGap", theDelta.getLastUpdate());
+			m_Stats.adjustValue(m_nStat_DataUpdateTimeGap, theDelta.getLastUpdate());
 
 			// Is the gap too large? 
 			if(theDelta.getLastUpdate() >= m_Fields.get("THRESHOLD_LARGEGAP_NW_USAGE").getValueDouble())
 			{
-				m_Stats.adjustValue("Count_Data_Update_Usage_LargeGap", 1.0);
+				m_Stats.adjustValue(m_nStat_DataUpdateLargeGap, 1.0);
 				
 				// TODO: Check if we need to re-initialize the values
 			}
@@ -804,7 +1002,7 @@ public class MobileNode extends SimObject {
 		
 		if(bFirstValue)
 		{
-			System.out.println("Initializing values");
+			getContext().getLogger().logInfo(DebugLogger.SIM_DEBUG_LEVEL_VERBOSE, "Initializing values", getDebugSetting());
 			m_Fields.copyFieldValue("Ref:MobileTxBytes", "MobileTxBytes");
 			m_Fields.copyFieldValue("Ref:MobileRxBytes", "MobileRxBytes");
 			m_Fields.copyFieldValue("Ref:TotalTxBytes",  "TotalTxBytes");
@@ -813,7 +1011,7 @@ public class MobileNode extends SimObject {
 		else
 		{			
 			// If we are not the first, compute the difference (how much sent since we initialized)
-			System.out.println("Computing delta");
+			getContext().getLogger().logInfo(DebugLogger.SIM_DEBUG_LEVEL_VERBOSE, "Computing delta", getDebugSetting());
 			m_Fields.get("Delta:MobileTxBytes").setValue(m_Fields.get("MobileTxBytes").getValueDouble() - m_Fields.get("Ref:MobileTxBytes").getValueDouble());
 			m_Fields.get("Delta:MobileRxBytes").setValue(m_Fields.get("MobileRxBytes").getValueDouble() - m_Fields.get("Ref:MobileRxBytes").getValueDouble());
 			m_Fields.get("Delta:TotalTxBytes").setValue(m_Fields.get("TotalTxBytes").getValueDouble() - m_Fields.get("Ref:TotalTxBytes").getValueDouble());
@@ -838,47 +1036,28 @@ public class MobileNode extends SimObject {
 		return true;
 	}
 	
-	public boolean summarize (boolean bFieldsOnly, BufferedWriter theWriter, String sField) 
-	{
-		SummarizePropagationCSV(bFieldsOnly, theWriter, sField);
-		return true;
-	}
-	
+	/**
+	 * Compute the propagation statistics of each hour from the running totals of the content that
+	 * arrived during the simulation
+	 * @return
+	 */
 	public boolean finalizePropagationStats ()
 	{
-		for (String contentID : m_ContentObjects.keySet())
-		{
-			Content theContent = m_ContentObjects.get(contentID);
-			String srcName = theContent.getSource().getName();
-			double creationTime = theContent.getCreationTime();
-			double arrivalTime = theContent.getArrivialTime();
-			double deliveryDuration = (arrivalTime - creationTime)/60;
-			double srcHops = theContent.getSourceHops();
-			double size = theContent.getContentSize();
-			
-			// Only consider content from other devices
-			if(srcName.contains("socs") && !srcName.equals(this.getName()))
-			{
-				int indexStatArray = ((int)creationTime / 3600);
-				m_PropagationStats[indexStatArray].adjustValue("TotalNumSrcs", 1.0);
-				m_PropagationStats[indexStatArray].adjustValue("TotalLatency", deliveryDuration);
-				m_PropagationStats[indexStatArray].adjustValue("TotalSrcHops", srcHops);
-				m_PropagationStats[indexStatArray].adjustValue("TotalPropVol", size);
-			}
-		}
-		
 		// Calculate the num of content files that created by other nodes / devices during an hour
-		int numNodes = SimulationEngine.theEngine.getNumberMobileNodes();
+		int numNodes = getEngine().getNumberMobileNodes();
 		int numFiles = (int)((numNodes - 1)*(3600 / m_fInterval_ContentCreate));
-		double[] totalHrlyVol = DataLoaderNetworkTraffic.theLoader.getHourlyTrafficOverall();
+		double[] totalHrlyVol = getContext().getLoader_NetworkTraffic().getHourlyTrafficOverall();
 		
 		for (int i = 0; i < m_PropagationStats.length; i++)
 		{
-			double totalNumSrcs = m_PropagationStats[i].get("TotalNumSrcs").getValue();
-			double totalLatency = m_PropagationStats[i].get("TotalLatency").getValue();
-			double totalSrcHops = m_PropagationStats[i].get("TotalSrcHops").getValue();
-			double totalPropVol = m_PropagationStats[i].get("TotalPropVol").getValue();
+			double totalNumSrcs = m_Propagation_NumSrcs[i];
+			double totalLatency = m_Propagation_Latency[i];
+			double totalSrcHops = m_Propagation_SrcHops[i];
+			double totalPropVol = m_Propagation_Volume[i];
 			
+			m_PropagationStats[i].get("TotalNumSrcs").setValue(totalNumSrcs);
+			m_PropagationStats[i].get("TotalLatency").setValue(totalLatency);
+			m_PropagationStats[i].get("TotalSrcHops").setValue(totalSrcHops);
 			m_PropagationStats[i].get("PropagRatio").setValue(totalNumSrcs / numFiles);
 			m_PropagationStats[i].get("TotalPropVol").setValue(totalPropVol / 1024);   // convert to MB
 			
@@ -906,33 +1085,27 @@ public class MobileNode extends SimObject {
 		return true;
 	}
 	
-	public boolean SummarizePropagationCSV (boolean bFieldsOnly, BufferedWriter theWriter, String sField)
+	/**
+	 * Retrieve the (finalized) propagation statistics of one metric for all of the slots
+	 * @param sField The name of the metric, e.g. PropagRatio
+	 * @param fValues Filled in with the value of each slot
+	 * @return True if successful, false if there is no such metric
+	 */
+	public boolean getPropagationStats (String sField, double [] fValues)
 	{
-		try 
+		// All of the slots have the same counters and hence the same handles
+		int nHandle = m_PropagationStats[0].getHandle(sField);
+		
+		if(nHandle < 0 || fValues.length < m_PropagationStats.length)
 		{
-			if (bFieldsOnly) 
-			{
-				theWriter.write("MobileNode,");
-				theWriter.write(m_Stats.getSummaryCSV_Fields());
-				theWriter.write("\n");
-			} 
-			else 
-			{
-				theWriter.write(getName() + ",");
-			    for(int i = 0; i < m_PropagationStats.length; i++)
-			    {
-			    	double value = m_PropagationStats[i].get(sField).getValue();
-			    	theWriter.write(value + ",");
-			    }
-			    theWriter.write("\n");
-			}
-		} 
-		catch (IOException e) 
+			return false;
+		}
+		
+		for(int i = 0; i < m_PropagationStats.length; i++)
 		{
-			// TODO: Plumb this correctly
-			System.err.println("* Error: I/O exception of " + e);
+			fValues[i] = m_PropagationStats[i].getValue(nHandle);
 		}
-
+		
 		return true;
 	}
 	
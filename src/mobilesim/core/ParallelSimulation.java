@@ -0,0 +1,704 @@
+package mobilesim.core;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import mobilesim.utilities.IntIntHashMap;
+
+/**
+ * The conservative parallel mode of the SimulationEngine (see setParallelProcesses). The mobile
+ * nodes are partitioned by the communities of their contact graph and each partition becomes a
+ * logical process with an event queue and a clock of its own. An event is local to a partition
+ * if it only touches the nodes of that partition, i.e. timers and updates of a node and the
+ * proximity events whose content exchanges stay inside the partition. Everything else (loaders,
+ * the end of the simulation and the contacts that cross partitions) is global and stays in the
+ * queue of the engine.
+ *
+ * The next global event is the lookahead of all of the logical processes: no partition can be
+ * influenced by another one before it, so every partition safely processes its local events up
+ * to that point on its own thread. The global event is then processed by itself once all of the
+ * partitions have caught up. Each partition processes its events in exactly the sequential
+ * order and the events of different partitions do not interact, hence the results are the same
+ * as for the sequential engine.
+ *
+ * The handlers of local events may only schedule events for their own partition (e.g. renew a
+ * timer of the node) and must not create new events, the IDs of which would no longer be
+ * reproducible.
+ *
+ * @author Striegel
+ *
+ */
+class ParallelSimulation {
+
+	// Rounds of label propagation when looking for the communities of the contact graph
+	static final int	MAX_ITERATIONS_LABEL = 20;
+
+	/**
+	 * A logical process, i.e. the events and the clock of the nodes of one partition
+	 */
+	class LogicalProcess implements Callable<Boolean> {
+
+		EventQueue		m_Queue;
+		Double			m_fCurrentTime;
+
+		// The number of events of the nodes assigned to this process, used to balance the partitions
+		int				m_nLoad;
+
+		// Process the events before this one in the current phase, null for all of the events
+		Event			m_Bound;
+
+		LogicalProcess ()
+		{
+			m_Queue = new EventQueueTimingWheel(new EventQueueHeap());
+			m_fCurrentTime = m_Engine.m_fCurrentTime;
+			m_nLoad = 0;
+			m_Bound = null;
+		}
+
+		/**
+		 * @return True if the process has events to do before the bound
+		 */
+		boolean hasEventsBefore (Event theBound)
+		{
+			Event theNext = m_Queue.peek();
+
+			return theNext != null && (theBound == null || Event.isBefore(theNext, theBound));
+		}
+
+		/**
+		 * Process the local events up to the bound of the phase
+		 */
+		public Boolean call ()
+		{
+			SimulationContext	thePrevious;
+
+			thePrevious = SimulationContext.setCurrent(m_Engine.getContext());
+			m_CurrentProcess.set(this);
+
+			try
+			{
+				while(hasEventsBefore(m_Bound))
+				{
+					m_Engine.processEvent(m_Queue.poll());
+				}
+			}
+			finally
+			{
+				m_CurrentProcess.remove();
+				SimulationContext.setCurrent(thePrevious);
+			}
+
+			return true;
+		}
+	}
+
+	SimulationEngine			m_Engine;
+
+	// The global events, this is the queue of the engine itself
+	EventQueue					m_GlobalQueue;
+
+	LogicalProcess []			m_Processes;
+
+	// The logical process of each mobile node by the index of the node, -1 if not assigned yet
+	int []						m_Partition;
+
+	// The logical process that the calling thread works for, none outside of the parallel phases
+	ThreadLocal<LogicalProcess>	m_CurrentProcess;
+
+	// Events that were scheduled for another partition during a parallel phase
+	Vector<Event>				m_Misrouted;
+
+	/**
+	 * @param theEngine The engine to run in parallel
+	 * @param nProcesses The number of logical processes (and threads)
+	 */
+	ParallelSimulation (SimulationEngine theEngine, int nProcesses)
+	{
+		m_Engine = theEngine;
+		m_GlobalQueue = theEngine.m_EventQueue;
+		m_Processes = new LogicalProcess[nProcesses];
+
+		for(int i = 0; i < nProcesses; i++)
+		{
+			m_Processes[i] = new LogicalProcess();
+		}
+
+		m_Partition = new int[0];
+		m_CurrentProcess = new ThreadLocal<LogicalProcess>();
+		m_Misrouted = new Vector<Event>();
+	}
+
+	/**
+	 * @return The clock of the logical process of the calling thread, null if it does not work
+	 *         for a logical process
+	 */
+	Double getTime ()
+	{
+		LogicalProcess theProcess = m_CurrentProcess.get();
+
+		return (theProcess == null) ? null : theProcess.m_fCurrentTime;
+	}
+
+	/**
+	 * Advance the clock of the logical process of the calling thread
+	 * @return True if the thread works for a logical process, false otherwise
+	 */
+	boolean setTime (Double fNewTime)
+	{
+		LogicalProcess theProcess = m_CurrentProcess.get();
+
+		if(theProcess == null)
+		{
+			return false;
+		}
+
+		theProcess.m_fCurrentTime = fNewTime;
+		return true;
+	}
+
+	/**
+	 * Schedule an event with the logical process it belongs to (or as a global event)
+	 * @param theEvent
+	 * @return True if successful, false if the event was scheduled for another partition during
+	 *         a parallel phase
+	 */
+	boolean addEvent (Event theEvent)
+	{
+		LogicalProcess	theCurrent;
+		LogicalProcess	theTarget;
+
+		theCurrent = m_CurrentProcess.get();
+		theTarget = resolveProcess(theEvent);
+
+		if(theCurrent == null)
+		{
+			if(theTarget == null)
+			{
+				m_GlobalQueue.add(theEvent);
+			}
+			else
+			{
+				theTarget.m_Queue.add(theEvent);
+			}
+
+			return true;
+		}
+
+		if(theTarget == theCurrent)
+		{
+			theCurrent.m_Queue.add(theEvent);
+			return true;
+		}
+
+		// Keep the event, it is scheduled once the phase is over but may be out of order
+		System.err.println("* Error: An event for another partition was scheduled in a parallel phase at t = " + theCurrent.m_fCurrentTime);
+		System.err.println("*  " + theEvent);
+		m_Misrouted.add(theEvent);
+		return false;
+	}
+
+	/**
+	 * Figure out where an event belongs
+	 * @param theEvent
+	 * @return The logical process of the event, null for a global event
+	 */
+	LogicalProcess resolveProcess (Event theEvent)
+	{
+		MobileNode		theNode;
+		int				nPartition;
+
+		if(!(theEvent.getSimObject() instanceof MobileNode))
+		{
+			return null;
+		}
+
+		theNode = (MobileNode) theEvent.getSimObject();
+		nPartition = resolvePartition(theNode);
+
+		if(nPartition < 0)
+		{
+			return null;
+		}
+
+		if(theEvent instanceof EventProximitySense)
+		{
+			ListProximityInstances instances = ((EventProximitySense) theEvent).getProximityInstances();
+
+			for(String sName : instances.keySet())
+			{
+				ProximityInstance	theInstance;
+				MobileNode			thePartner;
+
+				theInstance = instances.get(sName);
+				thePartner = theNode.resolveExchangePartner(sName, theInstance);
+
+				if(thePartner != null)
+				{
+					if(resolvePartition(thePartner) != nPartition)
+					{
+						return null;
+					}
+				}
+				else if(theInstance.getSignalStrength() >= m_Engine.getFilter_RSSI())
+				{
+					// The neighbor may still be registered before the event comes up
+					return null;
+				}
+			}
+		}
+		else if(theEvent instanceof EventContactInterval)
+		{
+			EventContactInterval	theContact;
+			MobileNode				thePartner;
+			
+			// A contact stays put for all of its scans, hence go by its strongest scan
+			theContact = (EventContactInterval) theEvent;
+			thePartner = theNode.resolveExchangePartner(theContact.getNeighborName(), theContact.getNeighborIndex(), theContact.getMaxSignalStrength());
+			
+			if(thePartner != null)
+			{
+				if(resolvePartition(thePartner) != nPartition)
+				{
+					return null;
+				}
+			}
+			else if(theContact.getMaxSignalStrength() >= m_Engine.getFilter_RSSI())
+			{
+				return null;
+			}
+		}
+
+		return m_Processes[nPartition];
+	}
+
+	/**
+	 * Retrieve the partition of a node. Nodes that were registered after the partitioning go to
+	 * the partition with the lowest load, this only happens outside of the parallel phases.
+	 * @param theNode
+	 * @return The partition of the node, -1 if it has none
+	 */
+	int resolvePartition (MobileNode theNode)
+	{
+		int nIndex = theNode.getIndex();
+
+		if(nIndex < 0)
+		{
+			return -1;
+		}
+
+		if(nIndex < m_Partition.length && m_Partition[nIndex] >= 0)
+		{
+			return m_Partition[nIndex];
+		}
+
+		if(m_CurrentProcess.get() != null)
+		{
+			return -1;
+		}
+
+		if(nIndex >= m_Partition.length)
+		{
+			int nOldLength = m_Partition.length;
+
+			m_Partition = Arrays.copyOf(m_Partition, Math.max(2 * nOldLength, nIndex + 1));
+			Arrays.fill(m_Partition, nOldLength, m_Partition.length, -1);
+		}
+
+		int nLightest = 0;
+
+		for(int i = 1; i < m_Processes.length; i++)
+		{
+			if(m_Processes[i].m_nLoad < m_Processes[nLightest].m_nLoad)
+			{
+				nLightest = i;
+			}
+		}
+
+		m_Partition[nIndex] = nLightest;
+		m_Processes[nLightest].m_nLoad++;
+		return nLightest;
+	}
+
+	/**
+	 * Partition the mobile nodes by the contact graph of the pending events and hand the events to
+	 * their logical processes. Two nodes are connected by the number of content exchanges between
+	 * them, the communities of the graph come from label propagation and are then packed onto
+	 * the logical processes by their number of events.
+	 */
+	void partition ()
+	{
+		Vector<Event>		theEvents;
+		IntIntHashMap []	theContacts;
+		int []				nLoad;
+		int []				nLabel;
+		int					nObjects;
+
+		nObjects = m_Engine.getNumberSimObjects();
+		theContacts = new IntIntHashMap[nObjects];
+		nLoad = new int[nObjects];
+		theEvents = new Vector<Event>(m_GlobalQueue.size());
+
+		while(m_GlobalQueue.size() > 0)
+		{
+			theEvents.add(m_GlobalQueue.poll());
+		}
+
+		for(Event theEvent : theEvents)
+		{
+			if(!(theEvent.getSimObject() instanceof MobileNode) || theEvent.getSimObject().getIndex() < 0)
+			{
+				continue;
+			}
+
+			MobileNode theNode = (MobileNode) theEvent.getSimObject();
+			
+			if(theEvent instanceof EventContactInterval)
+			{
+				nLoad[theNode.getIndex()] += ((EventContactInterval) theEvent).getNumberScans();
+			}
+			else
+			{
+				nLoad[theNode.getIndex()]++;
+			}
+
+			if(theEvent instanceof EventProximitySense)
+			{
+				ListProximityInstances instances = ((EventProximitySense) theEvent).getProximityInstances();
+
+				for(String sName : instances.keySet())
+				{
+					MobileNode thePartner = theNode.resolveExchangePartner(sName, instances.get(sName));
+
+					if(thePartner != null && thePartner != theNode)
+					{
+						addContact(theContacts, theNode.getIndex(), thePartner.getIndex());
+						addContact(theContacts, thePartner.getIndex(), theNode.getIndex());
+					}
+				}
+			}
+			else if(theEvent instanceof EventContactInterval)
+			{
+				EventContactInterval theContact = (EventContactInterval) theEvent;
+				MobileNode thePartner = theNode.resolveExchangePartner(theContact.getNeighborName(), theContact.getNeighborIndex(), theContact.getMaxSignalStrength());
+				
+				if(thePartner != null && thePartner != theNode)
+				{
+					addContact(theContacts, theNode.getIndex(), thePartner.getIndex());
+					addContact(theContacts, thePartner.getIndex(), theNode.getIndex());
+				}
+			}
+		}
+
+		nLabel = findCommunities(theContacts);
+		packCommunities(nLabel, nLoad);
+
+		for(Event theEvent : theEvents)
+		{
+			addEvent(theEvent);
+		}
+	}
+
+	private static void addContact (IntIntHashMap [] theContacts, int nFrom, int nTo)
+	{
+		if(theContacts[nFrom] == null)
+		{
+			theContacts[nFrom] = new IntIntHashMap();
+		}
+
+		theContacts[nFrom].put(nTo, theContacts[nFrom].get(nTo, 0) + 1);
+	}
+
+	/**
+	 * Label propagation: each node repeatedly takes the label with the most contacts among its
+	 * neighbors (ties go to the lower label) until the labels settle. The nodes are visited in
+	 * index order so the communities are the same from run to run.
+	 * @return The community label of each object
+	 */
+	private static int [] findCommunities (IntIntHashMap [] theContacts)
+	{
+		int []		nLabel;
+		boolean		bChanged;
+
+		nLabel = new int[theContacts.length];
+
+		for(int i = 0; i < nLabel.length; i++)
+		{
+			nLabel[i] = i;
+		}
+
+		bChanged = true;
+
+		for(int nIteration = 0; bChanged && nIteration < MAX_ITERATIONS_LABEL; nIteration++)
+		{
+			bChanged = false;
+
+			for(int i = 0; i < nLabel.length; i++)
+			{
+				if(theContacts[i] == null)
+				{
+					continue;
+				}
+
+				IntIntHashMap	theWeights = new IntIntHashMap();
+				int				nBest = nLabel[i];
+				int				nBestWeight = 0;
+
+				for(int nNeighbor : theContacts[i].keys())
+				{
+					int nNeighborLabel = nLabel[nNeighbor];
+					int nWeight = theWeights.get(nNeighborLabel, 0) + theContacts[i].get(nNeighbor, 0);
+
+					theWeights.put(nNeighborLabel, nWeight);
+
+					if(nWeight > nBestWeight || (nWeight == nBestWeight && nNeighborLabel < nBest))
+					{
+						nBest = nNeighborLabel;
+						nBestWeight = nWeight;
+					}
+				}
+
+				if(nBest != nLabel[i])
+				{
+					nLabel[i] = nBest;
+					bChanged = true;
+				}
+			}
+		}
+
+		return nLabel;
+	}
+
+	/**
+	 * Assign the communities to the logical processes, largest community first onto the process
+	 * with the lowest load so far
+	 */
+	private void packCommunities (int [] nLabel, int [] nLoad)
+	{
+		IntIntHashMap		theCommunityLoad;
+		IntIntHashMap		theCommunityProcess;
+		Integer []			theCommunities;
+
+		theCommunityLoad = new IntIntHashMap();
+
+		for(int i = 0; i < nLabel.length; i++)
+		{
+			if(m_Engine.resolveObjectByIndex(i) instanceof MobileNode)
+			{
+				theCommunityLoad.put(nLabel[i], theCommunityLoad.get(nLabel[i], 0) + nLoad[i]);
+			}
+		}
+
+		final IntIntHashMap theLoads = theCommunityLoad;
+		int [] nLabels = theCommunityLoad.keys();
+
+		theCommunities = new Integer[nLabels.length];
+
+		for(int i = 0; i < nLabels.length; i++)
+		{
+			theCommunities[i] = nLabels[i];
+		}
+
+		Arrays.sort(theCommunities, new Comparator<Integer>()
+		{
+			public int compare (Integer a, Integer b)
+			{
+				int nLoadA = theLoads.get(a, 0);
+				int nLoadB = theLoads.get(b, 0);
+
+				if(nLoadA != nLoadB)
+				{
+					return (nLoadA > nLoadB) ? -1 : 1;
+				}
+
+				return a.compareTo(b);
+			}
+		});
+
+		theCommunityProcess = new IntIntHashMap();
+
+		for(Integer nCommunity : theCommunities)
+		{
+			int nLightest = 0;
+
+			for(int i = 1; i < m_Processes.length; i++)
+			{
+				if(m_Processes[i].m_nLoad < m_Processes[nLightest].m_nLoad)
+				{
+					nLightest = i;
+				}
+			}
+
+			theCommunityProcess.put(nCommunity, nLightest);
+			m_Processes[nLightest].m_nLoad += theLoads.get(nCommunity, 0);
+		}
+
+		m_Partition = new int[nLabel.length];
+
+		for(int i = 0; i < nLabel.length; i++)
+		{
+			if(m_Engine.resolveObjectByIndex(i) instanceof MobileNode)
+			{
+				m_Partition[i] = theCommunityProcess.get(nLabel[i], -1);
+			}
+			else
+			{
+				m_Partition[i] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Run the simulation: partition it and then alternate between a parallel phase of all of the
+	 * logical processes up to the next global event and processing that global event
+	 * @return True if successful, false otherwise
+	 */
+	boolean run ()
+	{
+		ExecutorService		thePool;
+		boolean				bResult;
+
+		partition();
+
+		thePool = Executors.newFixedThreadPool(m_Processes.length);
+		bResult = true;
+
+		try
+		{
+			while(!m_Engine.isSimulationComplete())
+			{
+				Event theBound = m_GlobalQueue.peek();
+
+				if(!runPhase(thePool, theBound))
+				{
+					bResult = false;
+					break;
+				}
+
+				if(theBound != null)
+				{
+					m_Engine.processEvent(m_GlobalQueue.poll());
+				}
+				else if(isIdle())
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			thePool.shutdown();
+			finishRun();
+		}
+
+		return bResult;
+	}
+
+	/**
+	 * Let the logical processes work through their events before the bound on the pool
+	 * @param theBound The next global event, null if there is none
+	 * @return True if successful, false otherwise
+	 */
+	private boolean runPhase (ExecutorService thePool, Event theBound)
+	{
+		Vector<LogicalProcess>	theActive;
+		Vector<Future<Boolean>>	theRuns;
+		long					lEventID;
+		boolean					bResult;
+
+		theActive = new Vector<LogicalProcess>();
+
+		for(LogicalProcess theProcess : m_Processes)
+		{
+			if(theProcess.hasEventsBefore(theBound))
+			{
+				theProcess.m_Bound = theBound;
+				theActive.add(theProcess);
+			}
+		}
+
+		if(theActive.isEmpty())
+		{
+			return true;
+		}
+
+		lEventID = m_Engine.getEventID();
+		bResult = true;
+
+		if(theActive.size() == 1)
+		{
+			// Nothing to overlap with, skip the hand off to the pool
+			theActive.get(0).call();
+		}
+		else
+		{
+			theRuns = new Vector<Future<Boolean>>();
+
+			for(LogicalProcess theProcess : theActive)
+			{
+				theRuns.add(thePool.submit(theProcess));
+			}
+
+			for(Future<Boolean> theRun : theRuns)
+			{
+				try
+				{
+					bResult &= theRun.get();
+				}
+				catch (Exception e)
+				{
+					System.err.println("* Error: A logical process failed with " + e);
+					bResult = false;
+				}
+			}
+		}
+
+		if(m_Engine.getEventID() != lEventID)
+		{
+			System.err.println("** Warning: Events were created during a parallel phase, their order is not reproducible.");
+		}
+
+		for(Event theEvent : m_Misrouted)
+		{
+			addEvent(theEvent);
+		}
+
+		m_Misrouted.clear();
+		return bResult;
+	}
+
+	/**
+	 * @return True if none of the logical processes has an event left
+	 */
+	private boolean isIdle ()
+	{
+		for(LogicalProcess theProcess : m_Processes)
+		{
+			if(theProcess.m_Queue.size() > 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Move the events that are left back into the queue of the engine and bring the clock of the
+	 * engine up to the last event that was processed
+	 */
+	private void finishRun ()
+	{
+		for(LogicalProcess theProcess : m_Processes)
+		{
+			if(theProcess.m_fCurrentTime > m_Engine.m_fCurrentTime)
+			{
+				m_Engine.m_fCurrentTime = theProcess.m_fCurrentTime;
+			}
+
+			while(theProcess.m_Queue.size() > 0)
+			{
+				m_GlobalQueue.add(theProcess.m_Queue.poll());
+			}
+		}
+	}
+}
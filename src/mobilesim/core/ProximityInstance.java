@@ -32,6 +32,9 @@ public class ProximityInstance {
 	// When did it happen
 	Double		m_fInstanceTime;
 	
+	// Index of the sensed object in the simulation engine (-1 if it is not registered)
+	int			m_nIndex;
+	
 	/**
 	 * 
 	 */
@@ -42,6 +45,7 @@ public class ProximityInstance {
 		m_sMacAddress = "";
 		m_nSignalStrength = 0;
 		m_fInstanceTime = 0.0;
+		m_nIndex = -1;
 	}
 	
 	public void setType(int nType)
@@ -93,4 +97,21 @@ public class ProximityInstance {
 	{
 		return m_fInstanceTime;
 	}
+	
+	/**
+	 * Set the index of the sensed object (see SimObject.getIndex)
+	 * @param nIndex
+	 */
+	public void setIndex(int nIndex)
+	{
+		m_nIndex = nIndex;
+	}
+	
+	/**
+	 * @return The index of the sensed object, -1 if it was not registered when sensed
+	 */
+	public int getIndex()
+	{
+		return m_nIndex;
+	}
 }
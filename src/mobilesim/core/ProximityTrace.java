@@ -0,0 +1,203 @@
+package mobilesim.core;
+
+/**
+ * The parsed content of one or more proximity (Bluetooth) files kept as columns of primitives
+ * rather than as events. Each record is one line of the file: the sensing node, the time of the
+ * line (as read, without any time adjustment), the neighbor that was sensed and the signal
+ * strength. Node and neighbor names are held as codes into a token dictionary.
+ *
+ * Traces are built up by the parsers and appended to one another in file order so that the
+ * records always come out in exactly the same order as the lines of the files.
+ *
+ * @author Striegel
+ *
+ */
+public class ProximityTrace {
+
+	TokenDictionary		m_Dictionary;
+
+	int []				m_NodeCode;
+	double []			m_Time;
+	int []				m_NeighborCode;
+	int []				m_RSSI;
+	int					m_nRecords;
+
+	// Lines that did not hold a valid record
+	long				m_lIgnored;
+
+	/**
+	 * Create an empty trace whose names are coded with the given dictionary
+	 * @param theDictionary
+	 */
+	public ProximityTrace (TokenDictionary theDictionary)
+	{
+		this(theDictionary, 256);
+	}
+
+	public ProximityTrace (TokenDictionary theDictionary, int nCapacity)
+	{
+		m_Dictionary = theDictionary;
+
+		nCapacity = Math.max(nCapacity, 16);
+		m_NodeCode = new int[nCapacity];
+		m_Time = new double[nCapacity];
+		m_NeighborCode = new int[nCapacity];
+		m_RSSI = new int[nCapacity];
+		m_nRecords = 0;
+		m_lIgnored = 0;
+	}
+
+	public TokenDictionary getDictionary ()
+	{
+		return m_Dictionary;
+	}
+
+	/**
+	 * @return The number of valid records in the trace
+	 */
+	public int size ()
+	{
+		return m_nRecords;
+	}
+
+	/**
+	 * @return The number of lines that were skipped as they did not hold a valid record
+	 */
+	public long getIgnoredCount ()
+	{
+		return m_lIgnored;
+	}
+
+	public void addIgnored (long lCount)
+	{
+		m_lIgnored += lCount;
+	}
+
+	/**
+	 * Add a record to the end of the trace
+	 *
+	 * @param nNodeCode The code of the sensing node
+	 * @param fTime The time of the record (unadjusted)
+	 * @param nNeighborCode The code of the sensed neighbor
+	 * @param nRSSI The signal strength
+	 */
+	public void addRecord (int nNodeCode, double fTime, int nNeighborCode, int nRSSI)
+	{
+		if(m_nRecords == m_NodeCode.length)
+		{
+			ensureCapacity(2 * m_nRecords);
+		}
+
+		m_NodeCode[m_nRecords] = nNodeCode;
+		m_Time[m_nRecords] = fTime;
+		m_NeighborCode[m_nRecords] = nNeighborCode;
+		m_RSSI[m_nRecords] = nRSSI;
+		m_nRecords++;
+	}
+
+	private void ensureCapacity (int nCapacity)
+	{
+		int [] theNodes;
+		double [] theTimes;
+		int [] theNeighbors;
+		int [] theRSSI;
+
+		if(nCapacity <= m_NodeCode.length)
+		{
+			return;
+		}
+
+		theNodes = new int[nCapacity];
+		theTimes = new double[nCapacity];
+		theNeighbors = new int[nCapacity];
+		theRSSI = new int[nCapacity];
+
+		System.arraycopy(m_NodeCode, 0, theNodes, 0, m_nRecords);
+		System.arraycopy(m_Time, 0, theTimes, 0, m_nRecords);
+		System.arraycopy(m_NeighborCode, 0, theNeighbors, 0, m_nRecords);
+		System.arraycopy(m_RSSI, 0, theRSSI, 0, m_nRecords);
+
+		m_NodeCode = theNodes;
+		m_Time = theTimes;
+		m_NeighborCode = theNeighbors;
+		m_RSSI = theRSSI;
+	}
+
+	/**
+	 * Append all of the records of another trace after the records of this trace. The codes of
+	 * the other trace are translated into the dictionary of this trace in the order that the
+	 * other trace first saw them.
+	 *
+	 * @param theOther The trace to append
+	 */
+	public void append (ProximityTrace theOther)
+	{
+		int [] theCodeMap;
+
+		if(theOther.m_Dictionary == m_Dictionary)
+		{
+			theCodeMap = null;
+		}
+		else
+		{
+			theCodeMap = new int[theOther.m_Dictionary.size()];
+
+			for(int i = 0; i < theCodeMap.length; i++)
+			{
+				theCodeMap[i] = m_Dictionary.encode(theOther.m_Dictionary.getToken(i));
+			}
+		}
+
+		ensureCapacity(m_nRecords + theOther.m_nRecords);
+
+		for(int i = 0; i < theOther.m_nRecords; i++)
+		{
+			int nNode = theOther.m_NodeCode[i];
+			int nNeighbor = theOther.m_NeighborCode[i];
+
+			if(theCodeMap != null)
+			{
+				nNode = theCodeMap[nNode];
+				nNeighbor = theCodeMap[nNeighbor];
+			}
+
+			m_NodeCode[m_nRecords] = nNode;
+			m_Time[m_nRecords] = theOther.m_Time[i];
+			m_NeighborCode[m_nRecords] = nNeighbor;
+			m_RSSI[m_nRecords] = theOther.m_RSSI[i];
+			m_nRecords++;
+		}
+
+		m_lIgnored += theOther.m_lIgnored;
+	}
+
+	public int getNodeCode (int nRecord)
+	{
+		return m_NodeCode[nRecord];
+	}
+
+	public String getNode (int nRecord)
+	{
+		return m_Dictionary.getToken(m_NodeCode[nRecord]);
+	}
+
+	public double getTime (int nRecord)
+	{
+		return m_Time[nRecord];
+	}
+
+	public int getNeighborCode (int nRecord)
+	{
+		return m_NeighborCode[nRecord];
+	}
+
+	public String getNeighbor (int nRecord)
+	{
+		return m_Dictionary.getToken(m_NeighborCode[nRecord]);
+	}
+
+	public int getRSSI (int nRecord)
+	{
+		return m_RSSI[nRecord];
+	}
+}
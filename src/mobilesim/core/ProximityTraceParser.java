@@ -0,0 +1,237 @@
+package mobilesim.core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parse a proximity (Bluetooth) file in parallel. The file is memory mapped and cut into chunks
+ * that always end on a line break. The chunks are parsed on a fork-join pool, each into its own
+ * small ProximityTrace, and the traces are then appended back together in file order. The final
+ * trace therefore holds the records in exactly the order of the lines in the file regardless of
+ * how the work was split up or scheduled.
+ *
+ * Lines are split the same way as BufferedReader.readLine (line feed, carriage return or both)
+ * and parsed the same way as DataLoaderBluetooth.processLine_RipCSV.
+ *
+ * @author Striegel
+ *
+ */
+public class ProximityTraceParser extends RecursiveTask<ProximityTrace> {
+
+	private static final long serialVersionUID = 1L;
+
+	// Chunks smaller than this are parsed directly rather than split further
+	public static final int		PARSE_CHUNK_SIZE = 1 << 20;
+
+	// Largest region of the file that is mapped at one time
+	public static final int		MAX_MAP_SIZE = 1 << 30;
+
+	ByteBuffer		m_Buffer;
+	int				m_nStart;
+	int				m_nEnd;
+
+	ProximityTraceParser (ByteBuffer theBuffer, int nStart, int nEnd)
+	{
+		m_Buffer = theBuffer;
+		m_nStart = nStart;
+		m_nEnd = nEnd;
+	}
+
+	/**
+	 * Parse an entire proximity file into a trace
+	 *
+	 * @param sFile The full path of the file
+	 * @param theDictionary The dictionary to code the node names with
+	 * @param thePool The pool to parse the chunks on
+	 * @return The trace of the records in the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ProximityTrace parseFile (String sFile, TokenDictionary theDictionary, ForkJoinPool thePool) throws IOException
+	{
+		ProximityTrace		theTrace;
+		RandomAccessFile	theFile;
+		FileChannel			theChannel;
+		long				lSize;
+		long				lOffset;
+
+		theTrace = new ProximityTrace(theDictionary);
+		theFile = new RandomAccessFile(sFile, "r");
+
+		try
+		{
+			theChannel = theFile.getChannel();
+			lSize = theChannel.size();
+			lOffset = 0;
+
+			// Really big files are mapped a region at a time with each region ending on a line break
+			while(lOffset < lSize)
+			{
+				MappedByteBuffer	theBuffer;
+				int					nLength;
+				int					nUsed;
+
+				nLength = (int) Math.min(lSize - lOffset, MAX_MAP_SIZE);
+				theBuffer = theChannel.map(FileChannel.MapMode.READ_ONLY, lOffset, nLength);
+
+				if(lOffset + nLength < lSize)
+				{
+					nUsed = nLength;
+
+					while(nUsed > 0 && theBuffer.get(nUsed - 1) != '\n')
+					{
+						nUsed--;
+					}
+
+					if(nUsed == 0)
+					{
+						throw new IOException("Line longer than " + MAX_MAP_SIZE + " bytes in " + sFile);
+					}
+				}
+				else
+				{
+					nUsed = nLength;
+				}
+
+				theTrace.append(thePool.invoke(new ProximityTraceParser(theBuffer, 0, nUsed)));
+				lOffset += nUsed;
+			}
+		}
+		finally
+		{
+			theFile.close();
+		}
+
+		return theTrace;
+	}
+
+	protected ProximityTrace compute ()
+	{
+		int		nSplit;
+
+		if(m_nEnd - m_nStart <= PARSE_CHUNK_SIZE)
+		{
+			return parseChunk();
+		}
+
+		// Split just after the first line feed past the middle
+		nSplit = m_nStart + (m_nEnd - m_nStart) / 2;
+
+		while(nSplit < m_nEnd && m_Buffer.get(nSplit - 1) != '\n')
+		{
+			nSplit++;
+		}
+
+		if(nSplit >= m_nEnd)
+		{
+			return parseChunk();
+		}
+
+		ProximityTraceParser theFirst = new ProximityTraceParser(m_Buffer, m_nStart, nSplit);
+		ProximityTraceParser theSecond = new ProximityTraceParser(m_Buffer, nSplit, m_nEnd);
+
+		theFirst.fork();
+
+		ProximityTrace theSecondTrace = theSecond.compute();
+		ProximityTrace theFirstTrace = theFirst.join();
+
+		theFirstTrace.append(theSecondTrace);
+		return theFirstTrace;
+	}
+
+	/**
+	 * Parse every line in the chunk into a trace with its own dictionary
+	 * @return
+	 */
+	private ProximityTrace parseChunk ()
+	{
+		ProximityTrace		theTrace;
+		TokenDictionary		theDictionary;
+		FieldCursor			theCursor;
+		int					nPos;
+
+		theDictionary = new TokenDictionary();
+		theTrace = new ProximityTrace(theDictionary, (m_nEnd - m_nStart) / 48);
+		theCursor = new FieldCursor();
+
+		nPos = m_nStart;
+
+		while(nPos < m_nEnd)
+		{
+			int		nLineEnd;
+			byte	b;
+
+			nLineEnd = nPos;
+
+			while(nLineEnd < m_nEnd && (b = m_Buffer.get(nLineEnd)) != '\n' && b != '\r')
+			{
+				nLineEnd++;
+			}
+
+			if(!theCursor.reset(m_Buffer, nPos, nLineEnd))
+			{
+				// Not plain ASCII, decode it the same way that a FileReader would
+				byte [] theBytes = new byte[nLineEnd - nPos];
+
+				for(int i = 0; i < theBytes.length; i++)
+				{
+					theBytes[i] = m_Buffer.get(nPos + i);
+				}
+
+				theCursor.reset(new String(theBytes, Charset.defaultCharset()));
+			}
+
+			parseRecord(theCursor, theDictionary, theTrace);
+
+			// Step over the line break, a carriage return and line feed together count as one
+			nPos = nLineEnd + 1;
+
+			if(nLineEnd < m_nEnd && m_Buffer.get(nLineEnd) == '\r' && nPos < m_nEnd && m_Buffer.get(nPos) == '\n')
+			{
+				nPos++;
+			}
+		}
+
+		return theTrace;
+	}
+
+	/**
+	 * Parse the line held by the cursor into a record
+	 *
+	 * @param theCursor The cursor holding the line
+	 * @param theDictionary The dictionary to code the names with
+	 * @param theTrace The trace to add the record to
+	 */
+	public static void parseRecord (FieldCursor theCursor, TokenDictionary theDictionary, ProximityTrace theTrace)
+	{
+		// File format
+		//     Node, Time (UTC), Neighbor, Mac Addr, RSSI
+		int		nNode;
+		double	fTime;
+		int		nNeighbor;
+		int		nRSSI;
+
+		if(theCursor.countFields() < 5)
+		{
+			theTrace.addIgnored(1);
+			return;
+		}
+
+		theCursor.nextField();
+		nNode = theCursor.getTokenCode(theDictionary);
+		theCursor.nextField();
+		fTime = theCursor.parseDouble();
+		theCursor.nextField();
+		nNeighbor = theCursor.getTokenCode(theDictionary);
+
+		// Skip over the MAC address, a malformed RSSI is treated as zero
+		theCursor.skipFields(2);
+		nRSSI = theCursor.parseInt(0);
+
+		theTrace.addRecord(nNode, fTime, nNeighbor, nRSSI);
+	}
+}
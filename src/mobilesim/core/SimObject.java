@@ -17,6 +17,10 @@ public class SimObject {
 	
 	private long			m_lObjectID;  // object ID
 	
+	private int				m_nIndex;     // dense index assigned when registered with the engine, -1 if not registered
+	
+	private SimulationContext	m_Context;	// the simulation that the object belongs to
+	
 	/**
 	 * Constructor 
 	 */
@@ -24,8 +28,26 @@ public class SimObject {
 	{
 		m_sName = "";
 		m_Debug = null;
-		m_lObjectID = SimulationEngine.theEngine.getObjectID();
-		SimulationEngine.theEngine.incrementObjectID();
+		m_nIndex = -1;
+		m_Context = SimulationContext.getCurrent();
+		m_lObjectID = m_Context.getEngine().getObjectID();
+		m_Context.getEngine().incrementObjectID();
+	}
+	
+	/**
+	 * @return The simulation context that the object was created in
+	 */
+	public SimulationContext getContext ()
+	{
+		return m_Context;
+	}
+	
+	/**
+	 * @return The engine of the simulation that the object belongs to
+	 */
+	public SimulationEngine getEngine ()
+	{
+		return m_Context.getEngine();
 	}
 	
 	/**
@@ -48,6 +70,38 @@ public class SimObject {
 		return m_sName;
 	}
 	
+	/**
+	 * Retrieve the dense index of this object in the registry of the simulation engine. Indices
+	 * run from zero in the order that the objects were registered.
+	 * 
+	 * @return The index, -1 if the object is not registered
+	 */
+	public int getIndex ()
+	{
+		return m_nIndex;
+	}
+	
+	/**
+	 * Set by the simulation engine when the object is registered (or dropped)
+	 * @param nIndex
+	 */
+	void setIndex (int nIndex)
+	{
+		m_nIndex = nIndex;
+	}
+	
+	/**
+	 * Give the object a debug setting of its own rather than the general one of the logger
+	 * @param theSetting The setting, null to go back to the general setting
+	 */
+	public void setDebugSetting (DebugSetting theSetting)
+	{
+		m_Debug = theSetting;
+	}
+	
+	/**
+	 * @return The debug setting of the object, null if it goes by the general setting
+	 */
 	public DebugSetting getDebugSetting ()
 	{
 		return m_Debug;
@@ -127,11 +181,6 @@ public class SimObject {
 		return summarize(bFieldsOnly, theWriter);
 	}
 	
-	public boolean summarizeBase (boolean bFieldsOnly, BufferedWriter theWriter, String sField)
-	{
-		return summarize(bFieldsOnly, theWriter, sField);
-	}
-	
 	// Override this function
 	public boolean summarize ()
 	{
@@ -142,9 +191,4 @@ public class SimObject {
 	{
 		return true;
 	}
-	
-	public boolean summarize (boolean bFieldsOnly, BufferedWriter theWriter, String sField)
-	{
-		return true;
-	}
 }
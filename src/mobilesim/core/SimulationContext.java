@@ -0,0 +1,161 @@
+package mobilesim.core;
+
+import mobilesim.console.DebugLogger;
+
+/**
+ * A simulation context owns everything that used to be global to a simulation: the engine (and
+ * with it the event, object and content counters), the shared data loaders and the logger. Each
+ * context is completely independent of the others so that several simulations can run at the
+ * same time in one process, one per thread.
+ *
+ * Objects are bound to a context when they are created. SimObjects (and everything derived from
+ * them such as nodes and loaders) take the context that is current on the creating thread and keep
+ * it, events draw their IDs from the engine of the current context. A thread that is not running
+ * a simulation of its own uses the default context, which is the one behind the classic
+ * SimulationEngine.theEngine, DataLoaderBluetooth.theLoader, DataLoaderNetworkTraffic.theLoader and
+ * DebugLogger.theLogger. While an engine runs its simulation it is made the current context of
+ * the running thread.
+ *
+ * @author Striegel
+ *
+ */
+public class SimulationContext {
+
+	// The context each thread is currently working in, null means the default context
+	private static final ThreadLocal<SimulationContext>	s_Current = new ThreadLocal<SimulationContext>();
+
+	SimulationEngine			m_Engine;
+	DataLoaderBluetooth			m_Loader_Bluetooth;
+	DataLoaderNetworkTraffic	m_Loader_NetworkTraffic;
+	DebugLogger					m_Logger;
+
+	/**
+	 * Create a new context with its own engine, loaders and logger
+	 */
+	public SimulationContext ()
+	{
+		SimulationContext thePrevious;
+
+		m_Engine = new SimulationEngine();
+		m_Engine.m_Context = this;
+		m_Logger = new DebugLogger();
+
+		// The loaders are objects of the simulation themselves and need to bind to this context
+		thePrevious = setCurrent(this);
+
+		try
+		{
+			m_Loader_Bluetooth = new DataLoaderBluetooth();
+			m_Loader_NetworkTraffic = new DataLoaderNetworkTraffic();
+		}
+		finally
+		{
+			setCurrent(thePrevious);
+		}
+	}
+
+	/**
+	 * Holder for the default context, created the first time that it is needed
+	 */
+	private static class DefaultContext {
+		static final SimulationContext	theContext = new SimulationContext();
+		
+		static
+		{
+			// The classic singletons are simply the members of the default context
+			SimulationEngine.theEngine = theContext.m_Engine;
+			DataLoaderBluetooth.theLoader = theContext.m_Loader_Bluetooth;
+			DataLoaderNetworkTraffic.theLoader = theContext.m_Loader_NetworkTraffic;
+			DebugLogger.theLogger = theContext.m_Logger;
+		}
+	}
+
+	/**
+	 * @return The context that is used by threads that have not set one of their own
+	 */
+	public static SimulationContext getDefault ()
+	{
+		return DefaultContext.theContext;
+	}
+
+	/**
+	 * @return The context of the calling thread
+	 */
+	public static SimulationContext getCurrent ()
+	{
+		SimulationContext theContext = s_Current.get();
+
+		if(theContext == null)
+		{
+			return getDefault();
+		}
+
+		return theContext;
+	}
+
+	/**
+	 * Make a context the current one for the calling thread. Everything created on the thread from
+	 * now on belongs to that context.
+	 *
+	 * @param theContext The new context, null to go back to the default context
+	 * @return The context that was current before (null for the default context) so that it can
+	 *         be restored afterwards
+	 */
+	public static SimulationContext setCurrent (SimulationContext theContext)
+	{
+		SimulationContext thePrevious = s_Current.get();
+
+		if(theContext == null)
+		{
+			s_Current.remove();
+		}
+		else
+		{
+			s_Current.set(theContext);
+		}
+
+		return thePrevious;
+	}
+
+	public SimulationEngine getEngine ()
+	{
+		return m_Engine;
+	}
+
+	public DebugLogger getLogger ()
+	{
+		return m_Logger;
+	}
+
+	public DataLoaderBluetooth getLoader_Bluetooth ()
+	{
+		return m_Loader_Bluetooth;
+	}
+
+	/**
+	 * Replace the shared Bluetooth loader (e.g. with a DataLoaderBluetoothBinary)
+	 * @param theLoader
+	 */
+	public void setLoader_Bluetooth (DataLoaderBluetooth theLoader)
+	{
+		m_Loader_Bluetooth = theLoader;
+	}
+
+	/**
+	 * Retrieve the shared traffic loader, the nodes pull the overall hourly traffic from it
+	 * @return
+	 */
+	public DataLoaderNetworkTraffic getLoader_NetworkTraffic ()
+	{
+		return m_Loader_NetworkTraffic;
+	}
+
+	/**
+	 * Replace the shared traffic loader (e.g. with a DataLoaderNetworkTrafficBinary)
+	 * @param theLoader
+	 */
+	public void setLoader_NetworkTraffic (DataLoaderNetworkTraffic theLoader)
+	{
+		m_Loader_NetworkTraffic = theLoader;
+	}
+}
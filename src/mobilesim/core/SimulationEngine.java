@@ -1,26 +1,41 @@
 package mobilesim.core;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 
 import mobilesim.console.DebugLogger;
+import mobilesim.console.DebugSetting;
+import mobilesim.statistics.ResultSink;
+import mobilesim.statistics.ResultSinkCSV;
 
 /**
  * The SimulationEngine class is responsible for making the overall mobile simulation
  * go. It serves as the central rendezvous point for most objects and is the reference 
- * point for the current simulation time. Note that the SimulationEngine is not 
- * multi-threaded nor will it ever be as the intention is to preserve precise computation
- * order. 
+ * point for the current simulation time. By default the SimulationEngine is not 
+ * multi-threaded as the intention is to preserve precise computation order. Independent 
+ * simulations can still run side by side, each with its own engine inside its own 
+ * SimulationContext. A single simulation can opt in to a conservative parallel mode 
+ * (see setParallelProcesses) that partitions the mobile nodes and only overlaps events
+ * that cannot influence each other, which preserves the results of the sequential order.
  * 
  * @author Striegel
  */
 public class SimulationEngine {
 
-	public static SimulationEngine	theEngine = new SimulationEngine();
+	// The engine of the default context (see SimulationContext), set when that context is created
+	public static SimulationEngine	theEngine;
 	
-	PriorityQueue<Event>			m_EventQueue;    // event queue ordered by time
+	// The context that owns this engine
+	SimulationContext				m_Context;
 	
-	Hashtable<String, SimObject>	m_SimObjects;    // each sim object should have a unique string name
+	EventQueue						m_EventQueue;    // event queue ordered by time
+	
+	HashMap<String, SimObject>		m_SimObjects;    // each sim object should have a unique string name
+	
+	// Registered objects by their dense index (see SimObject.getIndex), in registration order
+	SimObject []					m_SimObjectTable;
+	int								m_nSimObjects;
 	
 	String							m_sCurrentDate;  // current simulation date, a day-by-day simulation
 	
@@ -29,48 +44,131 @@ public class SimulationEngine {
 	long							m_lNextEventID;  
 	// A unique enumerator for objects generated over the course of the simulation
 	long							m_lNextObjectID;     
+	// A dense enumerator for the contents created over the course of the simulation, the
+	// logical processes of a parallel run create contents at the same time
+	AtomicInteger					m_nNextContentIndex;
 	
 	boolean							m_bSimulationComplete;
 	
 	int								m_nCountMobileNodes;
 	
+	// Default filters for the content exchange, each engine can be given its own
 	public static final int FILTER_RSSI = -100;
 	public static final int FILTER_HOPS = 4000;
 	public static final double FILTER_LACY = 120;
 	
+	// The metrics of each mobile node that go into the results, in the order they are written
+	public static final String [] RESULT_METRICS = {"PropagRatio", "TotalPropVol", "VolumeRatio"};
+	
+	// Minimum signal strength, maximum number of hops and maximum latency (in mins) for a copy
+	int								m_nFilter_RSSI;
+	int								m_nFilter_Hops;
+	double							m_fFilter_Latency;
+	
+	// Where the results go, the file for a field is (path)(field)/(date).csv
+	String							m_sOutputPath;
+	
+	// How the results are written out (CSV files unless replaced)
+	ResultSink						m_ResultSink;
+	
+	// Number of logical processes to run the simulation on, one means the sequential engine
+	int								m_nParallelProcesses;
+	
+	// The parallel run in progress, null for the sequential engine
+	ParallelSimulation				m_Parallel;
+	
 	// Simulation duration in days
 	public static int SIMULATION_DURATION = 1;
+	
+	// Only after the statics above as the default context already creates an engine and loaders
+	static
+	{
+		SimulationContext.getDefault();
+	}
 
 	/**
 	 * Constructor
 	 */
 	SimulationEngine ()
 	{
-		m_EventQueue = new PriorityQueue<Event>();	
-		m_SimObjects = new Hashtable<String, SimObject>();
+		m_EventQueue = new EventQueueTimingWheel();	
+		m_SimObjects = new HashMap<String, SimObject>();
+		m_SimObjectTable = new SimObject[256];
+		m_nSimObjects = 0;
 		m_sCurrentDate = "";
 		m_fCurrentTime = 0.0;
 		m_lNextEventID = 0;
 		m_lNextObjectID = 0;
+		m_nNextContentIndex = new AtomicInteger(0);
 		m_bSimulationComplete = false;
 		m_nCountMobileNodes = 0;
+		
+		m_nFilter_RSSI = FILTER_RSSI;
+		m_nFilter_Hops = FILTER_HOPS;
+		m_fFilter_Latency = FILTER_LACY;
+		m_sOutputPath = "./TestOut" + SIMULATION_DURATION + "/";
+		m_nParallelProcesses = 1;
+		m_Parallel = null;
+		m_ResultSink = new ResultSinkCSV();
 	}
 	
 	/**
-	 * Reset the simulation engine to initial state
+	 * Reset the simulation engine to initial state. The filters, the output path and the
+	 * number of parallel processes are settings rather than state and are kept.
 	 */
 	public void resetSimulation ()
 	{
 		m_EventQueue.clear();
+		
+		for(int i = 0; i < m_nSimObjects; i++)
+		{
+			m_SimObjectTable[i].setIndex(-1);
+			m_SimObjectTable[i] = null;
+		}
+		
 		m_SimObjects.clear();
+		m_nSimObjects = 0;
 		m_sCurrentDate = "";
         m_fCurrentTime = 0.0;
 		m_lNextEventID = 0;
 		m_lNextObjectID = 0;
+		m_nNextContentIndex.set(0);
 		m_bSimulationComplete = false;
 		m_nCountMobileNodes = 0;
 	}
 	
+	/**
+	 * Swap in a different event queue implementation. This may only be done while the 
+	 * current queue is empty (before any events are loaded or after a reset).
+	 * @param theQueue The new queue (e.g. EventQueueHeap, EventQueueCalendar or EventQueueTimingWheel)
+	 * @return True if successful, false otherwise
+	 */
+	public boolean setEventQueue (EventQueue theQueue)
+	{
+		if(theQueue == null || theQueue.size() > 0)
+		{
+			System.err.println("* Error: The event queue can only be replaced with an empty queue.");
+			return false;
+		}
+		
+		if(m_EventQueue.size() > 0)
+		{
+			System.err.println("* Error: Unable to replace the event queue, there are " + m_EventQueue.size() + " events pending.");
+			return false;
+		}
+		
+		m_EventQueue = theQueue;
+		return true;
+	}
+	
+	/**
+	 * @return The event queue currently used by the engine
+	 */
+	public EventQueue getEventQueue ()
+	{
+		return m_EventQueue;
+	}
+	
 	/**
 	 * Retrieve the enumerated ID for the next event. Make sure to increment the
 	 * event ID when using this particular function just after invoking this call via
@@ -90,6 +188,21 @@ public class SimulationEngine {
 		m_lNextEventID++;
 	}
 
+	/**
+	 * Reserve a block of consecutive event IDs for events that will be created later on (e.g. by
+	 * a data loader reading its files in windows) but should be ordered as if they were created now
+	 * @param lCount The number of IDs to reserve
+	 * @return The first ID of the reserved block
+	 */
+	public long reserveEventIDs (long lCount)
+	{
+		long lFirst;
+		
+		lFirst = m_lNextEventID;
+		m_lNextEventID += lCount;
+		return lFirst;
+	}
+
 	/**
 	 * Retrieve the enumerated ID for the next object. Make sure to increment the 
 	 * object ID when using this particular function just after invoking this call via
@@ -109,15 +222,128 @@ public class SimulationEngine {
 		m_lNextObjectID++;
 	}
 	
+	/**
+	 * @param nRSSI The minimum signal strength of a neighbor to exchange content with
+	 */
+	public void setFilter_RSSI (int nRSSI)
+	{
+		m_nFilter_RSSI = nRSSI;
+	}
+	
+	public int getFilter_RSSI ()
+	{
+		return m_nFilter_RSSI;
+	}
+	
+	/**
+	 * @param nHops The maximum number of hops that a content may travel
+	 */
+	public void setFilter_Hops (int nHops)
+	{
+		m_nFilter_Hops = nHops;
+	}
+	
+	public int getFilter_Hops ()
+	{
+		return m_nFilter_Hops;
+	}
+	
+	/**
+	 * @param fLatency The maximum age (in mins) of a content that is still copied
+	 */
+	public void setFilter_Latency (double fLatency)
+	{
+		m_fFilter_Latency = fLatency;
+	}
+	
+	public double getFilter_Latency ()
+	{
+		return m_fFilter_Latency;
+	}
+	
+	/**
+	 * Set the directory where the results are written to
+	 * @param sPath The directory (ending in a separator)
+	 */
+	public void setOutputPath (String sPath)
+	{
+		m_sOutputPath = sPath;
+	}
+	
+	public String getOutputPath ()
+	{
+		return m_sOutputPath;
+	}
+	
+	/**
+	 * Run the simulation on several logical processes. The mobile nodes are partitioned by the
+	 * communities of their contact graph, each partition processes its own events on a thread of
+	 * its own and the partitions only synchronize at the contacts (and other events) that cross
+	 * partitions. The results are the same as for the sequential engine, which pays off for large
+	 * and loosely coupled populations. The handlers of node events may then only schedule events 
+	 * for their own node and must not create new events.
+	 * @param nProcesses The number of logical processes, one (the default) for the sequential engine
+	 * @return True if successful, false otherwise
+	 */
+	public boolean setParallelProcesses (int nProcesses)
+	{
+		if(nProcesses < 1)
+		{
+			System.err.println("* Error: The number of parallel processes must be at least one, not " + nProcesses);
+			return false;
+		}
+		
+		m_nParallelProcesses = nProcesses;
+		return true;
+	}
+	
+	public int getParallelProcesses ()
+	{
+		return m_nParallelProcesses;
+	}
+	
+	/**
+	 * Set how the results of the mobile nodes are written out at the end of a simulation, e.g. 
+	 * a ResultSinkBinary rather than the default CSV files
+	 * @param theSink The sink for the results
+	 * @return True if successful, false otherwise
+	 */
+	public boolean setResultSink (ResultSink theSink)
+	{
+		if(theSink == null)
+		{
+			System.err.println("* Error: The result sink cannot be null.");
+			return false;
+		}
+		
+		m_ResultSink = theSink;
+		return true;
+	}
+	
+	public ResultSink getResultSink ()
+	{
+		return m_ResultSink;
+	}
+	
+	/**
+	 * Hand out the next dense content index. Indices start at zero and are never reused until the
+	 * simulation is reset, which makes them suitable as positions in a ContentSummary.
+	 * @return The index for a newly created content
+	 */
+	public int allocateContentIndex ()
+	{
+		return m_nNextContentIndex.getAndIncrement();
+	}
+	
 	/**
 	 * Initialize the registered simulation objects
 	 * @return
 	 */
 	public boolean initializeRegisteredObjects ()
 	{
-		for(String sName : m_SimObjects.keySet())
+		for(int i = 0; i < m_nSimObjects; i++)
 		{
-			SimObject o = m_SimObjects.get(sName);
+			SimObject o = m_SimObjectTable[i];
 			try
 			{
 				o.initializeBase();
@@ -134,11 +360,36 @@ public class SimulationEngine {
 	/**
 	 * @return
 	 */
-	public Hashtable<String, SimObject> retrieveSimObjects ()
+	public Map<String, SimObject> retrieveSimObjects ()
 	{
 		return m_SimObjects;
 	}
 	
+	/**
+	 * Retrieve the number of registered simulation objects, the valid indices run from zero up
+	 * to (but not including) this number
+	 * @return
+	 */
+	public int getNumberSimObjects ()
+	{
+		return m_nSimObjects;
+	}
+	
+	/**
+	 * Retrieve a registered object by its dense index
+	 * @param nIndex Index of the object (see SimObject.getIndex)
+	 * @return The object if the index is valid, otherwise null
+	 */
+	public SimObject resolveObjectByIndex (int nIndex)
+	{
+		if(nIndex < 0 || nIndex >= m_nSimObjects)
+		{
+			return null;
+		}
+		
+		return m_SimObjectTable[nIndex];
+	}
+	
 	/**
 	 * Retrieve the number of registered mobile nodes (socs devices)
 	 * @return
@@ -156,12 +407,7 @@ public class SimulationEngine {
 	 */
 	public SimObject resolveObjectByProperName (String sName)
 	{
-		if(m_SimObjects.containsKey(sName))
-		{
-			return m_SimObjects.get(sName);
-		}
-
-		return null;
+		return m_SimObjects.get(sName);
 	}
 	
 	/**
@@ -170,10 +416,22 @@ public class SimulationEngine {
 	 */
 	public boolean registerSimObject (String sName, SimObject theObj)
 	{
-		// TODO: Check for uniqueness first
-		if(!m_SimObjects.keySet().contains(sName) && !m_SimObjects.values().contains(theObj))
+		// An object is registered if it holds an index, no need to search through the objects
+		boolean bRegistered = (resolveObjectByIndex(theObj.getIndex()) == theObj);
+		
+		if(!m_SimObjects.containsKey(sName) && !bRegistered)
 		{
 			m_SimObjects.put(sName, theObj);
+			
+			if(m_nSimObjects == m_SimObjectTable.length)
+			{
+				m_SimObjectTable = Arrays.copyOf(m_SimObjectTable, 2 * m_nSimObjects);
+			}
+			
+			theObj.setIndex(m_nSimObjects);
+			m_SimObjectTable[m_nSimObjects] = theObj;
+			m_nSimObjects++;
+			
 			if(sName.contains("socs"))
 			{
 				m_nCountMobileNodes++;
@@ -183,12 +441,12 @@ public class SimulationEngine {
 		} 
 		else
 		{
-			if(m_SimObjects.keySet().contains(sName)) 
+			if(m_SimObjects.containsKey(sName)) 
 			{
 				System.err.println("*** Name " + sName + " is already used by another registered object.");
 			}
 			
-			if(m_SimObjects.values().contains(theObj))
+			if(bRegistered)
 			{
 				System.err.println("*** SimObject you tried to add already been registered.");
 			}
@@ -218,7 +476,11 @@ public class SimulationEngine {
 	 */
 	private void setTime (Double fNewTime)
 	{
-		m_fCurrentTime = fNewTime;
+		// Inside of a parallel phase each logical process has a clock of its own
+		if(m_Parallel == null || !m_Parallel.setTime(fNewTime))
+		{
+			m_fCurrentTime = fNewTime;
+		}
 	}
 	
 	/**
@@ -226,6 +488,16 @@ public class SimulationEngine {
 	 */
 	public Double getTime ()
 	{
+		if(m_Parallel != null)
+		{
+			Double fTime = m_Parallel.getTime();
+			
+			if(fTime != null)
+			{
+				return fTime;
+			}
+		}
+		
 		return m_fCurrentTime;
 	}
 	
@@ -235,7 +507,7 @@ public class SimulationEngine {
 	 */
 	public String getFormattedTime ()
 	{
-		return m_fCurrentTime.toString();
+		return getTime().toString();
 	}
 	
 	/**
@@ -248,6 +520,11 @@ public class SimulationEngine {
 		if(theAddEvent != null && theAddEvent instanceof Event) 
 		{
 			// Figure out where this goes 		
+			if(m_Parallel != null)
+			{
+				return m_Parallel.addEvent(theAddEvent);
+			}
+			
 			m_EventQueue.add(theAddEvent);
 			return true;
 		} 
@@ -263,15 +540,49 @@ public class SimulationEngine {
 		// TODO: Add in some sanity checking that ensures we are making forward progress and
 		//       perhaps code regarding an overall simulation bounds
 		
-		while(m_EventQueue.size() > 0)
+		// Anything created while processing the events belongs to this simulation
+		SimulationContext thePrevious = SimulationContext.setCurrent(m_Context);
+		
+		try
 		{
-			processNextEvent();
-			if(isSimulationComplete())
+			if(m_nParallelProcesses > 1)
 			{
-				break;
+				m_Parallel = new ParallelSimulation(this, m_nParallelProcesses);
+				
+				try
+				{
+					m_Parallel.run();
+				}
+				finally
+				{
+					m_Parallel = null;
+				}
+			}
+			else
+			{
+				while(m_EventQueue.size() > 0)
+				{
+					processNextEvent();
+					if(isSimulationComplete())
+					{
+						break;
+					}
+				}	
 			}
-		}	
-		finishSimulation();
+			finishSimulation();
+		}
+		finally
+		{
+			SimulationContext.setCurrent(thePrevious);
+		}
+	}
+	
+	/**
+	 * @return The context that owns this engine
+	 */
+	public SimulationContext getContext ()
+	{
+		return m_Context;
 	}
 	
 	/**
@@ -284,9 +595,9 @@ public class SimulationEngine {
 		
 		if(m_EventQueue.size() == 0)
 		{
-			DebugLogger.theLogger.logInfo_Error("*** Function: SimulationEngine.processEvent");			
-			DebugLogger.theLogger.logInfo_Error("**  Warning: The queue is empty, not processing an event");
-			DebugLogger.theLogger.logInfo_Error("*   Time = " + m_fCurrentTime.toString());
+			m_Context.getLogger().logInfo_Error("*** Function: SimulationEngine.processEvent");			
+			m_Context.getLogger().logInfo_Error("**  Warning: The queue is empty, not processing an event");
+			m_Context.getLogger().logInfo_Error("*   Time = " + m_fCurrentTime.toString());
 			return false;
 		}
 		
@@ -295,13 +606,30 @@ public class SimulationEngine {
 		
 		if(nextEvent == null)
 		{
-			DebugLogger.theLogger.logInfo_Error("*** Function: SimulationEngine.processEvent.");
-			DebugLogger.theLogger.logInfo_Error("**  Error: Somehow I got a null event from the event queue.");
-			DebugLogger.theLogger.logInfo_Error("*   Time = " + m_fCurrentTime.toString());
+			m_Context.getLogger().logInfo_Error("*** Function: SimulationEngine.processEvent.");
+			m_Context.getLogger().logInfo_Error("**  Error: Somehow I got a null event from the event queue.");
+			m_Context.getLogger().logInfo_Error("*   Time = " + m_fCurrentTime.toString());
 			return false;
 		}
 		
-		DebugLogger.theLogger.logInfo(DebugLogger.SIM_DEBUG_LEVEL_EVENTS, "t = " + getFormattedTime() + ": Event of type " + nextEvent.getSummary_Simple(), null);
+		return processEvent(nextEvent);
+	}
+	
+	/**
+	 * Process an event that is due, either from the queue of the engine or from a logical 
+	 * process of a parallel run
+	 * @param nextEvent
+	 * @return
+	 */
+	boolean processEvent (Event nextEvent)
+	{
+		DebugSetting theDebug = (nextEvent.getSimObject() != null) ? nextEvent.getSimObject().getDebugSetting() : null;
+		
+		// Only build the message when the events are actually being traced
+		if(m_Context.getLogger().isEnabled(DebugLogger.SIM_DEBUG_LEVEL_EVENTS, theDebug))
+		{
+			m_Context.getLogger().logInfo(DebugLogger.SIM_DEBUG_LEVEL_EVENTS, "t = " + getFormattedTime() + ": Event of type " + nextEvent.getSummary_Simple(), theDebug);
+		}
 		
 		// Change the time to the new time as nothing has occurred between whatever time was before
 		// and when time is now
@@ -350,6 +678,8 @@ public class SimulationEngine {
 		System.out.println();
 		//summarizeRegisteredObjects();
 		summarizeMobileNodes();
+		
+		m_Context.getLogger().flushLogFiles();
 		return true;
 	}
 		
@@ -359,80 +689,68 @@ public class SimulationEngine {
 	}
 	
 	/**
-	 * Summarize the statistics of mobile nodes
+	 * Write the finalized statistics of the mobile nodes to the opened result sink and close it
 	 */
-	public void summarizeMobileNodes ()
+	private void writeMobileNodeResults ()
 	{
-		for(String sName : m_SimObjects.keySet())
-		{
-			SimObject o = m_SimObjects.get(sName);
-		    if(o instanceof MobileNode)
-		    {
-		    	((MobileNode) o).finalizePropagationStats();
-		    }
-		}
+		double []	fValues;
 		
-		File			file;
-		BufferedWriter	bw;
-		FileWriter		fw;
-		
-		String [] statsNames = {"PropagRatio", "TotalPropVol", "VolumeRatio"};
+		fValues = new double[MobileNode.SLOTS_MOBILENODE_PROPAGATION_EVAL];
 		
-		for(int i = 0; i < statsNames.length; i++)
+		// One pass over the nodes, every metric of a node goes out at once
+		for(int j = 0; j < m_nSimObjects; j++)
 		{
-			String sField = statsNames[i];
-			try 
-			{
-			    file = new File("./TestOut" + SIMULATION_DURATION + "/" + sField + "/" + m_sCurrentDate + ".csv");
-				
-				// if file does not exists, then create it
-				if(!file.exists())
-				{
-					file.createNewFile();
-				}
-				
-				fw = new FileWriter(file.getAbsoluteFile());
-				bw = new BufferedWriter(fw);
-			}
-			catch(IOException e)
+			SimObject o = m_SimObjectTable[j];
+			
+			if(!(o instanceof MobileNode))
 			{
-				bw = null;
-				System.err.println(e);
+				continue;
 			}
 			
-			for(String sName : m_SimObjects.keySet())
+			for(int i = 0; i < RESULT_METRICS.length; i++)
 			{
-				SimObject o = m_SimObjects.get(sName);
-				try
+				if(!((MobileNode) o).getPropagationStats(RESULT_METRICS[i], fValues) ||
+				   !m_ResultSink.writeValues(i, o.getName(), fValues))
 				{
-					if(o instanceof MobileNode)
-					{
-						o.summarizeBase(false, bw, sField);
-					}
-					
-				}
-				catch (Exception e)
-				{
-					System.err.println("* Error: Unable to summarize object " + sName);
-					//System.err.println(e);
-					e.printStackTrace();
+					System.err.println("* Error: Unable to summarize object " + o.getName());
 				}
 			}
-			
-			try
-			{
-				bw.close();
-			}
-			catch (IOException e)
-			{
-				System.err.println(e);
-			}
+		}
+		
+		if(!m_ResultSink.close())
+		{
+			System.err.println("* Error: Unable to finish the results of " + m_sCurrentDate);
+		}
+	}
+	
+	/**
+	 * Summarize the statistics of mobile nodes
+	 */
+	public void summarizeMobileNodes ()
+	{
+		for(int i = 0; i < m_nSimObjects; i++)
+		{
+			SimObject o = m_SimObjectTable[i];
+		    if(o instanceof MobileNode)
+		    {
+		    	((MobileNode) o).finalizePropagationStats();
+		    }
+		}
+		
+		// Without a sink there is nothing to write, the statistics still have to be reset below
+		if(m_ResultSink.open(m_sOutputPath, m_sCurrentDate, RESULT_METRICS, MobileNode.SLOTS_MOBILENODE_PROPAGATION_EVAL))
+		{
+			writeMobileNodeResults();
+		}
+		else
+		{
+			System.err.println("* Error: Unable to write the results of " + m_sCurrentDate + " to " + m_sOutputPath);
 		}
 		
 		// Reset the content statistics
-		for(String sName : m_SimObjects.keySet())
+		for(int i = 0; i < m_nSimObjects; i++)
 		{
-			SimObject o = m_SimObjects.get(sName);
+			SimObject o = m_SimObjectTable[i];
 		    if(o instanceof MobileNode)
 		    {
 		    	((MobileNode) o).resetStatistics();
@@ -476,16 +794,16 @@ public class SimulationEngine {
 			// TO-DO m_SimObjects.get(0).summarizeBase(true, bw);
 		}
 		
-		for(String sName : m_SimObjects.keySet())
+		for(int i = 0; i < m_nSimObjects; i++)
 		{
-			SimObject o = m_SimObjects.get(sName);
+			SimObject o = m_SimObjectTable[i];
 			try
 			{
 				o.summarizeBase(false, bw);
 			}
 			catch (Exception e)
 			{
-				System.err.println("* Error: Unable to summarize object " + sName);
+				System.err.println("* Error: Unable to summarize object " + o.getName());
 				//System.err.println(e);
 				e.printStackTrace();
 			}
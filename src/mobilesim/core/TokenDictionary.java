@@ -0,0 +1,259 @@
+package mobilesim.core;
+
+/**
+ * A dictionary of the names (node names, MAC addresses, field names, ...) that appear in the
+ * data files. Each distinct name is stored once as a String and given a small integer code in
+ * the order that it was first seen. Lookups work directly on a range of characters so that a name
+ * read from a file only turns into a new String the very first time that it is seen.
+ *
+ * @author Striegel
+ *
+ */
+public class TokenDictionary {
+
+	// Tokens and their hashes, indexed by the code of the token
+	String []	m_Tokens;
+	int []		m_TokenHash;
+	int			m_nTokens;
+
+	// Open addressing table holding (code + 1) for each slot, 0 if the slot is empty
+	int []		m_Table;
+	int			m_nTableMask;
+
+	public TokenDictionary ()
+	{
+		m_Tokens = new String[64];
+		m_TokenHash = new int[64];
+		m_nTokens = 0;
+
+		m_Table = new int[128];
+		m_nTableMask = m_Table.length - 1;
+	}
+
+	/**
+	 * @return The number of distinct tokens in the dictionary
+	 */
+	public int size ()
+	{
+		return m_nTokens;
+	}
+
+	/**
+	 * Retrieve the token for a particular code
+	 * @param nCode
+	 * @return The token, null if the code is not valid
+	 */
+	public String getToken (int nCode)
+	{
+		if(nCode < 0 || nCode >= m_nTokens)
+		{
+			return null;
+		}
+
+		return m_Tokens[nCode];
+	}
+
+	/**
+	 * Retrieve the canonical String for a range of characters, adding it if needed
+	 *
+	 * @param theChars
+	 * @param nStart
+	 * @param nLength
+	 * @return
+	 */
+	public String intern (char [] theChars, int nStart, int nLength)
+	{
+		int nCode = encode(theChars, nStart, nLength);
+		return m_Tokens[nCode];
+	}
+
+	/**
+	 * Retrieve the canonical String for a name, adding it if needed
+	 * @param sName
+	 * @return
+	 */
+	public String intern (String sName)
+	{
+		int nCode = encode(sName);
+		return m_Tokens[nCode];
+	}
+
+	/**
+	 * Retrieve the code for a range of characters, adding a new token if needed
+	 *
+	 * @param theChars
+	 * @param nStart
+	 * @param nLength
+	 * @return The code of the token
+	 */
+	public int encode (char [] theChars, int nStart, int nLength)
+	{
+		int		nHash;
+		int		nSlot;
+
+		// Same hash as String.hashCode so that the String can carry it from here on
+		nHash = 0;
+
+		for(int i = 0; i < nLength; i++)
+		{
+			nHash = 31 * nHash + theChars[nStart+i];
+		}
+
+		nSlot = mixHash(nHash) & m_nTableMask;
+
+		while(m_Table[nSlot] != 0)
+		{
+			int nCode = m_Table[nSlot] - 1;
+
+			if(m_TokenHash[nCode] == nHash && matches(m_Tokens[nCode], theChars, nStart, nLength))
+			{
+				return nCode;
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return addToken(new String(theChars, nStart, nLength), nHash, nSlot);
+	}
+
+	/**
+	 * Retrieve the code for a name, adding a new token if needed
+	 * @param sName
+	 * @return The code of the token
+	 */
+	public int encode (String sName)
+	{
+		int		nHash;
+		int		nSlot;
+
+		nHash = sName.hashCode();
+		nSlot = mixHash(nHash) & m_nTableMask;
+
+		while(m_Table[nSlot] != 0)
+		{
+			int nCode = m_Table[nSlot] - 1;
+
+			if(m_TokenHash[nCode] == nHash && m_Tokens[nCode].equals(sName))
+			{
+				return nCode;
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return addToken(sName, nHash, nSlot);
+	}
+
+	/**
+	 * Look up the code for a name without adding it
+	 * @param sName
+	 * @return The code of the token, -1 if it is not in the dictionary
+	 */
+	public int lookup (String sName)
+	{
+		int		nHash;
+		int		nSlot;
+
+		nHash = sName.hashCode();
+		nSlot = mixHash(nHash) & m_nTableMask;
+
+		while(m_Table[nSlot] != 0)
+		{
+			int nCode = m_Table[nSlot] - 1;
+
+			if(m_TokenHash[nCode] == nHash && m_Tokens[nCode].equals(sName))
+			{
+				return nCode;
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return -1;
+	}
+
+	private static int mixHash (int nHash)
+	{
+		return nHash ^ (nHash >>> 16);
+	}
+
+	private static boolean matches (String sToken, char [] theChars, int nStart, int nLength)
+	{
+		if(sToken.length() != nLength)
+		{
+			return false;
+		}
+
+		for(int i = 0; i < nLength; i++)
+		{
+			if(sToken.charAt(i) != theChars[nStart+i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int addToken (String sToken, int nHash, int nSlot)
+	{
+		int nCode;
+
+		if(m_nTokens == m_Tokens.length)
+		{
+			String [] theTokens = new String[2 * m_Tokens.length];
+			int [] theHashes = new int[2 * m_Tokens.length];
+
+			System.arraycopy(m_Tokens, 0, theTokens, 0, m_nTokens);
+			System.arraycopy(m_TokenHash, 0, theHashes, 0, m_nTokens);
+			m_Tokens = theTokens;
+			m_TokenHash = theHashes;
+		}
+
+		nCode = m_nTokens;
+		m_Tokens[nCode] = sToken;
+		m_TokenHash[nCode] = nHash;
+		m_nTokens++;
+
+		m_Table[nSlot] = nCode + 1;
+
+		// Keep the table at most half full
+		if(2 * m_nTokens > m_Table.length)
+		{
+			rehash(2 * m_Table.length);
+		}
+
+		return nCode;
+	}
+
+	private void rehash (int nTableSize)
+	{
+		m_Table = new int[nTableSize];
+		m_nTableMask = nTableSize - 1;
+
+		for(int nCode = 0; nCode < m_nTokens; nCode++)
+		{
+			int nSlot = mixHash(m_TokenHash[nCode]) & m_nTableMask;
+
+			while(m_Table[nSlot] != 0)
+			{
+				nSlot = (nSlot + 1) & m_nTableMask;
+			}
+
+			m_Table[nSlot] = nCode + 1;
+		}
+	}
+
+	/**
+	 * Drop all of the tokens
+	 */
+	public void clear ()
+	{
+		m_Tokens = new String[64];
+		m_TokenHash = new int[64];
+		m_nTokens = 0;
+
+		m_Table = new int[128];
+		m_nTableMask = m_Table.length - 1;
+	}
+}
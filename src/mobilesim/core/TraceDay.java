@@ -0,0 +1,149 @@
+package mobilesim.core;
+
+import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The parsed input of one simulated day: the proximity traces of the Bluetooth files and the
+ * traffic traces of the hourly traffic files (one per simulated day, usually just the one). A day
+ * is parsed once and never changes afterwards, so any number of simulations (e.g. the points of a
+ * parameter sweep) can load from it at the same time without reading the files again.
+ *
+ * @author Striegel
+ *
+ */
+public class TraceDay {
+
+	// Date of the day, format: YYYYMMDD
+	final String				m_sDate;
+
+	// The Bluetooth files with their parsed content, in load order
+	final String []				m_sProximityFiles;
+	final ProximityTrace []		m_ProximityTraces;
+
+	// The traffic files with their parsed content, in load order
+	final String []				m_sTrafficFiles;
+	final TrafficTrace []		m_TrafficTraces;
+
+	TraceDay (String sDate, String [] sProximityFiles, ProximityTrace [] theProximityTraces, 
+			  String [] sTrafficFiles, TrafficTrace [] theTrafficTraces)
+	{
+		m_sDate = sDate;
+		m_sProximityFiles = sProximityFiles;
+		m_ProximityTraces = theProximityTraces;
+		m_sTrafficFiles = sTrafficFiles;
+		m_TrafficTraces = theTrafficTraces;
+	}
+
+	/**
+	 * Parse the files of a day
+	 *
+	 * @param sProximityPath The directory of the Bluetooth files
+	 * @param sProximityFiles The Bluetooth files to load for the day (named YYYYMMDD..., the first one gives the start time)
+	 * @param sTrafficPath The directory of the traffic file
+	 * @param sTrafficFile The traffic file of the day, its first 8 characters are the date
+	 * @param thePool The pool to parse the Bluetooth files on, null for the common pool
+	 * @return The parsed day
+	 * @throws IOException if one of the files cannot be read
+	 */
+	public static TraceDay load (String sProximityPath, String [] sProximityFiles, String sTrafficPath, String sTrafficFile, ForkJoinPool thePool) throws IOException
+	{
+		TokenDictionary		theDictionary;
+		ProximityTrace []	theProximityTraces;
+		TrafficTrace		theTrafficTrace;
+
+		if(thePool == null)
+		{
+			thePool = ForkJoinPool.commonPool();
+		}
+
+		// All of the traces of a day share one dictionary
+		theDictionary = new TokenDictionary();
+		theProximityTraces = new ProximityTrace[sProximityFiles.length];
+
+		for(int i = 0; i < sProximityFiles.length; i++)
+		{
+			theProximityTraces[i] = ProximityTraceParser.parseFile(sProximityPath + sProximityFiles[i], theDictionary, thePool);
+		}
+
+		theTrafficTrace = TrafficTrace.parseFile(sTrafficPath + sTrafficFile, theDictionary);
+
+		return new TraceDay(sTrafficFile.substring(0, 8), sProximityFiles.clone(), theProximityTraces, 
+							new String [] { sTrafficFile }, new TrafficTrace [] { theTrafficTrace });
+	}
+
+	/**
+	 * The date of a simulation over the given traffic files, i.e. their dates one after the other
+	 * @param sTrafficFiles The traffic files, the first 8 characters of each are the date
+	 * @return The date
+	 */
+	static String combineDates (String [] sTrafficFiles)
+	{
+		String sDate = "";
+
+		for(String sFile : sTrafficFiles)
+		{
+			sDate += sFile.substring(0, 8);
+		}
+
+		return sDate;
+	}
+
+	public String getDate ()
+	{
+		return m_sDate;
+	}
+
+	/**
+	 * Load the day into the given loaders (which should be fresh, i.e. belong to a new simulation
+	 * context). The events of the simulation are the same as if the loaders had read the files.
+	 *
+	 * @param theBluetooth The Bluetooth loader, the time of the records is adjusted to the start of the day
+	 * @param theTraffic The traffic loader
+	 * @return True if successful, false otherwise
+	 */
+	public boolean loadInto (DataLoaderBluetooth theBluetooth, DataLoaderNetworkTraffic theTraffic)
+	{
+		for(int i = 0; i < m_sProximityFiles.length; i++)
+		{
+			theBluetooth.addFile(m_sProximityFiles[i]);
+		}
+
+		theBluetooth.setFlag_AdjustTime(true);
+
+		if(!theBluetooth.startTraceLoad(m_ProximityTraces))
+		{
+			return false;
+		}
+
+		// Traffic only goes to nodes that exist, i.e. after the Bluetooth load
+		for(int i = 0; i < m_TrafficTraces.length; i++)
+		{
+			if(!theTraffic.processTrafficTrace(m_TrafficTraces[i], i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Load the day into loaders that were already set up for it, i.e. their file lists name the
+	 * files of the day in the same order (and any other settings such as adjusting the time are
+	 * in place). The events are the same as if the loaders had read the files themselves.
+	 *
+	 * @param theBluetooth The Bluetooth loader
+	 * @param theTraffic The traffic loader
+	 * @return True if successful, false otherwise
+	 */
+	public boolean loadTraces (DataLoaderBluetooth theBluetooth, DataLoaderNetworkTraffic theTraffic)
+	{
+		if(!theBluetooth.startTraceLoad(m_ProximityTraces))
+		{
+			return false;
+		}
+
+		return theTraffic.startTraceLoad(m_TrafficTraces);
+	}
+}
@@ -0,0 +1,155 @@
+package mobilesim.core;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Double buffered input for simulations that run one after the other (e.g. day by day). While
+ * the engine works on the current simulation, a background thread parses the files of the next
+ * one into a TraceDay, which the loaders then turn into events as soon as the engine has been
+ * reset. Only the parsing moves off the simulation thread, creating the events needs the engine
+ * (event IDs, registering the nodes) and still happens when the day is loaded.
+ *
+ * Bluetooth files that show up in consecutive requests (a growing list of files or a sliding
+ * window of several days) are only parsed once.
+ *
+ * @author Striegel
+ *
+ */
+public class TracePrefetcher {
+
+	String							m_sProximityPath;
+	String							m_sTrafficPath;
+
+	ExecutorService					m_Parser;
+	ArrayDeque<Future<TraceDay>>	m_Pending;
+
+	// Parsed Bluetooth files by name, only touched by the parsing thread
+	HashMap<String, ProximityTrace>	m_ProximityTraces;
+
+	/**
+	 * @param sProximityPath The directory of the Bluetooth files
+	 * @param sTrafficPath The directory of the traffic files
+	 */
+	public TracePrefetcher (String sProximityPath, String sTrafficPath)
+	{
+		m_sProximityPath = sProximityPath;
+		m_sTrafficPath = sTrafficPath;
+
+		// A daemon thread, a day that is never taken must not keep the program running
+		m_Parser = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread (Runnable theTask)
+			{
+				Thread theThread = new Thread(theTask, "TracePrefetcher");
+				theThread.setDaemon(true);
+				return theThread;
+			}
+		});
+
+		m_Pending = new ArrayDeque<Future<TraceDay>>();
+		m_ProximityTraces = new HashMap<String, ProximityTrace>();
+	}
+
+	/**
+	 * Start parsing the files of an upcoming simulation in the background
+	 * @param sProximityFiles The Bluetooth files, in load order
+	 * @param sTrafficFiles The traffic files, in load order (the first 8 characters of each are the date)
+	 */
+	public void prefetch (String [] sProximityFiles, String [] sTrafficFiles)
+	{
+		final String []	sProximity = sProximityFiles.clone();
+		final String []	sTraffic = sTrafficFiles.clone();
+
+		m_Pending.add(m_Parser.submit(new Callable<TraceDay>()
+		{
+			public TraceDay call () throws IOException
+			{
+				return parseDay(sProximity, sTraffic);
+			}
+		}));
+	}
+
+	/**
+	 * Retrieve the parsed files of the oldest prefetch, waiting for the parsing to finish if need be
+	 * @return The parsed files, null if nothing was prefetched or the files could not be parsed
+	 */
+	public TraceDay take ()
+	{
+		Future<TraceDay> theDay = m_Pending.poll();
+
+		if(theDay == null)
+		{
+			System.err.println("* Error: Nothing was prefetched.");
+			return null;
+		}
+
+		try
+		{
+			return theDay.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			System.err.println("* Error: Unable to prefetch the input files");
+			System.err.println(e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Stop the background thread, anything not taken yet is dropped
+	 */
+	public void shutdown ()
+	{
+		for(Future<TraceDay> theDay : m_Pending)
+		{
+			theDay.cancel(false);
+		}
+
+		m_Pending.clear();
+		m_Parser.shutdown();
+	}
+
+	private TraceDay parseDay (String [] sProximityFiles, String [] sTrafficFiles) throws IOException
+	{
+		HashMap<String, ProximityTrace>	theKept;
+		ProximityTrace []				theProximityTraces;
+		TrafficTrace []					theTrafficTraces;
+		TokenDictionary					theDictionary;
+
+		// Keep the files of this request around for the next one, drop the rest
+		theKept = new HashMap<String, ProximityTrace>();
+		theProximityTraces = new ProximityTrace[sProximityFiles.length];
+
+		for(int i = 0; i < sProximityFiles.length; i++)
+		{
+			ProximityTrace theTrace = m_ProximityTraces.get(sProximityFiles[i]);
+
+			if(theTrace == null)
+			{
+				theTrace = ProximityTraceParser.parseFile(m_sProximityPath + sProximityFiles[i], new TokenDictionary(), ForkJoinPool.commonPool());
+			}
+
+			theProximityTraces[i] = theTrace;
+			theKept.put(sProximityFiles[i], theTrace);
+		}
+
+		m_ProximityTraces = theKept;
+
+		theDictionary = new TokenDictionary();
+		theTrafficTraces = new TrafficTrace[sTrafficFiles.length];
+
+		for(int i = 0; i < sTrafficFiles.length; i++)
+		{
+			theTrafficTraces[i] = TrafficTrace.parseFile(m_sTrafficPath + sTrafficFiles[i], theDictionary);
+		}
+
+		return new TraceDay(TraceDay.combineDates(sTrafficFiles), sProximityFiles, theProximityTraces, sTrafficFiles, theTrafficTraces);
+	}
+}
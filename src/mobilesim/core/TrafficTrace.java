@@ -0,0 +1,210 @@
+package mobilesim.core;
+
+import java.io.*;
+
+/**
+ * The parsed content of one hourly traffic file kept as columns of primitives. Each row is one
+ * line of the file: the node and its traffic volume for each hour of the day. Node names are held
+ * as codes into a token dictionary and the volumes of all rows are kept back to back in one array.
+ *
+ * @author Striegel
+ *
+ */
+public class TrafficTrace {
+
+	TokenDictionary		m_Dictionary;
+
+	int []				m_NodeCode;
+	int []				m_RowStart;
+	int []				m_RowLength;
+	int					m_nRows;
+
+	double []			m_Values;
+	int					m_nValues;
+
+	// Lines that were too short to hold a full day
+	long				m_lSkipped;
+
+	public TrafficTrace (TokenDictionary theDictionary)
+	{
+		m_Dictionary = theDictionary;
+
+		m_NodeCode = new int[64];
+		m_RowStart = new int[64];
+		m_RowLength = new int[64];
+		m_nRows = 0;
+
+		m_Values = new double[64 * 24];
+		m_nValues = 0;
+
+		m_lSkipped = 0;
+	}
+
+	/**
+	 * Parse a traffic file the same way as DataLoaderNetworkTraffic.processLine_RipCSV
+	 *
+	 * @param sFile The full path of the file
+	 * @param theDictionary The dictionary to code the node names with
+	 * @return The trace of the rows in the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static TrafficTrace parseFile (String sFile, TokenDictionary theDictionary) throws IOException
+	{
+		TrafficTrace	theTrace;
+		FieldCursor		theCursor;
+		BufferedReader	br;
+
+		theTrace = new TrafficTrace(theDictionary);
+		theCursor = new FieldCursor();
+		br = new BufferedReader(new FileReader(sFile));
+
+		try
+		{
+			while(br.ready())
+			{
+				int		nFields;
+				int		nNode;
+
+				// File format:
+				//     Node, rx vol at hour 0-1, ..., rx vol at hour 23-24
+				theCursor.reset(br.readLine());
+				nFields = theCursor.countFields();
+
+				if(nFields < 25)
+				{
+					theTrace.addSkipped(1);
+					continue;
+				}
+
+				theCursor.nextField();
+				nNode = theCursor.getTokenCode(theDictionary);
+				theTrace.startRow(nNode);
+
+				for(int i = 1; i < nFields; i++)
+				{
+					theCursor.nextField();
+					theTrace.addValue(theCursor.parseDouble());
+				}
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+
+		return theTrace;
+	}
+
+	public TokenDictionary getDictionary ()
+	{
+		return m_Dictionary;
+	}
+
+	/**
+	 * @return The number of rows (nodes) in the trace
+	 */
+	public int size ()
+	{
+		return m_nRows;
+	}
+
+	public long getSkippedCount ()
+	{
+		return m_lSkipped;
+	}
+
+	public void addSkipped (long lCount)
+	{
+		m_lSkipped += lCount;
+	}
+
+	/**
+	 * Start a new row, the values added after this belong to the row
+	 * @param nNodeCode The code of the node for the row
+	 */
+	public void startRow (int nNodeCode)
+	{
+		if(m_nRows == m_NodeCode.length)
+		{
+			int [] theNodes = new int[2 * m_nRows];
+			int [] theStarts = new int[2 * m_nRows];
+			int [] theLengths = new int[2 * m_nRows];
+
+			System.arraycopy(m_NodeCode, 0, theNodes, 0, m_nRows);
+			System.arraycopy(m_RowStart, 0, theStarts, 0, m_nRows);
+			System.arraycopy(m_RowLength, 0, theLengths, 0, m_nRows);
+
+			m_NodeCode = theNodes;
+			m_RowStart = theStarts;
+			m_RowLength = theLengths;
+		}
+
+		m_NodeCode[m_nRows] = nNodeCode;
+		m_RowStart[m_nRows] = m_nValues;
+		m_RowLength[m_nRows] = 0;
+		m_nRows++;
+	}
+
+	/**
+	 * Add a value to the current (last) row
+	 * @param fValue
+	 */
+	public void addValue (double fValue)
+	{
+		if(m_nValues == m_Values.length)
+		{
+			double [] theValues = new double[2 * m_nValues];
+			System.arraycopy(m_Values, 0, theValues, 0, m_nValues);
+			m_Values = theValues;
+		}
+
+		m_Values[m_nValues] = fValue;
+		m_nValues++;
+		m_RowLength[m_nRows-1]++;
+	}
+
+	public int getNodeCode (int nRow)
+	{
+		return m_NodeCode[nRow];
+	}
+
+	public String getNode (int nRow)
+	{
+		return m_Dictionary.getToken(m_NodeCode[nRow]);
+	}
+
+	/**
+	 * @param nRow
+	 * @return The index into the value array of the first value of the row
+	 */
+	public int getRowStart (int nRow)
+	{
+		return m_RowStart[nRow];
+	}
+
+	/**
+	 * @param nRow
+	 * @return The number of values in the row
+	 */
+	public int getRowLength (int nRow)
+	{
+		return m_RowLength[nRow];
+	}
+
+	/**
+	 * Retrieve the array holding the values of all rows, see getRowStart and getRowLength
+	 * @return
+	 */
+	public double [] getValues ()
+	{
+		return m_Values;
+	}
+
+	/**
+	 * @return The total number of values across all rows
+	 */
+	public int getValueCount ()
+	{
+		return m_nValues;
+	}
+}
@@ -28,6 +28,16 @@ public class WirelessNeighbor {
 	// 4. Whether the neighbor is currently active / present
 	boolean		m_bPresenceFlag;
 	
+	// Index of the neighbor in the simulation engine (-1 if it is not registered)
+	int			m_nIndex;
+	
+	// Position in the expiry buckets of the list that holds the neighbor while it is present
+	// (see ListWirelessNeighbors)
+	WirelessNeighbor	m_ExpiryPrev;
+	WirelessNeighbor	m_ExpiryNext;
+	long				m_lExpiryBucket;
+	boolean				m_bExpiryQueued;
+	
 	public WirelessNeighbor ()
 	{
 		m_sName = "";
@@ -35,6 +45,11 @@ public class WirelessNeighbor {
 		m_fLastSensed = -1.0;
 		m_nSignalStrength = 0;
 		m_bPresenceFlag = false;
+		m_nIndex = -1;
+		m_ExpiryPrev = null;
+		m_ExpiryNext = null;
+		m_lExpiryBucket = 0;
+		m_bExpiryQueued = false;
 	}
 	
 	public void setName (String sName) 
@@ -91,4 +106,17 @@ public class WirelessNeighbor {
 	{
 		return m_bPresenceFlag;
 	}
+	
+	public void setIndex (int nIndex)
+	{
+		m_nIndex = nIndex;
+	}
+	
+	/**
+	 * @return The index of the neighbor (see SimObject.getIndex), -1 if not registered
+	 */
+	public int getIndex ()
+	{
+		return m_nIndex;
+	}
 }
@@ -0,0 +1,39 @@
+package mobilesim.statistics;
+
+/**
+ * The destination of the per node results of a simulation. At the end of a simulation the
+ * engine opens the sink once, makes a single pass over the mobile nodes handing over the values
+ * of every metric for each node and then closes the sink. Metrics always come in the order they
+ * were given to open, nodes in the order they were registered and the values in slot order, so
+ * the layout of the output is stable from run to run.
+ *
+ * @author Striegel
+ *
+ */
+public interface ResultSink {
+
+	/**
+	 * Start the results of a simulation
+	 * @param sOutputPath The directory for the results
+	 * @param sDate The date of the simulation
+	 * @param sMetrics The names of the metrics, each node will have a row of values for each
+	 * @param nSlots The number of values in a row
+	 * @return True if successful, false otherwise
+	 */
+	public boolean open (String sOutputPath, String sDate, String [] sMetrics, int nSlots);
+
+	/**
+	 * Write the values of one metric for one node
+	 * @param nMetric The metric (the index into the metrics given to open)
+	 * @param sNode The name of the node
+	 * @param fValues The values of the metric, one for each slot
+	 * @return True if successful, false otherwise
+	 */
+	public boolean writeValues (int nMetric, String sNode, double [] fValues);
+
+	/**
+	 * Finish the results and release the files
+	 * @return True if successful, false otherwise
+	 */
+	public boolean close ();
+}
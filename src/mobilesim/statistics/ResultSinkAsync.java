@@ -0,0 +1,296 @@
+package mobilesim.statistics;
+
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the results off to another sink on a background thread. While the results of a
+ * simulation come in they are copied (so the nodes are free to be reset right away) and once
+ * the sink is closed the copy goes into a bounded queue for the writer thread. The simulation of
+ * the next day can hence start while the results of the previous day are still being written,
+ * only when the queue is full does closing the sink wait for the writer to catch up.
+ *
+ * The writer thread goes away by itself once there is nothing left to write, call drain to
+ * wait for all of the results to be out (e.g. before reading them back).
+ *
+ * @author Striegel
+ *
+ */
+public class ResultSinkAsync implements ResultSink {
+
+	public static final int		DEFAULT_PENDING_RESULTS = 2;
+
+	// How long the writer thread waits for more results before going away (in ms)
+	private static final long	WRITER_IDLE_TIMEOUT = 1000;
+
+	/**
+	 * The copied results of one simulation
+	 */
+	private static class ResultBatch {
+		String			m_sOutputPath;
+		String			m_sDate;
+		String []		m_sMetrics;
+		int				m_nSlots;
+
+		// The rows in the order they were written
+		Vector<Integer>	m_nRowMetrics;
+		Vector<String>	m_sRowNodes;
+		Vector<double[]>	m_fRowValues;
+
+		ResultBatch (String sOutputPath, String sDate, String [] sMetrics, int nSlots)
+		{
+			m_sOutputPath = sOutputPath;
+			m_sDate = sDate;
+			m_sMetrics = sMetrics.clone();
+			m_nSlots = nSlots;
+
+			m_nRowMetrics = new Vector<Integer>();
+			m_sRowNodes = new Vector<String>();
+			m_fRowValues = new Vector<double[]>();
+		}
+	}
+
+	// The sink that does the actual writing, only ever used by the writer thread
+	ResultSink							m_Target;
+
+	ArrayBlockingQueue<ResultBatch>		m_Pending;
+	ResultBatch							m_Current;
+
+	Thread								m_Writer;
+
+	// Results handed off but not yet written
+	int									m_nOutstanding;
+	boolean								m_bFailed;
+
+	/**
+	 * @param theTarget The sink to write the results with
+	 */
+	public ResultSinkAsync (ResultSink theTarget)
+	{
+		this(theTarget, DEFAULT_PENDING_RESULTS);
+	}
+
+	/**
+	 * @param theTarget The sink to write the results with
+	 * @param nPending The number of simulations whose results may wait to be written
+	 */
+	public ResultSinkAsync (ResultSink theTarget, int nPending)
+	{
+		m_Target = theTarget;
+		m_Pending = new ArrayBlockingQueue<ResultBatch>(Math.max(nPending, 1));
+		m_Current = null;
+		m_Writer = null;
+		m_nOutstanding = 0;
+		m_bFailed = false;
+	}
+
+	public boolean open (String sOutputPath, String sDate, String [] sMetrics, int nSlots)
+	{
+		m_Current = new ResultBatch(sOutputPath, sDate, sMetrics, nSlots);
+		return true;
+	}
+
+	public boolean writeValues (int nMetric, String sNode, double [] fValues)
+	{
+		if(m_Current == null)
+		{
+			System.err.println("* Error: Results for " + sNode + " written without opening the sink first");
+			return false;
+		}
+
+		m_Current.m_nRowMetrics.add(nMetric);
+		m_Current.m_sRowNodes.add(sNode);
+		m_Current.m_fRowValues.add(fValues.clone());
+		return true;
+	}
+
+	/**
+	 * Hand the results off to the writer thread, waits only if the queue of pending results is full
+	 * @return True if the results were handed off, false otherwise
+	 */
+	public boolean close ()
+	{
+		ResultBatch theBatch = m_Current;
+
+		if(theBatch == null)
+		{
+			return true;
+		}
+
+		m_Current = null;
+
+		synchronized(this)
+		{
+			m_nOutstanding++;
+		}
+
+		try
+		{
+			m_Pending.put(theBatch);
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("* Error: Interrupted while handing off the results of " + theBatch.m_sDate);
+			Thread.currentThread().interrupt();
+			finishBatch(false);
+			return false;
+		}
+
+		synchronized(this)
+		{
+			if(m_Writer == null)
+			{
+				m_Writer = new Thread(new Runnable()
+				{
+					public void run ()
+					{
+						runWriter();
+					}
+				}, "ResultWriter");
+
+				m_Writer.start();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wait until all of the results handed off so far have been written
+	 * @return True if all of the writes since the last drain succeeded, false otherwise
+	 */
+	public synchronized boolean drain ()
+	{
+		boolean bResult;
+
+		while(m_nOutstanding > 0)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		bResult = !m_bFailed;
+		m_bFailed = false;
+		return bResult;
+	}
+
+	private void runWriter ()
+	{
+		try
+		{
+			while(true)
+			{
+				ResultBatch theBatch;
+				boolean		bSuccess;
+
+				try
+				{
+					theBatch = m_Pending.poll(WRITER_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					theBatch = null;
+				}
+
+				if(theBatch == null)
+				{
+					// Only go away if nothing came in, whoever hands off next starts a new writer
+					synchronized(this)
+					{
+						if(m_Pending.isEmpty())
+						{
+							m_Writer = null;
+							return;
+						}
+					}
+
+					continue;
+				}
+
+				bSuccess = false;
+
+				try
+				{
+					bSuccess = writeBatch(theBatch);
+				}
+				catch (RuntimeException e)
+				{
+					System.err.println("* Error: Unable to write the results of " + theBatch.m_sDate);
+					System.err.println(e);
+					abortBatch();
+				}
+				finally
+				{
+					// Whatever happened the batch is done with, drain must not wait for it
+					finishBatch(bSuccess);
+				}
+			}
+		}
+		finally
+		{
+			// Should the thread die anyway, the next hand off starts a new writer
+			synchronized(this)
+			{
+				if(m_Writer == Thread.currentThread())
+				{
+					m_Writer = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Release whatever the target still holds after a batch failed part way
+	 */
+	private void abortBatch ()
+	{
+		try
+		{
+			m_Target.close();
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(e);
+		}
+	}
+
+	private boolean writeBatch (ResultBatch theBatch)
+	{
+		boolean bResult;
+
+		if(!m_Target.open(theBatch.m_sOutputPath, theBatch.m_sDate, theBatch.m_sMetrics, theBatch.m_nSlots))
+		{
+			System.err.println("* Error: Unable to write the results of " + theBatch.m_sDate);
+			return false;
+		}
+
+		bResult = true;
+
+		for(int i = 0; i < theBatch.m_sRowNodes.size(); i++)
+		{
+			bResult &= m_Target.writeValues(theBatch.m_nRowMetrics.get(i), theBatch.m_sRowNodes.get(i), theBatch.m_fRowValues.get(i));
+		}
+
+		bResult &= m_Target.close();
+		return bResult;
+	}
+
+	private synchronized void finishBatch (boolean bSuccess)
+	{
+		if(!bSuccess)
+		{
+			m_bFailed = true;
+		}
+
+		m_nOutstanding--;
+		notifyAll();
+	}
+}
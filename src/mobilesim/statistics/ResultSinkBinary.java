@@ -0,0 +1,223 @@
+package mobilesim.statistics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * Writes the results as a single compact binary (columnar) file per simulation,
+ * <output path>/<date>.results, laid out as follows:
+ *
+ *     int     magic ("MSRS"), version
+ *     int     number of metrics, number of slots, number of nodes
+ *     the names of the metrics and then of the nodes, each as an int byte count and UTF-8 bytes
+ *
+ * followed by a column for each metric (in order) holding the values of every node (in order),
+ * i.e. number of nodes times number of slots doubles. Everything is big endian. The values are
+ * kept in memory until the sink is closed.
+ *
+ * @author Striegel
+ *
+ */
+public class ResultSinkBinary implements ResultSink {
+
+	public static final int		BINARY_RESULTS_MAGIC = 0x4D535253;
+	public static final int		BINARY_RESULTS_VERSION = 1;
+
+	// Extension used for binary result files
+	public static final String	BINARY_RESULTS_EXTENSION = ".results";
+
+	private static final int	BUFFER_SIZE = 1 << 16;
+
+	File				m_File;
+	String []			m_sMetrics;
+	int					m_nSlots;
+
+	Vector<String>		m_sNodes;
+
+	// The values of each metric, the rows of the nodes one after the other
+	double [][]			m_fColumns;
+	int []				m_nColumnSizes;
+
+	public ResultSinkBinary ()
+	{
+		m_File = null;
+		m_sNodes = new Vector<String>();
+	}
+
+	public boolean open (String sOutputPath, String sDate, String [] sMetrics, int nSlots)
+	{
+		m_File = new File(sOutputPath + sDate + BINARY_RESULTS_EXTENSION);
+		m_sMetrics = sMetrics.clone();
+		m_nSlots = nSlots;
+		m_sNodes.clear();
+
+		m_fColumns = new double[sMetrics.length][];
+		m_nColumnSizes = new int[sMetrics.length];
+
+		for(int i = 0; i < sMetrics.length; i++)
+		{
+			m_fColumns[i] = new double[Math.max(nSlots, 1) * 64];
+		}
+
+		return true;
+	}
+
+	public boolean writeValues (int nMetric, String sNode, double [] fValues)
+	{
+		if(fValues.length != m_nSlots)
+		{
+			System.err.println("* Error: Got " + fValues.length + " values for " + sNode + " rather than " + m_nSlots);
+			return false;
+		}
+
+		// The node of the row is the next one unless another metric already started it
+		int nRow = m_nColumnSizes[nMetric] / Math.max(m_nSlots, 1);
+
+		if(nRow == m_sNodes.size())
+		{
+			m_sNodes.add(sNode);
+		}
+		else if(nRow > m_sNodes.size() || !m_sNodes.get(nRow).equals(sNode))
+		{
+			System.err.println("* Error: The results of " + sNode + " are out of order for metric " + m_sMetrics[nMetric]);
+			return false;
+		}
+
+		if(m_nColumnSizes[nMetric] + m_nSlots > m_fColumns[nMetric].length)
+		{
+			m_fColumns[nMetric] = Arrays.copyOf(m_fColumns[nMetric], 2 * m_fColumns[nMetric].length);
+		}
+
+		System.arraycopy(fValues, 0, m_fColumns[nMetric], m_nColumnSizes[nMetric], m_nSlots);
+		m_nColumnSizes[nMetric] += m_nSlots;
+		return true;
+	}
+
+	public boolean close ()
+	{
+		FileChannel		theChannel;
+		ByteBuffer		theBuffer;
+
+		if(m_File == null)
+		{
+			return true;
+		}
+
+		try
+		{
+			m_File.getAbsoluteFile().getParentFile().mkdirs();
+
+			theChannel = FileChannel.open(m_File.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		}
+		catch (IOException e)
+		{
+			System.err.println("* Error: Unable to open the result file " + m_File);
+			System.err.println(e);
+			m_File = null;
+			return false;
+		}
+
+		theBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		try
+		{
+			theBuffer.putInt(BINARY_RESULTS_MAGIC);
+			theBuffer.putInt(BINARY_RESULTS_VERSION);
+			theBuffer.putInt(m_sMetrics.length);
+			theBuffer.putInt(m_nSlots);
+			theBuffer.putInt(m_sNodes.size());
+
+			for(String sMetric : m_sMetrics)
+			{
+				writeString(theChannel, theBuffer, sMetric);
+			}
+
+			for(String sNode : m_sNodes)
+			{
+				writeString(theChannel, theBuffer, sNode);
+			}
+
+			for(int i = 0; i < m_sMetrics.length; i++)
+			{
+				// Metrics that never got a row for a node come out as NaN
+				int nSize = m_sNodes.size() * m_nSlots;
+
+				for(int j = 0; j < nSize; j++)
+				{
+					if(theBuffer.remaining() < Double.BYTES)
+					{
+						flush(theChannel, theBuffer);
+					}
+
+					theBuffer.putDouble(j < m_nColumnSizes[i] ? m_fColumns[i][j] : Double.NaN);
+				}
+			}
+
+			flush(theChannel, theBuffer);
+			theChannel.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("* Error: Unable to write the result file " + m_File);
+			System.err.println(e);
+
+			try
+			{
+				theChannel.close();
+			}
+			catch (IOException eClose)
+			{
+				System.err.println(eClose);
+			}
+
+			return false;
+		}
+		finally
+		{
+			m_File = null;
+			m_fColumns = null;
+		}
+
+		return true;
+	}
+
+	private static void writeString (FileChannel theChannel, ByteBuffer theBuffer, String sValue) throws IOException
+	{
+		byte [] theBytes = sValue.getBytes(StandardCharsets.UTF_8);
+
+		if(theBuffer.remaining() < Integer.BYTES + theBytes.length)
+		{
+			flush(theChannel, theBuffer);
+		}
+
+		theBuffer.putInt(theBytes.length);
+
+		if(theBuffer.remaining() < theBytes.length)
+		{
+			flush(theChannel, theBuffer);
+			theChannel.write(ByteBuffer.wrap(theBytes));
+		}
+		else
+		{
+			theBuffer.put(theBytes);
+		}
+	}
+
+	private static void flush (FileChannel theChannel, ByteBuffer theBuffer) throws IOException
+	{
+		theBuffer.flip();
+
+		while(theBuffer.hasRemaining())
+		{
+			theChannel.write(theBuffer);
+		}
+
+		theBuffer.clear();
+	}
+}
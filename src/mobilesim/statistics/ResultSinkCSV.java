@@ -0,0 +1,260 @@
+package mobilesim.statistics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the results as one CSV file per metric (<output path>/<metric>/<date>.csv) holding a
+ * row for each node: the name of the node followed by its values, each value terminated by a
+ * comma. The files are written through a buffer per metric straight to a file channel and the
+ * values are formatted without creating strings in the common cases, the text is the same as
+ * that of Double.toString.
+ *
+ * @author Striegel
+ *
+ */
+public class ResultSinkCSV implements ResultSink {
+
+	private static final int		BUFFER_SIZE = 1 << 16;
+
+	// Room for the longest formatted value plus its comma
+	private static final int		MAX_VALUE_LENGTH = 32;
+
+	// Powers of ten that are exact as doubles
+	private static final double []	POWERS_OF_TEN = new double[18];
+
+	static
+	{
+		double fPower = 1.0;
+
+		for(int i = 0; i < POWERS_OF_TEN.length; i++)
+		{
+			POWERS_OF_TEN[i] = fPower;
+			fPower *= 10.0;
+		}
+	}
+
+	FileChannel []		m_Channels;
+	ByteBuffer []		m_Buffers;
+
+	// Scratch space for the digits of a value
+	byte []				m_Digits;
+
+	public ResultSinkCSV ()
+	{
+		m_Channels = null;
+		m_Buffers = null;
+		m_Digits = new byte[20];
+	}
+
+	public boolean open (String sOutputPath, String sDate, String [] sMetrics, int nSlots)
+	{
+		m_Channels = new FileChannel[sMetrics.length];
+		m_Buffers = new ByteBuffer[sMetrics.length];
+
+		for(int i = 0; i < sMetrics.length; i++)
+		{
+			File file = new File(sOutputPath + sMetrics[i] + "/" + sDate + ".csv");
+
+			try
+			{
+				file.getAbsoluteFile().getParentFile().mkdirs();
+
+				m_Channels[i] = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				m_Buffers[i] = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			catch (IOException e)
+			{
+				System.err.println("* Error: Unable to open the result file " + file);
+				System.err.println(e);
+				close();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public boolean writeValues (int nMetric, String sNode, double [] fValues)
+	{
+		ByteBuffer theBuffer = m_Buffers[nMetric];
+
+		try
+		{
+			writeName(nMetric, sNode);
+
+			for(int i = 0; i < fValues.length; i++)
+			{
+				if(theBuffer.remaining() < MAX_VALUE_LENGTH)
+				{
+					flush(nMetric);
+				}
+
+				writeDouble(theBuffer, fValues[i]);
+				theBuffer.put((byte) ',');
+			}
+
+			if(theBuffer.remaining() < 1)
+			{
+				flush(nMetric);
+			}
+
+			theBuffer.put((byte) '\n');
+		}
+		catch (IOException e)
+		{
+			System.err.println("* Error: Unable to write the results of " + sNode);
+			System.err.println(e);
+			return false;
+		}
+
+		return true;
+	}
+
+	public boolean close ()
+	{
+		boolean bResult = true;
+
+		if(m_Channels == null)
+		{
+			return true;
+		}
+
+		for(int i = 0; i < m_Channels.length; i++)
+		{
+			if(m_Channels[i] == null)
+			{
+				continue;
+			}
+
+			try
+			{
+				flush(i);
+				m_Channels[i].close();
+			}
+			catch (IOException e)
+			{
+				System.err.println(e);
+				bResult = false;
+			}
+		}
+
+		m_Channels = null;
+		m_Buffers = null;
+		return bResult;
+	}
+
+	private void flush (int nMetric) throws IOException
+	{
+		ByteBuffer theBuffer = m_Buffers[nMetric];
+
+		theBuffer.flip();
+
+		while(theBuffer.hasRemaining())
+		{
+			m_Channels[nMetric].write(theBuffer);
+		}
+
+		theBuffer.clear();
+	}
+
+	private void writeName (int nMetric, String sNode) throws IOException
+	{
+		byte []		theBytes;
+
+		theBytes = sNode.getBytes(StandardCharsets.UTF_8);
+
+		if(m_Buffers[nMetric].remaining() < theBytes.length + 1)
+		{
+			flush(nMetric);
+		}
+
+		if(m_Buffers[nMetric].remaining() < theBytes.length + 1)
+		{
+			// A name longer than the buffer goes straight out
+			m_Channels[nMetric].write(ByteBuffer.wrap(theBytes));
+		}
+		else
+		{
+			m_Buffers[nMetric].put(theBytes);
+		}
+
+		m_Buffers[nMetric].put((byte) ',');
+	}
+
+	/**
+	 * Write a value the same way as Double.toString would. Values in the plain decimal range of
+	 * Double.toString (at least 10^-3 and below 10^7) are written as the fewest decimal places
+	 * that still read back as the same double, anything else goes through Double.toString.
+	 * @param theBuffer The buffer to write to (with room for MAX_VALUE_LENGTH bytes)
+	 * @param fValue The value
+	 */
+	private void writeDouble (ByteBuffer theBuffer, double fValue)
+	{
+		double fMagnitude = Math.abs(fValue);
+
+		if(fValue == 0.0 || fMagnitude >= 1.0e-3 && fMagnitude < 1.0e7)
+		{
+			for(int nPlaces = 1; nPlaces < POWERS_OF_TEN.length; nPlaces++)
+			{
+				double fScaled = fMagnitude * POWERS_OF_TEN[nPlaces];
+
+				// Beyond this the digits would no longer be exact as a long
+				if(fScaled >= 9.0e15)
+				{
+					break;
+				}
+
+				long lDigits = Math.round(fScaled);
+
+				// Both are exact, the division is hence the same rounding as reading the digits
+				if(lDigits / POWERS_OF_TEN[nPlaces] == fMagnitude)
+				{
+					if(fValue < 0.0 || 1.0 / fValue < 0.0)
+					{
+						theBuffer.put((byte) '-');
+					}
+
+					writeDigits(theBuffer, lDigits, nPlaces);
+					return;
+				}
+			}
+		}
+
+		String sValue = Double.toString(fValue);
+
+		for(int i = 0; i < sValue.length(); i++)
+		{
+			theBuffer.put((byte) sValue.charAt(i));
+		}
+	}
+
+	/**
+	 * Write a non-negative number with a given number of decimal places
+	 */
+	private void writeDigits (ByteBuffer theBuffer, long lDigits, int nPlaces)
+	{
+		int nDigits = 0;
+
+		do
+		{
+			m_Digits[nDigits++] = (byte) ('0' + (lDigits % 10));
+			lDigits /= 10;
+		}
+		while(lDigits > 0 || nDigits <= nPlaces);
+
+		for(int i = nDigits - 1; i >= 0; i--)
+		{
+			theBuffer.put(m_Digits[i]);
+
+			if(i == nPlaces)
+			{
+				theBuffer.put((byte) '.');
+			}
+		}
+	}
+}
@@ -2,18 +2,50 @@ package mobilesim.statistics;
 
 /** 
  * One individual statistic field which is simply a counter / tally mechanism that is
- * adjusted typically upwards
+ * adjusted typically upwards. A counter that was initialized through a StatisticGroup is only a
+ * named view onto the value that the group keeps under the handle of the counter.
  * 
  * @author Striegel
  *
  */
 public class StatisticCounter extends StatisticField {
-	private Double m_fValue;
+	// The group that holds the value, null if the counter holds its own value
+	private StatisticGroup	m_Group;
+	private int				m_nHandle;
+	
+	private double			m_fValue;
 	
 	StatisticCounter ()
 	{
+		m_Group = null;
+		m_nHandle = -1;
 		m_fValue = 0.0;
 	}
+	
+	/**
+	 * A counter whose value is held by a group
+	 * @param theGroup The group holding the value
+	 * @param nHandle The handle of the value within the group
+	 */
+	StatisticCounter (StatisticGroup theGroup, int nHandle)
+	{
+		m_Group = theGroup;
+		m_nHandle = nHandle;
+		m_fValue = 0.0;
+	}
+	
+	/**
+	 * @return The handle of the counter within its group, -1 if the counter holds its own value
+	 */
+	public int getHandle ()
+	{
+		return m_nHandle;
+	}
+	
+	StatisticGroup getGroup ()
+	{
+		return m_Group;
+	}
 
 	/** 
 	 * Set the value in the counter to a specific value
@@ -22,7 +54,14 @@ public class StatisticCounter extends StatisticField {
 	 */
 	public void setValue (Double fValue)
 	{
-		m_fValue = fValue;
+		if(m_Group != null)
+		{
+			m_Group.setValue(m_nHandle, fValue);
+		}
+		else
+		{
+			m_fValue = fValue;
+		}
 	}
 	
 	/** 
@@ -32,6 +71,11 @@ public class StatisticCounter extends StatisticField {
 	 */
 	public Double getValue ()
 	{
+		if(m_Group != null)
+		{
+			return m_Group.getValue(m_nHandle);
+		}
+		
 		return m_fValue;
 	}
 	
@@ -40,7 +84,7 @@ public class StatisticCounter extends StatisticField {
 	 */
 	public void resetValue ()
 	{
-		m_fValue = 0.0;
+		setValue(0.0);
 	}
 
 	/** 
@@ -51,6 +95,13 @@ public class StatisticCounter extends StatisticField {
 	 */
 	public void changeValue (Double fValue)
 	{
-		m_fValue += fValue;
+		if(m_Group != null)
+		{
+			m_Group.adjustValue(m_nHandle, fValue);
+		}
+		else
+		{
+			m_fValue += fValue;
+		}
 	}
 }
@@ -1,20 +1,135 @@
 package mobilesim.statistics;
 
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.Set;
 
+import mobilesim.utilities.OpenHashMap;
+
 /** 
- * A group of statistic counters that are accessible via the named field identifier
+ * A group of statistic counters that are accessible via the named field identifier. The values
+ * of the counters live in a primitive array of the group. Initializing a counter hands out its
+ * handle (the index into that array) so that frequently adjusted counters can skip the lookup by
+ * name as well as the boxing. Clearing the group invalidates the handles handed out before, using
+ * one of them afterwards is reported as an error and has no effect (re-resolve them through
+ * initializeCounter or getHandle).
  * 
  * @author Striegel
  */
-public class StatisticGroup extends Hashtable<String, StatisticCounter> {
+public class StatisticGroup extends OpenHashMap<String, StatisticCounter> {
+	
+	private static final int	INITIAL_COUNTERS = 8;
+	
+	// A handle is the generation of the group (bumped by clear) above the index of the value
+	private static final int	HANDLE_INDEX_BITS = 16;
+	private static final int	HANDLE_INDEX_MASK = (1 << HANDLE_INDEX_BITS) - 1;
+	private static final int	HANDLE_GENERATION_MASK = 0x7FFF;
+	
+	// The values of the counters, by index
+	private double []	m_fValues;
+	private int			m_nCounters;
+	private int			m_nGeneration;
 	
 	public StatisticGroup ()
 	{
+		m_fValues = new double[INITIAL_COUNTERS];
+		m_nCounters = 0;
+		m_nGeneration = 0;
+	}
+	
+	/**
+	 * Remove all of the counters, any handles handed out before are no longer valid
+	 */
+	public void clear ()
+	{
+		super.clear();
+		m_nCounters = 0;
+		m_nGeneration = (m_nGeneration + 1) & HANDLE_GENERATION_MASK;
+	}
+	
+	/**
+	 * Retrieve the handle of a counter
+	 * @param sName The name of the counter
+	 * @return The handle of the counter, -1 if there is no such counter in this group
+	 */
+	public int getHandle (String sName)
+	{
+		StatisticCounter theCounter = this.get(sName);
+		
+		if(theCounter == null || theCounter.getGroup() != this)
+		{
+			return -1;
+		}
+		
+		return theCounter.getHandle();
+	}
+	
+	/**
+	 * Adjust a counter by its handle
+	 * @param nHandle The handle from initializeCounter
+	 * @param fValue The amount to add to the counter
+	 */
+	public void adjustValue (int nHandle, double fValue)
+	{
+		int nIndex = resolveHandle(nHandle);
+		
+		if(nIndex >= 0)
+		{
+			m_fValues[nIndex] += fValue;
+		}
+	}
+	
+	/**
+	 * @param nHandle The handle from initializeCounter
+	 * @return The value of the counter
+	 */
+	public double getValue (int nHandle)
+	{
+		int nIndex = resolveHandle(nHandle);
+		
+		return (nIndex >= 0) ? m_fValues[nIndex] : 0.0;
+	}
+	
+	/**
+	 * @param nHandle The handle from initializeCounter
+	 * @param fValue The new value of the counter
+	 */
+	public void setValue (int nHandle, double fValue)
+	{
+		int nIndex = resolveHandle(nHandle);
+		
+		if(nIndex >= 0)
+		{
+			m_fValues[nIndex] = fValue;
+		}
+	}
+	
+	/**
+	 * Reset a counter to zero by its handle
+	 * @param nHandle The handle from initializeCounter
+	 */
+	public void resetValue (int nHandle)
+	{
+		setValue(nHandle, 0.0);
+	}
+	
+	/**
+	 * @param nHandle A handle from initializeCounter
+	 * @return The index of the value, -1 if the handle is not valid (anymore)
+	 */
+	private int resolveHandle (int nHandle)
+	{
+		int nIndex = nHandle & HANDLE_INDEX_MASK;
+		
+		if((nHandle >>> HANDLE_INDEX_BITS) != m_nGeneration || nIndex >= m_nCounters)
+		{
+			System.err.println("* Error: Statistic handle " + nHandle + " is not valid, the group was cleared since it was handed out");
+			return -1;
+		}
+		
+		return nIndex;
 	}
 
-	// This assumes that everything stays in the right order (that might be a tall leap of faith)
+	// The fields come out in the order they were initialized
 	public String  getSummaryCSV_Fields ()
 	{
 		Set<String> 	theKeys;
@@ -32,7 +147,7 @@ public class StatisticGroup extends Hashtable<String, StatisticCounter> {
 		return sResult;
 	}
 
-	// This assumes that everything stays in the right order (that might be a tall leap of faith)
+	// The values come out in the same order as getSummaryCSV_Fields
 	public String  getSummaryCSV ()
 	{
 		Set<String> 	theKeys;
@@ -72,17 +187,15 @@ public class StatisticGroup extends Hashtable<String, StatisticCounter> {
 	 */
 	public boolean resetValue (String sName)
 	{
-		try
-		{
-			this.get(sName).resetValue();
-		}
-		catch (Exception e)
+		StatisticCounter theCounter = this.get(sName);
+		
+		if(theCounter == null)
 		{
 			System.err.println("* Error in resetting statistic value to zero, field = " + sName);
-			System.err.println(e);
 			return false;
 		}
 		
+		theCounter.resetValue();
 		return true;
 	}
 	
@@ -95,17 +208,15 @@ public class StatisticGroup extends Hashtable<String, StatisticCounter> {
 	 */
 	public boolean adjustValue (String sName, Double fValue)
 	{
-		try
-		{
-			this.get(sName).changeValue(fValue);
-		}
-		catch (Exception e)
+		StatisticCounter theCounter = this.get(sName);
+		
+		if(theCounter == null || fValue == null)
 		{
 			System.err.println("* Error in adjusting statistic value, field = " + sName);
-			System.err.println(e);
 			return false;
 		}
 		
+		theCounter.changeValue(fValue);
 		return true;
 	}
 	
@@ -113,29 +224,44 @@ public class StatisticGroup extends Hashtable<String, StatisticCounter> {
 	 * Initialize a new element in the statistic group with a starting value of
 	 * zero
 	 * @param sName The name of the field (must be unique and a non-zero length string)
-	 * @return True if successful, false otherwise
+	 * @return The handle of the new counter, -1 if it could not be initialized
 	 */
-	public boolean initializeCounter (String sName)
+	public int initializeCounter (String sName)
 	{
 		if(sName.isEmpty())
 		{
-			return false;
+			return -1;
 		}
 		
 		if(this.containsKey(sName))
 		{
 			System.err.println("* Error: Cannot initialize field of name " + sName + ", the field already exists");
-			return false;
+			return -1;
 		}
 		
 		StatisticCounter		theCounter;
+		int						nHandle;
+		
+		if(m_nCounters > HANDLE_INDEX_MASK)
+		{
+			System.err.println("* Error: Cannot initialize field of name " + sName + ", the group is full");
+			return -1;
+		}
+		
+		if(m_nCounters == m_fValues.length)
+		{
+			m_fValues = Arrays.copyOf(m_fValues, 2 * m_nCounters);
+		}
+		
+		nHandle = (m_nGeneration << HANDLE_INDEX_BITS) | m_nCounters;
+		m_nCounters++;
 
-		theCounter = new StatisticCounter();
+		theCounter = new StatisticCounter(this, nHandle);
 		theCounter.setName(sName);
 		theCounter.resetValue();
 
 		this.put(theCounter.getName(), theCounter);
 		
-		return true;
+		return nHandle;
 	}
 }
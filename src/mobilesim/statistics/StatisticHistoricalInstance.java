@@ -1,6 +1,6 @@
 package mobilesim.statistics;
 
-import mobilesim.core.SimulationEngine;
+import mobilesim.core.SimulationContext;
 
 /** 
  * The historical instance with one value and / or multiple historical values
@@ -50,7 +50,7 @@ public class StatisticHistoricalInstance extends StatisticField {
 	public boolean initializeNamedGroup (String sName, Double fRange)
 	{
 		setName(sName);
-		setSampleTime(SimulationEngine.theEngine.getTime());
+		setSampleTime(SimulationContext.getCurrent().getEngine().getTime());
 		setRange(fRange);
 		
 		m_ChildGroup = new StatisticGroup();
@@ -1,34 +1,547 @@
 package mobilesim.statistics;
 
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Vector;
 
-/** 
- * A collection of historical values for a particular statistic
- * 
+/**
+ * A collection of historical values for a group of statistics. The history tracks a fixed set
+ * of counters of a StatisticGroup and every sample copies their values into a primitive column
+ * per counter (plus a column for the sample time and one for the range the sample covers), there
+ * are no objects per sample.
+ *
+ * By default the history grows without limit. Alternatively it can be capped at a number of
+ * samples in memory with one of the following policies once the cap is reached:
+ *
+ *    HISTORY_RING        the oldest sample is dropped
+ *    HISTORY_DOWNSAMPLE  adjacent samples are merged pairwise (their values and ranges added up,
+ *                        the later sample time kept) and from then on twice as many samples go
+ *                        into one, the history keeps covering all of the time at a coarser grain
+ *    HISTORY_SPILL       the samples in memory are written out to a memory mapped file (see
+ *                        setSpillFile) and the memory is reused, nothing is lost. Should the
+ *                        samples not fit into the file the history keeps what it has and does
+ *                        not take any further samples
+ *
  * @author Striegel
  *
  */
-public class StatisticHistory extends Vector<StatisticHistoricalInstance> {
+public class StatisticHistory {
 
-	public void dumpSummary ()
+	public static final int		HISTORY_UNBOUNDED = 0;
+	public static final int		HISTORY_RING = 1;
+	public static final int		HISTORY_DOWNSAMPLE = 2;
+	public static final int		HISTORY_SPILL = 3;
+
+	private static final int	INITIAL_SAMPLES = 64;
+
+	// Columns besides the counters: the sample time and the range
+	private static final int	COLUMNS_FIXED = 2;
+
+	String				m_sName;
+
+	// The counters that are tracked
+	StatisticGroup		m_Group;
+	String []			m_sFields;
+	int []				m_nHandles;
+
+	// The samples in memory, m_nStart is the oldest one (only ever non-zero for a ring)
+	double []			m_fSampleTimes;
+	double []			m_fRanges;
+	double [][]			m_fColumns;
+	int					m_nStart;
+	int					m_nSamples;
+
+	int					m_nPolicy;
+	int					m_nCapacity;
+
+	// Downsampling, the number of recorded samples that go into one and how many went into the last one
+	int					m_nMergeFactor;
+	int					m_nMerged;
+
+	// Spilling, the blocks written out so far (each holding m_nCapacity samples)
+	String				m_sSpillFile;
+	FileChannel			m_SpillChannel;
+	Vector<MappedByteBuffer>	m_SpilledBlocks;
+	boolean				m_bSpillFailed;
+
+	public StatisticHistory ()
 	{
-		System.out.println("Statistic History with " + this.size() + " elements.");
-		
-		for(StatisticHistoricalInstance shi : this)
+		m_sName = "";
+		m_Group = null;
+		m_sFields = new String[0];
+		m_nHandles = new int[0];
+
+		m_nPolicy = HISTORY_UNBOUNDED;
+		m_nCapacity = 0;
+
+		m_sSpillFile = null;
+		m_SpillChannel = null;
+		m_SpilledBlocks = new Vector<MappedByteBuffer>();
+		m_bSpillFailed = false;
+
+		allocateSamples(INITIAL_SAMPLES);
+	}
+
+	/**
+	 * Start tracking a set of counters of a group, any samples so far are dropped
+	 * @param sName The name of the history
+	 * @param theGroup The group holding the counters
+	 * @param sFields The names of the counters to track
+	 * @return True if all of the counters exist in the group, false otherwise
+	 */
+	public boolean trackCounters (String sName, StatisticGroup theGroup, String [] sFields)
+	{
+		m_sName = sName;
+		m_Group = theGroup;
+		m_sFields = sFields.clone();
+		m_nHandles = new int[sFields.length];
+
+		for(int i = 0; i < sFields.length; i++)
 		{
-			System.out.print("  SHI (t = " + shi.getSampleTime() + ") -> " + shi.getName() + " ");
-			
-			if(shi.getChildGroup() != null)
+			m_nHandles[i] = theGroup.getHandle(sFields[i]);
+
+			if(m_nHandles[i] < 0)
 			{
-				System.out.print(" " + shi.getChildGroup().size() + " elements");
+				System.err.println("* Error: Unable to track statistic " + sFields[i] + " in the history " + sName);
+				m_Group = null;
+				return false;
 			}
-			else
+		}
+
+		clear();
+		return true;
+	}
+
+	/**
+	 * Limit the number of samples kept in memory
+	 * @param nCapacity The number of samples (at least 2), ignored for HISTORY_UNBOUNDED
+	 * @param nPolicy What to do once the capacity is reached (HISTORY_...)
+	 * @return True if successful, false otherwise
+	 */
+	public boolean setCapacity (int nCapacity, int nPolicy)
+	{
+		if(nPolicy < HISTORY_UNBOUNDED || nPolicy > HISTORY_SPILL)
+		{
+			System.err.println("* Error: Unknown history policy " + nPolicy);
+			return false;
+		}
+
+		if(nPolicy != HISTORY_UNBOUNDED && nCapacity < 2)
+		{
+			System.err.println("* Error: The capacity of a history must be at least 2, got " + nCapacity);
+			return false;
+		}
+
+		m_nPolicy = nPolicy;
+		m_nCapacity = (nPolicy == HISTORY_UNBOUNDED) ? 0 : nCapacity;
+
+		// Pairs have to line up when downsampling
+		if(nPolicy == HISTORY_DOWNSAMPLE && m_nCapacity % 2 != 0)
+		{
+			m_nCapacity++;
+		}
+
+		clear();
+		return true;
+	}
+
+	public int getPolicy ()
+	{
+		return m_nPolicy;
+	}
+
+	public int getCapacity ()
+	{
+		return m_nCapacity;
+	}
+
+	/**
+	 * Set the file that HISTORY_SPILL writes the samples to, the file is overwritten
+	 * @param sFile The name of the file
+	 */
+	public void setSpillFile (String sFile)
+	{
+		closeSpillFile();
+		m_sSpillFile = sFile;
+	}
+
+	public String getSpillFile ()
+	{
+		return m_sSpillFile;
+	}
+
+	public String getName ()
+	{
+		return m_sName;
+	}
+
+	/**
+	 * @return The number of counters tracked
+	 */
+	public int getNumberFields ()
+	{
+		return m_sFields.length;
+	}
+
+	public String getFieldName (int nField)
+	{
+		return m_sFields[nField];
+	}
+
+	/**
+	 * @param sField The name of the counter
+	 * @return The index of the counter in the history, -1 if it is not tracked
+	 */
+	public int getFieldIndex (String sField)
+	{
+		for(int i = 0; i < m_sFields.length; i++)
+		{
+			if(m_sFields[i].equals(sField))
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Record the current values of the tracked counters
+	 * @param fSampleTime When (simulation-wise) the sample was taken
+	 * @param fRange The time over which the values were gathered
+	 * @return True if successful, false otherwise
+	 */
+	public boolean recordSample (double fSampleTime, double fRange)
+	{
+		int 	nSlot;
+
+		if(m_Group == null)
+		{
+			System.err.println("* Error: Sample recorded in the history " + m_sName + " without any counters to track");
+			return false;
+		}
+
+		// Still room in the last downsampled slot
+		if(m_nPolicy == HISTORY_DOWNSAMPLE && m_nSamples > 0 && m_nMerged < m_nMergeFactor)
+		{
+			nSlot = m_nSamples - 1;
+
+			m_fSampleTimes[nSlot] = fSampleTime;
+			m_fRanges[nSlot] += fRange;
+
+			for(int i = 0; i < m_nHandles.length; i++)
+			{
+				m_fColumns[i][nSlot] += m_Group.getValue(m_nHandles[i]);
+			}
+
+			m_nMerged++;
+			return true;
+		}
+
+		if(m_nCapacity > 0 && m_nSamples == m_nCapacity)
+		{
+			if(!makeRoom())
 			{
-				System.out.print(" No child elements");
+				return false;
 			}
-			
+		}
+		else if(m_nSamples == m_fSampleTimes.length)
+		{
+			allocateSamples(2 * m_fSampleTimes.length);
+		}
+
+		nSlot = (m_nStart + m_nSamples) % m_fSampleTimes.length;
+
+		m_fSampleTimes[nSlot] = fSampleTime;
+		m_fRanges[nSlot] = fRange;
+
+		for(int i = 0; i < m_nHandles.length; i++)
+		{
+			m_fColumns[i][nSlot] = m_Group.getValue(m_nHandles[i]);
+		}
+
+		m_nSamples++;
+		m_nMerged = 1;
+		return true;
+	}
+
+	/**
+	 * @return The number of samples, including those spilled to the file
+	 */
+	public int size ()
+	{
+		return m_SpilledBlocks.size() * m_nCapacity + m_nSamples;
+	}
+
+	public boolean isEmpty ()
+	{
+		return size() == 0;
+	}
+
+	public double getSampleTime (int nSample)
+	{
+		return getColumnValue(nSample, 0);
+	}
+
+	public double getRange (int nSample)
+	{
+		return getColumnValue(nSample, 1);
+	}
+
+	/**
+	 * @param nSample The sample, the oldest one is 0
+	 * @param nField The counter (see getFieldIndex)
+	 * @return The value of the counter in that sample
+	 */
+	public double getValue (int nSample, int nField)
+	{
+		return getColumnValue(nSample, COLUMNS_FIXED + nField);
+	}
+
+	/**
+	 * Copy out a sample as a historical instance with a child group holding the counters
+	 * @param nSample The sample, the oldest one is 0
+	 * @return The historical instance
+	 */
+	public StatisticHistoricalInstance getInstance (int nSample)
+	{
+		StatisticHistoricalInstance 	theInstance;
+		StatisticGroup					theGroup;
+
+		theInstance = new StatisticHistoricalInstance();
+		theInstance.setName(m_sName);
+		theInstance.setSampleTime(getSampleTime(nSample));
+		theInstance.setRange(getRange(nSample));
+
+		theGroup = new StatisticGroup();
+
+		for(int i = 0; i < m_sFields.length; i++)
+		{
+			theGroup.setValue(theGroup.initializeCounter(m_sFields[i]), getValue(nSample, i));
+		}
+
+		theInstance.setChildGroup(theGroup);
+		return theInstance;
+	}
+
+	/**
+	 * Drop all of the samples, the counters tracked and the capacity stay the same
+	 */
+	public void clear ()
+	{
+		closeSpillFile();
+
+		m_nStart = 0;
+		m_nSamples = 0;
+		allocateSamples(m_nCapacity > 0 ? m_nCapacity : INITIAL_SAMPLES);
+
+		m_nMergeFactor = 1;
+		m_nMerged = 0;
+	}
+
+	public void dumpSummary ()
+	{
+		System.out.println("Statistic History " + m_sName + " with " + size() + " elements.");
+
+		for(int i = 0; i < size(); i++)
+		{
+			System.out.print("  SHI (t = " + getSampleTime(i) + ") -> " + m_sName + " ");
+			System.out.print(" " + m_sFields.length + " elements");
 			System.out.println("");
 		}
 	}
-	
+
+	private double getColumnValue (int nSample, int nColumn)
+	{
+		int 	nBlock;
+		int		nSlot;
+
+		nBlock = (m_nCapacity > 0) ? nSample / m_nCapacity : 0;
+
+		if(nBlock < m_SpilledBlocks.size())
+		{
+			nSlot = nSample % m_nCapacity;
+			return m_SpilledBlocks.get(nBlock).getDouble((nSlot * (COLUMNS_FIXED + m_sFields.length) + nColumn) * Double.BYTES);
+		}
+
+		nSample -= m_SpilledBlocks.size() * m_nCapacity;
+
+		if(nSample < 0 || nSample >= m_nSamples)
+		{
+			throw new IndexOutOfBoundsException("Sample " + nSample + " of the history " + m_sName);
+		}
+
+		nSlot = (m_nStart + nSample) % m_fSampleTimes.length;
+
+		switch(nColumn)
+		{
+			case 0:
+				return m_fSampleTimes[nSlot];
+			case 1:
+				return m_fRanges[nSlot];
+			default:
+				return m_fColumns[nColumn - COLUMNS_FIXED][nSlot];
+		}
+	}
+
+	/**
+	 * The samples in memory are at the capacity, free up a slot according to the policy
+	 */
+	private boolean makeRoom ()
+	{
+		switch(m_nPolicy)
+		{
+			case HISTORY_DOWNSAMPLE:
+				downsample();
+				return true;
+
+			case HISTORY_SPILL:
+				return spillSamples();
+
+			case HISTORY_RING:
+			default:
+				dropOldest();
+				return true;
+		}
+	}
+
+	private void dropOldest ()
+	{
+		m_nStart = (m_nStart + 1) % m_fSampleTimes.length;
+		m_nSamples--;
+	}
+
+	private void downsample ()
+	{
+		for(int i = 0; i < m_nSamples / 2; i++)
+		{
+			m_fSampleTimes[i] = m_fSampleTimes[2*i+1];
+			m_fRanges[i] = m_fRanges[2*i] + m_fRanges[2*i+1];
+
+			for(int j = 0; j < m_fColumns.length; j++)
+			{
+				m_fColumns[j][i] = m_fColumns[j][2*i] + m_fColumns[j][2*i+1];
+			}
+		}
+
+		m_nSamples /= 2;
+		m_nMergeFactor *= 2;
+	}
+
+	private boolean spillSamples ()
+	{
+		MappedByteBuffer	theBlock;
+		int					nColumns;
+		long				lBlockSize;
+
+		nColumns = COLUMNS_FIXED + m_sFields.length;
+		lBlockSize = (long) m_nCapacity * nColumns * Double.BYTES;
+
+		// Already reported, the samples so far stay as they are
+		if(m_bSpillFailed)
+		{
+			return false;
+		}
+
+		if(m_sSpillFile == null)
+		{
+			System.err.println("* Error: No spill file set for the history " + m_sName + ", no further samples are kept");
+			m_bSpillFailed = true;
+			return false;
+		}
+
+		try
+		{
+			if(m_SpillChannel == null)
+			{
+				m_SpillChannel = FileChannel.open(new File(m_sSpillFile).toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+
+			theBlock = m_SpillChannel.map(FileChannel.MapMode.READ_WRITE, m_SpilledBlocks.size() * lBlockSize, lBlockSize);
+		}
+		catch (IOException e)
+		{
+			System.err.println("* Error: Unable to spill the history " + m_sName + " to " + m_sSpillFile + ", no further samples are kept");
+			System.err.println(e);
+
+			// The blocks mapped so far stay readable without the channel
+			closeSpillChannel();
+			m_bSpillFailed = true;
+			return false;
+		}
+
+		// Samples one after the other, the columns of each sample next to one another
+		for(int i = 0; i < m_nSamples; i++)
+		{
+			theBlock.putDouble(m_fSampleTimes[i]);
+			theBlock.putDouble(m_fRanges[i]);
+
+			for(int j = 0; j < m_fColumns.length; j++)
+			{
+				theBlock.putDouble(m_fColumns[j][i]);
+			}
+		}
+
+		m_SpilledBlocks.add(theBlock);
+		m_nSamples = 0;
+		return true;
+	}
+
+	private void closeSpillFile ()
+	{
+		m_SpilledBlocks.clear();
+		m_bSpillFailed = false;
+		closeSpillChannel();
+	}
+
+	private void closeSpillChannel ()
+	{
+		if(m_SpillChannel != null)
+		{
+			try
+			{
+				m_SpillChannel.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println(e);
+			}
+
+			m_SpillChannel = null;
+		}
+	}
+
+	private void allocateSamples (int nSize)
+	{
+		double [][] 	theColumns;
+
+		if(m_fSampleTimes != null && m_nSamples > 0)
+		{
+			// Only ever grows when unbounded, the samples hence start at the front
+			m_fSampleTimes = Arrays.copyOf(m_fSampleTimes, nSize);
+			m_fRanges = Arrays.copyOf(m_fRanges, nSize);
+
+			for(int i = 0; i < m_fColumns.length; i++)
+			{
+				m_fColumns[i] = Arrays.copyOf(m_fColumns[i], nSize);
+			}
+
+			return;
+		}
+
+		m_fSampleTimes = new double[nSize];
+		m_fRanges = new double[nSize];
+		theColumns = new double[m_sFields.length][];
+
+		for(int i = 0; i < theColumns.length; i++)
+		{
+			theColumns[i] = new double[nSize];
+		}
+
+		m_fColumns = theColumns;
+	}
 }
@@ -0,0 +1,178 @@
+package mobilesim.utilities;
+
+import java.util.*;
+
+/**
+ * A hash map from primitive ints to primitive ints (e.g. from the dense index of a SimObject to a
+ * counter) using an open addressing (linear probing) table. Nothing is boxed and there are no
+ * entry objects. Entries cannot be removed one at a time, only all at once with clear.
+ *
+ * @author Striegel
+ *
+ */
+public class IntIntHashMap {
+
+	private static final int	DEFAULT_CAPACITY = 8;
+
+	int []		m_Keys;
+	int []		m_Values;
+	boolean []	m_Used;
+	int			m_nTableMask;
+
+	int			m_nSize;
+
+	public IntIntHashMap ()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param nCapacity The number of entries to size the map for
+	 */
+	public IntIntHashMap (int nCapacity)
+	{
+		allocate(Integer.highestOneBit(2 * Math.max(nCapacity, 2) - 1) << 1);
+	}
+
+	private void allocate (int nTableSize)
+	{
+		m_Keys = new int[nTableSize];
+		m_Values = new int[nTableSize];
+		m_Used = new boolean[nTableSize];
+		m_nTableMask = nTableSize - 1;
+		m_nSize = 0;
+	}
+
+	private static int spreadHash (int nKey)
+	{
+		int nHash = nKey * 0x9E3779B9;
+		return nHash ^ (nHash >>> 16);
+	}
+
+	/**
+	 * @return The slot holding the key or the empty slot where it would go
+	 */
+	private int findSlot (int nKey)
+	{
+		int nSlot = spreadHash(nKey) & m_nTableMask;
+
+		while(m_Used[nSlot] && m_Keys[nSlot] != nKey)
+		{
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return nSlot;
+	}
+
+	public int size ()
+	{
+		return m_nSize;
+	}
+
+	public boolean isEmpty ()
+	{
+		return m_nSize == 0;
+	}
+
+	public boolean containsKey (int nKey)
+	{
+		return m_Used[findSlot(nKey)];
+	}
+
+	/**
+	 * @param nKey
+	 * @param nDefault The value to return if the key is not in the map
+	 * @return The value for the key
+	 */
+	public int get (int nKey, int nDefault)
+	{
+		int nSlot = findSlot(nKey);
+
+		return m_Used[nSlot] ? m_Values[nSlot] : nDefault;
+	}
+
+	/**
+	 * Add or replace the value for a key
+	 * @param nKey
+	 * @param nValue
+	 */
+	public void put (int nKey, int nValue)
+	{
+		int nSlot = findSlot(nKey);
+
+		if(m_Used[nSlot])
+		{
+			m_Values[nSlot] = nValue;
+			return;
+		}
+
+		// Keep the table at most half full
+		if(2 * (m_nSize + 1) > m_Keys.length)
+		{
+			rehash();
+			nSlot = findSlot(nKey);
+		}
+
+		m_Keys[nSlot] = nKey;
+		m_Values[nSlot] = nValue;
+		m_Used[nSlot] = true;
+		m_nSize++;
+	}
+
+	/**
+	 * @return The keys of the map (in no particular order)
+	 */
+	public int [] keys ()
+	{
+		int []	theKeys;
+		int		nKeys;
+
+		theKeys = new int[m_nSize];
+		nKeys = 0;
+
+		for(int i = 0; i < m_Keys.length; i++)
+		{
+			if(m_Used[i])
+			{
+				theKeys[nKeys++] = m_Keys[i];
+			}
+		}
+
+		return theKeys;
+	}
+
+	public void clear ()
+	{
+		if(m_nSize > 0)
+		{
+			Arrays.fill(m_Used, false);
+			m_nSize = 0;
+		}
+	}
+
+	private void rehash ()
+	{
+		int []		theKeys;
+		int []		theValues;
+		boolean []	theUsed;
+
+		theKeys = m_Keys;
+		theValues = m_Values;
+		theUsed = m_Used;
+
+		allocate(2 * theKeys.length);
+
+		for(int i = 0; i < theKeys.length; i++)
+		{
+			if(theUsed[i])
+			{
+				int nSlot = findSlot(theKeys[i]);
+
+				m_Keys[nSlot] = theKeys[i];
+				m_Values[nSlot] = theValues[i];
+				m_Used[nSlot] = true;
+				m_nSize++;
+			}
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package mobilesim.utilities;
+
+import java.util.*;
+
+/**
+ * A hash map keyed by primitive ints (e.g. the dense index of a SimObject) with the same layout
+ * as OpenHashMap: entries back to back in insertion order plus an open addressing table of ints
+ * pointing into them. No boxing of the keys, no locks and no entry objects.
+ *
+ * Null values are not allowed.
+ *
+ * @author Striegel
+ *
+ * @param <V> The type of the values
+ */
+public class IntOpenHashMap<V> {
+
+	private static final int	DEFAULT_CAPACITY = 8;
+
+	// Entries in insertion order, a removed entry keeps its slot with a null value until the next rehash
+	int []			m_Keys;
+	Object []		m_Values;
+	int				m_nEntries;
+
+	// Open addressing table holding (entry + 1) for each slot, 0 if the slot is empty
+	int []			m_Table;
+	int				m_nTableMask;
+
+	int				m_nSize;
+
+	public IntOpenHashMap ()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param nCapacity The number of entries to size the map for
+	 */
+	public IntOpenHashMap (int nCapacity)
+	{
+		allocate(Math.max(nCapacity, 2));
+	}
+
+	private void allocate (int nCapacity)
+	{
+		int nTableSize = Integer.highestOneBit(2 * nCapacity - 1) << 1;
+
+		m_Keys = new int[nCapacity];
+		m_Values = new Object[nCapacity];
+		m_nEntries = 0;
+
+		m_Table = new int[nTableSize];
+		m_nTableMask = nTableSize - 1;
+
+		m_nSize = 0;
+	}
+
+	private static int spreadHash (int nKey)
+	{
+		int nHash = nKey * 0x9E3779B9;
+		return nHash ^ (nHash >>> 16);
+	}
+
+	private int findEntry (int nKey)
+	{
+		int		nSlot;
+		int		nEntry;
+
+		nSlot = spreadHash(nKey) & m_nTableMask;
+
+		while((nEntry = m_Table[nSlot]) != 0)
+		{
+			nEntry--;
+
+			if(m_Keys[nEntry] == nKey && m_Values[nEntry] != null)
+			{
+				return nEntry;
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return -1;
+	}
+
+	public int size ()
+	{
+		return m_nSize;
+	}
+
+	public boolean isEmpty ()
+	{
+		return m_nSize == 0;
+	}
+
+	public boolean containsKey (int nKey)
+	{
+		return findEntry(nKey) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get (int nKey)
+	{
+		int nEntry = findEntry(nKey);
+
+		if(nEntry < 0)
+		{
+			return null;
+		}
+
+		return (V) m_Values[nEntry];
+	}
+
+	/**
+	 * Add or replace the value for a key
+	 * @param nKey
+	 * @param theValue
+	 * @return The previous value for the key, null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put (int nKey, V theValue)
+	{
+		int		nSlot;
+		int		nEntry;
+
+		if(theValue == null)
+		{
+			throw new NullPointerException();
+		}
+
+		nSlot = spreadHash(nKey) & m_nTableMask;
+
+		while((nEntry = m_Table[nSlot]) != 0)
+		{
+			nEntry--;
+
+			if(m_Keys[nEntry] == nKey && m_Values[nEntry] != null)
+			{
+				V theOld = (V) m_Values[nEntry];
+				m_Values[nEntry] = theValue;
+				return theOld;
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		if(m_nEntries == m_Keys.length)
+		{
+			rehash(m_nSize >= m_Keys.length / 2 ? 2 * m_Keys.length : m_Keys.length);
+			return put(nKey, theValue);
+		}
+
+		nEntry = m_nEntries;
+		m_Keys[nEntry] = nKey;
+		m_Values[nEntry] = theValue;
+		m_nEntries++;
+
+		m_Table[nSlot] = nEntry + 1;
+		m_nSize++;
+		return null;
+	}
+
+	/**
+	 * Remove the value for a key
+	 * @param nKey
+	 * @return The removed value, null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove (int nKey)
+	{
+		int		nEntry;
+		V		theOld;
+
+		nEntry = findEntry(nKey);
+
+		if(nEntry < 0)
+		{
+			return null;
+		}
+
+		theOld = (V) m_Values[nEntry];
+		m_Values[nEntry] = null;
+		m_nSize--;
+		return theOld;
+	}
+
+	public void clear ()
+	{
+		if(m_nEntries > 0)
+		{
+			Arrays.fill(m_Values, 0, m_nEntries, null);
+			Arrays.fill(m_Table, 0);
+			m_nEntries = 0;
+		}
+
+		m_nSize = 0;
+	}
+
+	private void rehash (int nCapacity)
+	{
+		int []		theKeys;
+		Object []	theValues;
+		int			nEntries;
+
+		theKeys = m_Keys;
+		theValues = m_Values;
+		nEntries = m_nEntries;
+
+		allocate(nCapacity);
+
+		for(int i = 0; i < nEntries; i++)
+		{
+			if(theValues[i] != null)
+			{
+				int nSlot = spreadHash(theKeys[i]) & m_nTableMask;
+
+				while(m_Table[nSlot] != 0)
+				{
+					nSlot = (nSlot + 1) & m_nTableMask;
+				}
+
+				m_Keys[m_nEntries] = theKeys[i];
+				m_Values[m_nEntries] = theValues[i];
+				m_nEntries++;
+				m_Table[nSlot] = m_nEntries;
+				m_nSize++;
+			}
+		}
+	}
+
+	/**
+	 * @return The keys in insertion order
+	 */
+	public int [] keys ()
+	{
+		int []	theKeys;
+		int		nKeys;
+
+		theKeys = new int[m_nSize];
+		nKeys = 0;
+
+		for(int i = 0; i < m_nEntries; i++)
+		{
+			if(m_Values[i] != null)
+			{
+				theKeys[nKeys++] = m_Keys[i];
+			}
+		}
+
+		return theKeys;
+	}
+
+	/**
+	 * @return A view of the values in insertion order (the map must not change while iterating)
+	 */
+	public Iterable<V> values ()
+	{
+		return new Iterable<V>()
+		{
+			public Iterator<V> iterator ()
+			{
+				return new Iterator<V>()
+				{
+					int m_nNext = skipRemoved(0);
+
+					public boolean hasNext ()
+					{
+						return m_nNext < m_nEntries;
+					}
+
+					@SuppressWarnings("unchecked")
+					public V next ()
+					{
+						if(m_nNext >= m_nEntries)
+						{
+							throw new NoSuchElementException();
+						}
+
+						V theValue = (V) m_Values[m_nNext];
+						m_nNext = skipRemoved(m_nNext + 1);
+						return theValue;
+					}
+				};
+			}
+		};
+	}
+
+	private int skipRemoved (int nEntry)
+	{
+		while(nEntry < m_nEntries && m_Values[nEntry] == null)
+		{
+			nEntry++;
+		}
+
+		return nEntry;
+	}
+}
@@ -0,0 +1,495 @@
+package mobilesim.utilities;
+
+import java.util.*;
+
+/**
+ * A hash map for the single-threaded core of the simulation. Entries are kept back to back in
+ * parallel arrays in the order they were added and an open addressing (linear probing) table of
+ * ints points into those arrays. Compared to a Hashtable there are no locks, no entry object per
+ * mapping and iteration always follows insertion order (so the order of output no longer depends
+ * on how the keys happen to hash).
+ *
+ * Like a Hashtable, null keys and null values are not allowed. Iterators are fail-fast.
+ *
+ * @author Striegel
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class OpenHashMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int	DEFAULT_CAPACITY = 8;
+
+	// Entries in insertion order, a removed entry keeps its slot with a null key until the next rehash
+	Object []		m_Keys;
+	Object []		m_Values;
+	int []			m_Hashes;
+	int				m_nEntries;
+
+	// Open addressing table holding (entry + 1) for each slot, 0 if the slot is empty
+	int []			m_Table;
+	int				m_nTableMask;
+
+	int				m_nSize;
+	int				m_nModCount;
+
+	public OpenHashMap ()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param nCapacity The number of entries to size the map for
+	 */
+	public OpenHashMap (int nCapacity)
+	{
+		allocate(Math.max(nCapacity, 2));
+	}
+
+	private void allocate (int nCapacity)
+	{
+		int nTableSize = Integer.highestOneBit(2 * nCapacity - 1) << 1;
+
+		m_Keys = new Object[nCapacity];
+		m_Values = new Object[nCapacity];
+		m_Hashes = new int[nCapacity];
+		m_nEntries = 0;
+
+		m_Table = new int[nTableSize];
+		m_nTableMask = nTableSize - 1;
+
+		m_nSize = 0;
+	}
+
+	private static int spreadHash (Object theKey)
+	{
+		int nHash = theKey.hashCode();
+		return nHash ^ (nHash >>> 16);
+	}
+
+	/**
+	 * Find the entry for a key
+	 * @return The index of the entry, -1 if the key is not in the map
+	 */
+	int findEntry (Object theKey)
+	{
+		int		nHash;
+		int		nSlot;
+		int		nEntry;
+
+		if(theKey == null)
+		{
+			return -1;
+		}
+
+		nHash = spreadHash(theKey);
+		nSlot = nHash & m_nTableMask;
+
+		while((nEntry = m_Table[nSlot]) != 0)
+		{
+			nEntry--;
+
+			if(m_Hashes[nEntry] == nHash)
+			{
+				Object theEntryKey = m_Keys[nEntry];
+
+				if(theEntryKey == theKey || (theEntryKey != null && theEntryKey.equals(theKey)))
+				{
+					return nEntry;
+				}
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		return -1;
+	}
+
+	public int size ()
+	{
+		return m_nSize;
+	}
+
+	public boolean isEmpty ()
+	{
+		return m_nSize == 0;
+	}
+
+	public boolean containsKey (Object theKey)
+	{
+		return findEntry(theKey) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get (Object theKey)
+	{
+		int nEntry = findEntry(theKey);
+
+		if(nEntry < 0)
+		{
+			return null;
+		}
+
+		return (V) m_Values[nEntry];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put (K theKey, V theValue)
+	{
+		int		nHash;
+		int		nSlot;
+		int		nEntry;
+
+		if(theKey == null || theValue == null)
+		{
+			throw new NullPointerException();
+		}
+
+		nHash = spreadHash(theKey);
+		nSlot = nHash & m_nTableMask;
+
+		while((nEntry = m_Table[nSlot]) != 0)
+		{
+			nEntry--;
+
+			if(m_Hashes[nEntry] == nHash)
+			{
+				Object theEntryKey = m_Keys[nEntry];
+
+				if(theEntryKey == theKey || (theEntryKey != null && theEntryKey.equals(theKey)))
+				{
+					V theOld = (V) m_Values[nEntry];
+					m_Values[nEntry] = theValue;
+					return theOld;
+				}
+			}
+
+			nSlot = (nSlot + 1) & m_nTableMask;
+		}
+
+		if(m_nEntries == m_Keys.length)
+		{
+			// Out of room, either squeeze out the removed entries or grow
+			rehash(m_nSize >= m_Keys.length / 2 ? 2 * m_Keys.length : m_Keys.length);
+			return put(theKey, theValue);
+		}
+
+		nEntry = m_nEntries;
+		m_Keys[nEntry] = theKey;
+		m_Values[nEntry] = theValue;
+		m_Hashes[nEntry] = nHash;
+		m_nEntries++;
+
+		m_Table[nSlot] = nEntry + 1;
+		m_nSize++;
+		m_nModCount++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove (Object theKey)
+	{
+		int		nEntry;
+		V		theOld;
+
+		nEntry = findEntry(theKey);
+
+		if(nEntry < 0)
+		{
+			return null;
+		}
+
+		theOld = (V) m_Values[nEntry];
+		removeEntry(nEntry);
+		return theOld;
+	}
+
+	/**
+	 * Remove an entry, the slot in the table stays in place (pointing at an entry with a null key)
+	 * so that probing past it still works
+	 */
+	void removeEntry (int nEntry)
+	{
+		m_Keys[nEntry] = null;
+		m_Values[nEntry] = null;
+		m_nSize--;
+		m_nModCount++;
+	}
+
+	public void clear ()
+	{
+		if(m_nEntries > 0)
+		{
+			Arrays.fill(m_Keys, 0, m_nEntries, null);
+			Arrays.fill(m_Values, 0, m_nEntries, null);
+			Arrays.fill(m_Table, 0);
+			m_nEntries = 0;
+		}
+
+		m_nSize = 0;
+		m_nModCount++;
+	}
+
+	/**
+	 * Rebuild the entries (dropping removed ones, keeping the order) and the table
+	 * @param nCapacity The new number of entries
+	 */
+	private void rehash (int nCapacity)
+	{
+		Object []	theKeys;
+		Object []	theValues;
+		int []		theHashes;
+		int			nEntries;
+
+		theKeys = m_Keys;
+		theValues = m_Values;
+		theHashes = m_Hashes;
+		nEntries = m_nEntries;
+
+		allocate(nCapacity);
+
+		for(int i = 0; i < nEntries; i++)
+		{
+			if(theKeys[i] != null)
+			{
+				int nSlot = theHashes[i] & m_nTableMask;
+
+				while(m_Table[nSlot] != 0)
+				{
+					nSlot = (nSlot + 1) & m_nTableMask;
+				}
+
+				m_Keys[m_nEntries] = theKeys[i];
+				m_Values[m_nEntries] = theValues[i];
+				m_Hashes[m_nEntries] = theHashes[i];
+				m_nEntries++;
+				m_Table[nSlot] = m_nEntries;
+				m_nSize++;
+			}
+		}
+
+		m_nModCount++;
+	}
+
+	public Set<K> keySet ()
+	{
+		return new AbstractSet<K>()
+		{
+			public Iterator<K> iterator ()
+			{
+				return new EntryIterator<K>()
+				{
+					@SuppressWarnings("unchecked")
+					K current ()
+					{
+						return (K) m_Keys[m_nCurrent];
+					}
+				};
+			}
+
+			public int size ()
+			{
+				return m_nSize;
+			}
+
+			public boolean contains (Object theKey)
+			{
+				return containsKey(theKey);
+			}
+
+			public boolean remove (Object theKey)
+			{
+				return OpenHashMap.this.remove(theKey) != null;
+			}
+
+			public void clear ()
+			{
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	public Collection<V> values ()
+	{
+		return new AbstractCollection<V>()
+		{
+			public Iterator<V> iterator ()
+			{
+				return new EntryIterator<V>()
+				{
+					@SuppressWarnings("unchecked")
+					V current ()
+					{
+						return (V) m_Values[m_nCurrent];
+					}
+				};
+			}
+
+			public int size ()
+			{
+				return m_nSize;
+			}
+
+			public void clear ()
+			{
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	public Set<Map.Entry<K, V>> entrySet ()
+	{
+		return new AbstractSet<Map.Entry<K, V>>()
+		{
+			public Iterator<Map.Entry<K, V>> iterator ()
+			{
+				return new EntryIterator<Map.Entry<K, V>>()
+				{
+					Map.Entry<K, V> current ()
+					{
+						return new Entry(m_nCurrent);
+					}
+				};
+			}
+
+			public int size ()
+			{
+				return m_nSize;
+			}
+
+			public void clear ()
+			{
+				OpenHashMap.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Walks the live entries in insertion order
+	 */
+	abstract class EntryIterator<T> implements Iterator<T> {
+
+		int		m_nNext;
+		int		m_nCurrent;
+		int		m_nExpectedModCount;
+
+		EntryIterator ()
+		{
+			m_nNext = 0;
+			m_nCurrent = -1;
+			m_nExpectedModCount = m_nModCount;
+			skipRemoved();
+		}
+
+		private void skipRemoved ()
+		{
+			while(m_nNext < m_nEntries && m_Keys[m_nNext] == null)
+			{
+				m_nNext++;
+			}
+		}
+
+		abstract T current ();
+
+		public boolean hasNext ()
+		{
+			return m_nNext < m_nEntries;
+		}
+
+		public T next ()
+		{
+			if(m_nModCount != m_nExpectedModCount)
+			{
+				throw new ConcurrentModificationException();
+			}
+
+			if(m_nNext >= m_nEntries)
+			{
+				throw new NoSuchElementException();
+			}
+
+			m_nCurrent = m_nNext;
+			m_nNext++;
+			skipRemoved();
+			return current();
+		}
+
+		public void remove ()
+		{
+			if(m_nCurrent < 0 || m_Keys[m_nCurrent] == null)
+			{
+				throw new IllegalStateException();
+			}
+
+			if(m_nModCount != m_nExpectedModCount)
+			{
+				throw new ConcurrentModificationException();
+			}
+
+			// Go through remove so that subclasses see the removal
+			OpenHashMap.this.remove(m_Keys[m_nCurrent]);
+			m_nExpectedModCount = m_nModCount;
+		}
+	}
+
+	/**
+	 * A view of one entry, setValue writes through to the map
+	 */
+	class Entry implements Map.Entry<K, V> {
+
+		int		m_nEntry;
+
+		Entry (int nEntry)
+		{
+			m_nEntry = nEntry;
+		}
+
+		@SuppressWarnings("unchecked")
+		public K getKey ()
+		{
+			return (K) m_Keys[m_nEntry];
+		}
+
+		@SuppressWarnings("unchecked")
+		public V getValue ()
+		{
+			return (V) m_Values[m_nEntry];
+		}
+
+		@SuppressWarnings("unchecked")
+		public V setValue (V theValue)
+		{
+			V theOld;
+
+			if(theValue == null)
+			{
+				throw new NullPointerException();
+			}
+
+			theOld = (V) m_Values[m_nEntry];
+			m_Values[m_nEntry] = theValue;
+			return theOld;
+		}
+
+		public boolean equals (Object theOther)
+		{
+			if(!(theOther instanceof Map.Entry))
+			{
+				return false;
+			}
+
+			Map.Entry<?, ?> theEntry = (Map.Entry<?, ?>) theOther;
+			return getKey().equals(theEntry.getKey()) && getValue().equals(theEntry.getValue());
+		}
+
+		public int hashCode ()
+		{
+			return getKey().hashCode() ^ getValue().hashCode();
+		}
+
+		public String toString ()
+		{
+			return getKey() + "=" + getValue();
+		}
+	}
+}